@@ -15,15 +15,20 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.UUID.fromString;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.StockEventDtoBuilder.createStockEventDto;
 
+import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
@@ -33,8 +38,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.openlmis.stockmanagement.BaseIntegrationTest;
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
+import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
@@ -43,7 +51,10 @@ import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
+import org.openlmis.stockmanagement.repository.StockCardCheckpointRepository;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
@@ -55,7 +66,12 @@ import org.openlmis.stockmanagement.util.Message;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -70,9 +86,18 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
   @Autowired
   private StockCardRepository stockCardRepository;
 
+  @Autowired
+  private StockCardLineItemRepository lineItemRepository;
+
+  @Autowired
+  private StockCardCheckpointRepository checkpointRepository;
+
   @Autowired
   private PhysicalInventoriesRepository physicalInventoriesRepository;
 
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
   @MockBean
   private FacilityReferenceDataService facilityReferenceDataService;
 
@@ -113,17 +138,17 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
 
     //then
     StockCard savedCard = stockCardRepository.findByOriginEvent(savedEvent);
-    StockCardLineItem firstLineItem = savedCard.getLineItems().get(0);
+    StockCardLineItem firstLineItem = lineItemRepository.findInOrder(savedCard.getId()).get(0);
 
     assertThat(firstLineItem.getUserId(), is(userId));
     assertThat(firstLineItem.getSource().isRefDataFacility(), is(true));
     assertThat(firstLineItem.getDestination().isRefDataFacility(), is(false));
 
-    assertThat(firstLineItem.getStockCard().getOriginEvent().getId(), is(savedEvent.getId()));
-    assertThat(firstLineItem.getStockCard().getFacilityId(), is(savedEvent.getFacilityId()));
-    assertThat(firstLineItem.getStockCard().getProgramId(), is(savedEvent.getProgramId()));
+    assertThat(savedCard.getOriginEvent().getId(), is(savedEvent.getId()));
+    assertThat(savedCard.getFacilityId(), is(savedEvent.getFacilityId()));
+    assertThat(savedCard.getProgramId(), is(savedEvent.getProgramId()));
     UUID orderableId = savedEvent.getLineItems().get(0).getOrderableId();
-    assertThat(firstLineItem.getStockCard().getOrderableId(), is(orderableId));
+    assertThat(savedCard.getOrderableId(), is(orderableId));
   }
 
   @Test
@@ -149,7 +174,7 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
 
     //then
     StockCard savedCard = stockCardRepository.findByOriginEvent(existingEvent);
-    List<StockCardLineItem> lineItems = savedCard.getLineItems();
+    List<StockCardLineItem> lineItems = lineItemRepository.findInOrder(savedCard.getId());
     lineItems.sort(Comparator.comparing(StockCardLineItem::getProcessedDate));
     StockCardLineItem latestLineItem = lineItems.get(lineItems.size() - 1);
 
@@ -159,6 +184,108 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
     assertThat(latestLineItem.getUserId(), is(userId));
   }
 
+  @Test
+  public void should_persist_stock_on_hand_of_card_and_line_items_when_save_from_event()
+      throws Exception {
+    //given
+    StockEventDto existingEventDto = createStockEventDto();
+    final StockEvent existingEvent = save(existingEventDto, randomUUID());
+    int firstQuantity = existingEventDto.getLineItems().get(0).getQuantity();
+
+    StockEventDto newEventDto = createStockEventDto();
+    newEventDto.setProgramId(existingEventDto.getProgramId());
+    newEventDto.setFacilityId(existingEventDto.getFacilityId());
+    newEventDto.getLineItems().get(0)
+        .setOrderableId(existingEventDto.getLineItems().get(0).getOrderableId());
+    int secondQuantity = newEventDto.getLineItems().get(0).getQuantity();
+
+    //when
+    save(newEventDto, randomUUID());
+
+    //then
+    StockCard savedCard = stockCardRepository.findByOriginEvent(existingEvent);
+    List<StockCardLineItem> lineItems = lineItemRepository.findInOrder(savedCard.getId());
+    lineItems.sort(Comparator.comparing(StockCardLineItem::getProcessedDate));
+
+    assertThat(savedCard.getStockOnHand(), is(firstQuantity + secondQuantity));
+    assertThat(lineItems.get(0).getStockOnHand(), is(firstQuantity));
+    assertThat(lineItems.get(1).getStockOnHand(), is(firstQuantity + secondQuantity));
+  }
+
+  @Test
+  public void should_recalculate_backdated_line_item_from_monthly_checkpoints() throws Exception {
+    //given
+    StockEventDto januaryEventDto = createStockEventDto();
+    januaryEventDto.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 1, 10));
+    StockEvent januaryEvent = save(januaryEventDto, randomUUID());
+    int januaryQuantity = januaryEventDto.getLineItems().get(0).getQuantity();
+
+    StockEventDto marchEventDto = createEventForSameCard(januaryEventDto);
+    marchEventDto.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 3, 10));
+    save(marchEventDto, randomUUID());
+    int marchQuantity = marchEventDto.getLineItems().get(0).getQuantity();
+
+    StockEventDto februaryEventDto = createEventForSameCard(januaryEventDto);
+    februaryEventDto.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 2, 10));
+    int februaryQuantity = februaryEventDto.getLineItems().get(0).getQuantity();
+
+    //when
+    save(februaryEventDto, randomUUID());
+
+    //then
+    StockCard savedCard = stockCardRepository.findByOriginEvent(januaryEvent);
+    List<StockCardCheckpoint> checkpoints = checkpointRepository
+        .findByStockCardId(savedCard.getId());
+    int total = januaryQuantity + februaryQuantity + marchQuantity;
+
+    assertThat(checkpoints.size(), is(2));
+    assertThat(checkpoints.get(0).getStockOnHand(), is(januaryQuantity));
+    assertThat(checkpoints.get(1).getStockOnHand(), is(total));
+    assertThat(savedCard.getStockOnHand(), is(total));
+    assertThat(stockCardService.findCardsWithInconsistentStockOnHand(
+        januaryEventDto.getProgramId(), januaryEventDto.getFacilityId()).isEmpty(), is(true));
+  }
+
+  @Test
+  public void should_find_cards_with_inconsistent_stock_on_hand() throws Exception {
+    //given
+    StockEventDto eventDto = createStockEventDto();
+    StockEvent savedEvent = save(eventDto, randomUUID());
+    StockCard savedCard = stockCardRepository.findByOriginEvent(savedEvent);
+
+    //when
+    List<UUID> consistentResult = stockCardService.findCardsWithInconsistentStockOnHand(
+        eventDto.getProgramId(), eventDto.getFacilityId());
+    savedCard.setStockOnHand(savedCard.getStockOnHand() + 1);
+    stockCardRepository.save(savedCard);
+    List<UUID> inconsistentResult = stockCardService.findCardsWithInconsistentStockOnHand(
+        eventDto.getProgramId(), eventDto.getFacilityId());
+
+    //then
+    assertThat(consistentResult.isEmpty(), is(true));
+    assertThat(inconsistentResult, is(singletonList(savedCard.getId())));
+  }
+
+  @Test
+  public void should_select_summaries_without_line_items() throws Exception {
+    //given
+    StockEventDto eventDto = createStockEventDto();
+    StockEvent savedEvent = save(eventDto, randomUUID());
+    StockCard savedCard = stockCardRepository.findByOriginEvent(savedEvent);
+
+    //when
+    List<StockCardSummary> summaries = stockCardRepository
+        .findSummariesBy(eventDto.getProgramId(), eventDto.getFacilityId());
+
+    //then
+    assertThat(summaries.size(), is(1));
+    assertThat(summaries.get(0).getId(), is(savedCard.getId()));
+    assertThat(summaries.get(0).getOrderableId(), is(savedCard.getOrderableId()));
+    assertThat(summaries.get(0).getStockOnHand(), is(savedCard.getStockOnHand()));
+    assertThat(summaries.get(0).getLastUpdate(), is(eventDto.getLineItems().get(0)
+        .getOccurredDate()));
+  }
+
   @Test
   public void should_get_refdata_and_convert_organizations_when_find_stock_card()
       throws Exception {
@@ -176,8 +303,9 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
 
     when(facilityReferenceDataService.findOne(stockEventDto.getFacilityId()))
         .thenReturn(cardFacility);
-    when(facilityReferenceDataService.findOne(fromString("e6799d64-d10d-4011-b8c2-0e4d4a3f65ce")))
-        .thenReturn(sourceFacility);
+    UUID sourceFacilityId = fromString("e6799d64-d10d-4011-b8c2-0e4d4a3f65ce");
+    when(facilityReferenceDataService.findByIds(singleton(sourceFacilityId)))
+        .thenReturn(singletonMap(sourceFacilityId, sourceFacility));
 
     when(programReferenceDataService.findOne(stockEventDto.getProgramId()))
         .thenReturn(programDto);
@@ -240,6 +368,31 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
     assertThat(reasonName, is("Overstock"));
   }
 
+  @Test
+  public void should_show_physical_inventory_reason_and_difference_when_find_stock_card()
+      throws Exception {
+    //given
+    StockEventDto firstInventory = createPhysicalInventory(null, 10);
+    StockEvent savedEvent = save(firstInventory, randomUUID());
+    save(createPhysicalInventory(firstInventory, 15), randomUUID());
+    save(createPhysicalInventory(firstInventory, 5), randomUUID());
+    UUID cardId = stockCardRepository.findByOriginEvent(savedEvent).getId();
+
+    //when
+    StockCardDto card = stockCardService.findStockCardById(cardId);
+
+    //then
+    List<StockCardLineItemDto> lineItems = card.getLineItems();
+    assertThat(card.getStockOnHand(), is(5));
+    assertThat(lineItems.get(1).getLineItem().getReason().getName(), is("Overstock"));
+    assertThat(lineItems.get(1).getLineItem().getQuantity(), is(5));
+    assertThat(lineItems.get(1).getLineItem().getStockOnHand(), is(15));
+    assertThat(lineItems.get(2).getLineItem().getReason().getName(), is("Understock"));
+    assertThat(lineItems.get(2).getLineItem().getQuantity(), is(10));
+    assertThat(lineItems.get(2).getLineItem().getStockOnHand(), is(5));
+    assertThat(lineItemRepository.findInOrder(cardId).get(2).getReason(), is(nullValue()));
+  }
+
   @Test
   public void should_return_null_when_can_not_find_stock_card_by_id() throws Exception {
     //when
@@ -264,13 +417,146 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
     stockCardService.findStockCardById(savedCardId);
   }
 
-  private StockEvent save(StockEventDto eventDto, UUID userId) {
-    eventDto.setUserId(userId);
-    setContext(eventDto);
+  @Test
+  public void should_find_line_items_of_stock_card_page_by_page() throws Exception {
+    //given
+    StockEventDto firstInventory = createPhysicalInventory(null, 10);
+    StockEvent savedEvent = save(firstInventory, randomUUID());
+    save(createPhysicalInventory(firstInventory, 15), randomUUID());
+    save(createPhysicalInventory(firstInventory, 5), randomUUID());
+    UUID cardId = stockCardRepository.findByOriginEvent(savedEvent).getId();
+
+    //when
+    List<StockCardLineItemDto> firstPage = stockCardService.findLineItems(cardId, null, 2);
+    UUID lastId = firstPage.get(1).getLineItem().getId();
+    List<StockCardLineItemDto> secondPage = stockCardService.findLineItems(cardId, lastId, 2);
+
+    //then
+    assertThat(firstPage.size(), is(2));
+    assertThat(firstPage.get(0).getLineItem().getStockOnHand(), is(5));
+    assertThat(firstPage.get(0).getLineItem().getQuantity(), is(10));
+    assertThat(firstPage.get(1).getLineItem().getStockOnHand(), is(15));
+    assertThat(firstPage.get(1).getLineItem().getQuantity(), is(5));
+
+    assertThat(secondPage.size(), is(1));
+    assertThat(secondPage.get(0).getLineItem().getStockOnHand(), is(10));
+    assertThat(secondPage.get(0).getLineItem().getQuantity(), is(10));
+  }
+
+  @Test
+  public void should_return_null_when_can_not_find_stock_card_of_line_items() throws Exception {
+    //when
+    List<StockCardLineItemDto> lineItems = stockCardService.findLineItems(randomUUID(), null, 2);
+
+    //then
+    assertNull(lineItems);
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void should_reject_line_items_page_size_above_maximum() throws Exception {
+    //given
+    StockEvent savedEvent = save(createStockEventDto(), randomUUID());
+    UUID cardId = stockCardRepository.findByOriginEvent(savedEvent).getId();
 
-    StockEvent event = eventDto.toEvent();
-    StockEvent savedEvent = stockEventsRepository.save(event);
-    stockCardService.saveFromEvent(eventDto, savedEvent.getId());
-    return savedEvent;
+    //when
+    stockCardService.findLineItems(cardId, null, Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void should_find_summaries_with_stock_on_hand_as_of_date() throws Exception {
+    //given
+    StockEventDto firstInventory = createPhysicalInventory(null, 10);
+    firstInventory.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 1, 10));
+    save(firstInventory, randomUUID());
+    StockEventDto secondInventory = createPhysicalInventory(firstInventory, 15);
+    secondInventory.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 2, 10));
+    save(secondInventory, randomUUID());
+
+    UUID programId = firstInventory.getProgramId();
+    UUID facilityId = firstInventory.getFacilityId();
+
+    //when
+    List<StockCardSummary> beforeFirst = stockCardRepository
+        .findSummariesAsOf(programId, facilityId, LocalDate.of(2017, 1, 9));
+    List<StockCardSummary> betweenInventories = stockCardRepository
+        .findSummariesAsOf(programId, facilityId, LocalDate.of(2017, 1, 31));
+    List<StockCardSummary> onSecond = stockCardRepository
+        .findSummariesAsOf(programId, facilityId, LocalDate.of(2017, 2, 10));
+
+    //then
+    assertThat(beforeFirst.isEmpty(), is(true));
+    assertThat(betweenInventories.get(0).getStockOnHand(), is(10));
+    assertThat(betweenInventories.get(0).getLastUpdate(), is(LocalDate.of(2017, 1, 10)));
+    assertThat(onSecond.get(0).getStockOnHand(), is(15));
+    assertThat(onSecond.get(0).getLastUpdate(), is(LocalDate.of(2017, 2, 10)));
+  }
+
+  @Test
+  public void should_find_page_of_summaries_as_of_date_sorted_by_database() throws Exception {
+    //given
+    StockEventDto firstInventory = createPhysicalInventory(null, 10);
+    firstInventory.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 1, 10));
+    save(firstInventory, randomUUID());
+    for (int quantity : new int[]{30, 20}) {
+      StockEventDto inventory = createPhysicalInventory(null, quantity);
+      inventory.setProgramId(firstInventory.getProgramId());
+      inventory.setFacilityId(firstInventory.getFacilityId());
+      inventory.getLineItems().get(0).setOccurredDate(LocalDate.of(2017, 1, 10));
+      save(inventory, randomUUID());
+    }
+
+    //when
+    Page<StockCardSummary> page = stockCardRepository.findSummariesAsOf(
+        firstInventory.getProgramId(), firstInventory.getFacilityId(), LocalDate.of(2017, 1, 31),
+        new PageRequest(0, 2, new Sort(Sort.Direction.DESC, "stockOnHand")));
+
+    //then
+    assertThat(page.getTotalElements(), is(3L));
+    assertThat(page.getContent().size(), is(2));
+    assertThat(page.getContent().get(0).getStockOnHand(), is(30));
+    assertThat(page.getContent().get(1).getStockOnHand(), is(20));
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void should_reject_summaries_as_of_date_sorted_by_unknown_property() throws Exception {
+    stockCardRepository.findSummariesAsOf(randomUUID(), randomUUID(), LocalDate.of(2017, 1, 31),
+        new PageRequest(0, 2, new Sort("originEvent")));
+  }
+
+  private StockEventDto createPhysicalInventory(StockEventDto sameCardAs, int quantity) {
+    StockEventDto eventDto = createStockEventDto();
+    StockEventLineItem lineItem = eventDto.getLineItems().get(0);
+    if (sameCardAs != null) {
+      eventDto.setProgramId(sameCardAs.getProgramId());
+      eventDto.setFacilityId(sameCardAs.getFacilityId());
+      lineItem.setOrderableId(sameCardAs.getLineItems().get(0).getOrderableId());
+    }
+    lineItem.setSourceId(null);
+    lineItem.setDestinationId(null);
+    lineItem.setReasonId(null);
+    lineItem.setQuantity(quantity);
+    return eventDto;
+  }
+
+  private StockEventDto createEventForSameCard(StockEventDto sameCardAs) {
+    StockEventDto eventDto = createStockEventDto();
+    eventDto.setProgramId(sameCardAs.getProgramId());
+    eventDto.setFacilityId(sameCardAs.getFacilityId());
+    eventDto.getLineItems().get(0)
+        .setOrderableId(sameCardAs.getLineItems().get(0).getOrderableId());
+    return eventDto;
+  }
+
+  private StockEvent save(StockEventDto eventDto, UUID userId) {
+    //events are saved in a transaction, the same way the stock event processor does it
+    return new TransactionTemplate(transactionManager).execute(status -> {
+      eventDto.setUserId(userId);
+      setContext(eventDto);
+
+      StockEvent event = eventDto.toEvent();
+      StockEvent savedEvent = stockEventsRepository.save(event);
+      stockCardService.saveFromEvent(eventDto, savedEvent.getId());
+      return savedEvent;
+    });
   }
 }
\ No newline at end of file
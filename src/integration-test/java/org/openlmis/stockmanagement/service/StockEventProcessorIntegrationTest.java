@@ -17,12 +17,23 @@ package org.openlmis.stockmanagement.service;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.StockEventDtoBuilder.createStockEventDto;
+import static org.openlmis.stockmanagement.testutils.StockEventDtoBuilder.createStockEventLineItem;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -31,12 +42,18 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.openlmis.stockmanagement.BaseIntegrationTest;
+import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.StockEventsPartiallySavedException;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
+import org.openlmis.stockmanagement.util.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -44,10 +61,14 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(StockEventProcessorIntegrationTest.class);
+  private static final int LARGE_INVENTORY_SIZE = 2000;
 
   @MockBean
   private StockEventValidationsService stockEventValidationsService;
@@ -72,6 +93,9 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
   @Autowired
   private PhysicalInventoriesRepository physicalInventoriesRepository;
 
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
   @Mock
   private SecurityContext securityContext;
 
@@ -160,6 +184,127 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
         .submitPhysicalInventory(any(PhysicalInventoryDto.class), any(UUID.class));
   }
 
+  @Test
+  public void shouldSaveAllEventsInOrderWhenProcessingBatch() throws Exception {
+    //given
+    StockEventDto first = createStockEventDto();
+    first.setUserId(userId);
+    StockEventDto second = createStockEventDto();
+    second.setUserId(userId);
+    second.setProgramId(first.getProgramId());
+    second.setFacilityId(first.getFacilityId());
+
+    //when
+    List<UUID> eventIds = stockEventProcessor.processAll(Arrays.asList(first, second));
+
+    //then
+    assertSize(cardSize + 2, eventSize + 2, lineItemSize + 2);
+    assertThat(eventIds.size(), is(2));
+    assertThat(stockEventsRepository.findOne(eventIds.get(0)).getDocumentNumber(),
+        is(first.getDocumentNumber()));
+    verify(stockEventNotificationProcessor).callAllNotifications(first);
+    verify(stockEventNotificationProcessor).callAllNotifications(second);
+  }
+
+  @Test
+  public void shouldNotCallNotificationsOfBatchWhichIsRolledBack() throws Exception {
+    //given
+    StockEventDto first = createStockEventDto();
+    first.setUserId(userId);
+    StockEventDto second = createStockEventDto();
+    second.setUserId(userId);
+
+    Mockito.doThrow(new ValidationMessageException(new Message("some error")))
+        .when(stockEventValidationsService).validate(second);
+
+    //when
+    try {
+      stockEventProcessor.processAll(Arrays.asList(first, second));
+      Assert.fail();
+    } catch (ValidationMessageException ex) {
+      //then
+      assertSize(cardSize, eventSize, lineItemSize);
+      verify(stockEventNotificationProcessor, never()).callAllNotifications(first);
+    }
+  }
+
+  @Test
+  public void shouldReturnIdsOfSavedEventsWhenLaterChunkFails() throws Exception {
+    //given
+    StockEventDto first = createStockEventDto();
+    first.setUserId(userId);
+    StockEventDto second = createStockEventDto();
+    second.setUserId(userId);
+
+    Mockito.doThrow(new ValidationMessageException(new Message("some error")))
+        .when(stockEventValidationsService).validate(second);
+    ReflectionTestUtils.setField(stockEventProcessor, "chunkSize", 1);
+
+    //when
+    try {
+      stockEventProcessor.processAll(Arrays.asList(first, second));
+      Assert.fail();
+    } catch (StockEventsPartiallySavedException ex) {
+      //then
+      assertSize(cardSize + 1, eventSize + 1, lineItemSize + 1);
+      assertThat(ex.getSavedEventIds().size(), is(1));
+      assertThat(stockEventsRepository.exists(ex.getSavedEventIds().get(0)), is(true));
+      assertThat(ex.getCause() instanceof ValidationMessageException, is(true));
+      verify(stockEventNotificationProcessor).callAllNotifications(first);
+      verify(stockEventNotificationProcessor, never()).callAllNotifications(second);
+    } finally {
+      ReflectionTestUtils.setField(stockEventProcessor, "chunkSize", 0);
+    }
+  }
+
+  @Test
+  public void shouldSaveLargePhysicalInventoryEventInBatches() throws Exception {
+    //given: a physical inventory of 2000 orderables without stock cards
+    StockEventDto stockEventDto = createStockEventDto();
+    stockEventDto.setUserId(userId);
+    stockEventDto.setLineItems(IntStream
+        .range(0, LARGE_INVENTORY_SIZE)
+        .mapToObj(index -> createPhysicalInventoryLineItem())
+        .collect(Collectors.toList()));
+
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+    statistics.setStatisticsEnabled(true);
+
+    //when
+    long start = System.currentTimeMillis();
+    try {
+      stockEventProcessor.process(stockEventDto);
+    } finally {
+      statistics.setStatisticsEnabled(false);
+    }
+    LOGGER.info("Processed physical inventory of {} line items in {} ms, inserted {} rows "
+            + "with {} prepared statements", LARGE_INVENTORY_SIZE,
+        System.currentTimeMillis() - start, statistics.getEntityInsertCount(),
+        statistics.getPrepareStatementCount());
+
+    //then
+    assertSize(cardSize + LARGE_INVENTORY_SIZE, eventSize + 1,
+        lineItemSize + LARGE_INVENTORY_SIZE);
+    //without batching every inserted row would need its own statement, with batches of 50 rows
+    //a statement is prepared once per batch
+    assertThat(statistics.getEntityInsertCount(),
+        greaterThanOrEqualTo(3L * LARGE_INVENTORY_SIZE));
+    assertThat(statistics.getPrepareStatementCount(),
+        lessThan(statistics.getEntityInsertCount() / 10));
+  }
+
+  private StockEventLineItem createPhysicalInventoryLineItem() {
+    StockEventLineItem lineItem = createStockEventLineItem();
+    lineItem.setReasonId(null);
+    lineItem.setReasonFreeText(null);
+    lineItem.setSourceId(null);
+    lineItem.setSourceFreeText(null);
+    lineItem.setDestinationId(null);
+    lineItem.setDestinationFreeText(null);
+    return lineItem;
+  }
+
   private void assertSize(long cardSize, long eventSize, long lineItemSize) {
     assertThat(stockCardRepository.count(), is(cardSize));
     assertThat(stockEventsRepository.count(), is(eventSize));
@@ -0,0 +1,182 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.openlmis.stockmanagement.dto.ReferenceDataCacheDto;
+import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.referencedata.ReferenceDataCache;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.UUID;
+
+public class ReferenceDataCacheControllerIntegrationTest extends BaseWebTest {
+
+  private static final String CACHES_API = "/api/referenceDataCaches";
+
+  @MockBean
+  private PermissionService permissionService;
+
+  @MockBean
+  private ReferenceDataCache referenceDataCache;
+
+  @Test
+  public void should_get_cache_statistics() throws Exception {
+    //given
+    when(referenceDataCache.getStatistics()).thenReturn(singletonList(
+        ReferenceDataCacheDto.builder().name("program").hitCount(3).missCount(1).build()));
+
+    //when
+    ResultActions resultActions = mvc.perform(get(CACHES_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$.[0].name", is("program")))
+        .andExpect(jsonPath("$.[0].hitCount", is(3)));
+  }
+
+  @Test
+  public void should_evict_all_caches() throws Exception {
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isNoContent());
+    verify(referenceDataCache).evictAll();
+  }
+
+  @Test
+  public void should_evict_one_cache() throws Exception {
+    //given
+    when(referenceDataCache.evict("program")).thenReturn(true);
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API + "/program")
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isNoContent());
+  }
+
+  @Test
+  public void should_return_404_when_evicting_unknown_cache() throws Exception {
+    //given
+    when(referenceDataCache.evict("unknown")).thenReturn(false);
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API + "/unknown")
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void should_evict_cached_permissions_of_user() throws Exception {
+    //given
+    UUID userId = UUID.randomUUID();
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API + "/permission/" + userId)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isNoContent());
+    verify(referenceDataCache).evict("permission", userId.toString());
+  }
+
+  @Test
+  public void should_return_403_when_user_has_no_permission() throws Exception {
+    //given
+    denySystemSettings();
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+    verify(referenceDataCache, never()).evictAll();
+  }
+
+  @Test
+  public void should_return_403_when_getting_statistics_without_permission() throws Exception {
+    //given
+    denySystemSettings();
+
+    //when
+    ResultActions resultActions = mvc.perform(get(CACHES_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+    verify(referenceDataCache, never()).getStatistics();
+  }
+
+  @Test
+  public void should_return_403_when_evicting_one_cache_without_permission() throws Exception {
+    //given
+    denySystemSettings();
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API + "/program")
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+    verify(referenceDataCache, never()).evict("program");
+  }
+
+  @Test
+  public void should_return_403_when_evicting_cached_permissions_without_permission()
+      throws Exception {
+    //given
+    denySystemSettings();
+    UUID userId = UUID.randomUUID();
+
+    //when
+    ResultActions resultActions = mvc.perform(delete(CACHES_API + "/permission/" + userId)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+    verify(referenceDataCache, never()).evict("permission", userId.toString());
+  }
+
+  private void denySystemSettings() {
+    doThrow(new PermissionMessageException(new Message("some error")))
+        .when(permissionService).canManageSystemSettings();
+  }
+}
@@ -18,12 +18,17 @@ package org.openlmis.stockmanagement.web;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.StockCardDtoBuilder.createStockCardDto;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -31,6 +36,8 @@ import org.junit.Test;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.exception.PermissionMessageException;
 import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.StockCardLedgerExportService;
+import org.openlmis.stockmanagement.service.StockCardLedgerExportService.Format;
 import org.openlmis.stockmanagement.service.StockCardService;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
 import org.openlmis.stockmanagement.testutils.StockCardDtoBuilder;
@@ -39,6 +46,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.web.servlet.ResultActions;
+
+import java.io.Writer;
+import java.time.LocalDate;
 import java.util.UUID;
 
 //the name of this controller test is intentional wrong: cardz insteads of cards
@@ -49,6 +59,9 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
 
   private static final String API_STOCK_CARDS = "/api/stockCards/";
   private static final String API_STOCK_CARD_SUMMARIES = "/api/stockCardSummaries";
+  private static final String API_STOCK_CARDS_EXPORT = "/api/stockCards/export";
+  private static final String API_INCONSISTENT_STOCK_ON_HAND =
+      "/api/stockCards/inconsistentStockOnHand";
 
   @MockBean
   private StockCardService stockCardService;
@@ -59,6 +72,9 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
   @MockBean
   private PermissionService permissionService;
 
+  @MockBean
+  private StockCardLedgerExportService stockCardLedgerExportService;
+
   @Test
   public void should_404_when_stock_card_not_found_by_id() throws Exception {
     //given
@@ -73,6 +89,21 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
     resultActions.andExpect(status().isNotFound());
   }
 
+  @Test
+  public void should_404_when_stock_card_of_line_items_not_found() throws Exception {
+    //given
+    when(stockCardService.findLineItems(any(UUID.class), any(UUID.class), anyInt()))
+        .thenReturn(null);
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARDS + UUID.randomUUID() + "/lineItems")
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isNotFound());
+  }
+
   @Test
   public void should_get_stock_card_by_id() throws Exception {
     //given
@@ -149,4 +180,131 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
         .andDo(print())
         .andExpect(jsonPath("$.content", hasSize(1)));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void should_get_stock_card_summaries_as_of_date() throws Exception {
+    //given
+    UUID programId = UUID.randomUUID();
+    UUID facilityId = UUID.randomUUID();
+    LocalDate asOfDate = LocalDate.of(2017, 3, 31);
+
+    PageRequest pageable = new PageRequest(0, 20);
+    when(stockCardSummariesService
+        .findStockCards(programId, facilityId, asOfDate, pageable))
+        .thenReturn(new PageImpl<>(singletonList(StockCardDtoBuilder.createStockCardDto())));
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARD_SUMMARIES)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("page", "0")
+            .param("size", "20")
+            .param("program", programId.toString())
+            .param("facility", facilityId.toString())
+            .param("asOfDate", "2017-03-31"));
+
+    //then
+    resultActions.andExpect(status().isOk())
+        .andExpect(jsonPath("$.content", hasSize(1)));
+  }
+
+  @Test
+  public void should_export_stock_ledger_as_gzipped_ndjson() throws Exception {
+    //given
+    UUID programId = UUID.randomUUID();
+    UUID facilityId = UUID.randomUUID();
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARDS_EXPORT)
+            .header("Accept-Encoding", "gzip, deflate")
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("program", programId.toString())
+            .param("facility", facilityId.toString())
+            .param("format", "ndjson"));
+
+    //then
+    resultActions
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"))
+        .andExpect(header().string("Content-Encoding", "gzip"));
+    verify(stockCardLedgerExportService)
+        .exportLedger(eq(programId), eq(facilityId), eq(Format.NDJSON), any(Writer.class));
+  }
+
+  @Test
+  public void should_return_400_when_stock_ledger_export_format_is_not_supported()
+      throws Exception {
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARDS_EXPORT)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("program", UUID.randomUUID().toString())
+            .param("facility", UUID.randomUUID().toString())
+            .param("format", "xml"));
+
+    //then
+    resultActions.andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void should_return_403_when_user_does_not_have_permission_to_export_stock_ledger()
+      throws Exception {
+    //given
+    UUID programId = UUID.randomUUID();
+    UUID facilityId = UUID.randomUUID();
+    doThrow(new PermissionMessageException(new Message("no permission")))
+        .when(permissionService).canViewStockCard(programId, facilityId);
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARDS_EXPORT)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("program", programId.toString())
+            .param("facility", facilityId.toString()));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+  }
+
+  @Test
+  public void should_get_cards_with_inconsistent_stock_on_hand() throws Exception {
+    //given
+    UUID programId = UUID.randomUUID();
+    UUID facilityId = UUID.randomUUID();
+    UUID cardId = UUID.randomUUID();
+    when(stockCardService.findCardsWithInconsistentStockOnHand(programId, facilityId))
+        .thenReturn(singletonList(cardId));
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_INCONSISTENT_STOCK_ON_HAND)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("program", programId.toString())
+            .param("facility", facilityId.toString()));
+
+    //then
+    resultActions.andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0]").value(cardId.toString()));
+  }
+
+  @Test
+  public void should_return_403_when_user_can_not_verify_stock_on_hand() throws Exception {
+    //given
+    doThrow(new PermissionMessageException(new Message("no permission")))
+        .when(permissionService).canManageSystemSettings();
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_INCONSISTENT_STOCK_ON_HAND)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param("program", UUID.randomUUID().toString())
+            .param("facility", UUID.randomUUID().toString()));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+    verify(stockCardService, never())
+        .findCardsWithInconsistentStockOnHand(any(UUID.class), any(UUID.class));
+  }
+}
@@ -18,27 +18,40 @@ package org.openlmis.stockmanagement.web;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.PROCESSED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_REASON_ASSIGNMENT_NOT_FOUND;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
+import org.openlmis.stockmanagement.dto.QueuedStockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventsErrorDto;
+import org.openlmis.stockmanagement.exception.StockEventsPartiallySavedException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.service.HomeFacilityPermissionService;
 import org.openlmis.stockmanagement.service.StockEventProcessor;
+import org.openlmis.stockmanagement.service.StockEventQueueService;
 import org.openlmis.stockmanagement.service.StockEventValidationsService;
+import org.openlmis.stockmanagement.util.Message;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpHeaders;
 
 import guru.nidi.ramltester.junit.RamlMatchers;
 
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
 public class StockEventsControllerIntegrationTest extends BaseWebIntegrationTest {
@@ -53,6 +66,9 @@ public class StockEventsControllerIntegrationTest extends BaseWebIntegrationTest
   @MockBean
   private HomeFacilityPermissionService homeFacilityPermissionService;
 
+  @MockBean
+  private StockEventQueueService stockEventQueueService;
+
   @Before
   public void setUp() {
     mockUserAuthenticated();
@@ -112,6 +128,124 @@ public class StockEventsControllerIntegrationTest extends BaseWebIntegrationTest
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  @Test
+  public void shouldQueueStockEventInAsyncMode() {
+    // given
+    mockHasPermissions();
+
+    StockEventDto stockEvent = generateStockEvent();
+    UUID expectedId = UUID.randomUUID();
+
+    when(stockEventQueueService.enqueue(any(StockEventDto.class)))
+        .thenReturn(expectedId);
+
+    // when
+    UUID result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .contentType(APPLICATION_JSON)
+        .queryParam("async", true)
+        .body(stockEvent)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(202)
+        .extract().as(UUID.class);
+
+    // then
+    assertEquals(expectedId, result);
+    verify(stockEventProcessor, never()).process(any(StockEventDto.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  // GET /api/queuedStockEvents/{id}
+
+  @Test
+  public void shouldReturnStatusOfQueuedStockEvent() {
+    // given
+    mockHasPermissions();
+
+    QueuedStockEvent queuedEvent = new QueuedStockEvent();
+    queuedEvent.setId(UUID.randomUUID());
+    queuedEvent.setQueuedDate(ZonedDateTime.now());
+    queuedEvent.processed(UUID.randomUUID());
+
+    when(stockEventQueueService.findOne(queuedEvent.getId())).thenReturn(queuedEvent);
+    when(stockEventQueueService.readPayload(queuedEvent)).thenReturn(generateStockEvent());
+
+    // when
+    QueuedStockEventDto result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam("id", queuedEvent.getId())
+        .when()
+        .get("/api/queuedStockEvents/{id}")
+        .then()
+        .statusCode(200)
+        .extract().as(QueuedStockEventDto.class);
+
+    // then
+    assertEquals(PROCESSED, result.getStatus());
+    assertEquals(queuedEvent.getStockEventId(), result.getStockEventId());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  // POST /api/stockEvents/batch
+
+  @Test
+  public void shouldCreateStockEvents() {
+    // given
+    mockHasPermissions();
+
+    List<StockEventDto> stockEvents = Arrays.asList(generateStockEvent(), generateStockEvent());
+    List<UUID> expectedIds = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+
+    when(stockEventProcessor.processAll(anyListOf(StockEventDto.class)))
+        .thenReturn(expectedIds);
+
+    // when
+    UUID[] result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .contentType(APPLICATION_JSON)
+        .body(stockEvents)
+        .when()
+        .post(RESOURCE_URL + "/batch")
+        .then()
+        .statusCode(201)
+        .extract().as(UUID[].class);
+
+    // then
+    assertEquals(expectedIds, Arrays.asList(result));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnIdsOfSavedEventsWhenLaterChunkFails() {
+    // given
+    mockHasPermissions();
+
+    List<StockEventDto> stockEvents = Arrays.asList(generateStockEvent(), generateStockEvent());
+    List<UUID> savedIds = Collections.singletonList(UUID.randomUUID());
+
+    when(stockEventProcessor.processAll(anyListOf(StockEventDto.class)))
+        .thenThrow(new StockEventsPartiallySavedException(savedIds,
+            new ValidationMessageException(new Message(ERROR_REASON_ASSIGNMENT_NOT_FOUND))));
+
+    // when
+    StockEventsErrorDto result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .contentType(APPLICATION_JSON)
+        .body(stockEvents)
+        .when()
+        .post(RESOURCE_URL + "/batch")
+        .then()
+        .statusCode(400)
+        .extract().as(StockEventsErrorDto.class);
+
+    // then
+    assertEquals(savedIds, result.getSavedEventIds());
+    assertEquals(ERROR_REASON_ASSIGNMENT_NOT_FOUND, result.getMessageKey());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   private StockEventDto generateStockEvent() {
     StockEventDto stockEvent = new StockEventDto();
 
@@ -0,0 +1,114 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.card;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openlmis.stockmanagement.domain.reason.ReasonType;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calculating stock on hand of a long stock card against a read-only ledger with
+ * calculating it on a shallow copy of the card, the way it was done before the ledger existed.
+ * Run with: gradle jmh -PjmhArgs=StockCardLedgerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StockCardLedgerBenchmark {
+
+  private static final LocalDate BASE_DATE = LocalDate.of(2017, 1, 1);
+  private static final ZonedDateTime BASE_DATE_TIME = ZonedDateTime.of(
+      2017, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  @Param({"10000", "100000"})
+  private int lineItemCount;
+
+  //line items are read from the database in order, but added to a card in any order
+  @Param({"true", "false"})
+  private boolean ordered;
+
+  private StockCard card;
+
+  /**
+   * Create a stock card with the given number of credit and debit line items.
+   */
+  @Setup
+  public void setUp() {
+    StockCardLineItemReason credit =
+        StockCardLineItemReason.builder().reasonType(ReasonType.CREDIT).build();
+    StockCardLineItemReason debit =
+        StockCardLineItemReason.builder().reasonType(ReasonType.DEBIT).build();
+
+    List<StockCardLineItem> lineItems = new ArrayList<>(lineItemCount);
+    for (int i = 0; i < lineItemCount; i++) {
+      StockCardLineItem lineItem = new StockCardLineItem();
+      lineItem.setOccurredDate(BASE_DATE.plusDays(i / 10));
+      lineItem.setProcessedDate(BASE_DATE_TIME.plusSeconds(i));
+      lineItem.setQuantity(i % 7 + 1);
+      lineItem.setReason(i % 3 == 2 ? debit : credit);
+      lineItems.add(lineItem);
+    }
+
+    if (!ordered) {
+      Collections.shuffle(lineItems, new Random(42));
+    }
+
+    card = new StockCard();
+    card.setLineItems(lineItems);
+  }
+
+  @Benchmark
+  public int ledger() {
+    return StockCardLedger.of(card.getLineItems()).calculateStockOnHand();
+  }
+
+  @Benchmark
+  public int ledgerOfEachLineItem() {
+    return StockCardLedger.of(card.getLineItems()).calculateStockOnHands().length;
+  }
+
+  /**
+   * Copy line items of the card and calculate stock on hand of the copies.
+   */
+  @Benchmark
+  public int shallowCopy() {
+    StockCard copy = card.shallowCopy();
+    copy.calculateStockOnHand();
+    return copy.getStockOnHand();
+  }
+}
@@ -27,6 +27,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ImportResource;
 import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 
@@ -35,6 +36,7 @@ import java.util.Locale;
 @SpringBootApplication
 @ImportResource("applicationContext.xml")
 @EnableAsync
+@EnableScheduling
 public class Application {
   private Logger logger = LoggerFactory.getLogger(Application.class);
 
@@ -0,0 +1,119 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement;
+
+import com.google.common.base.Splitter;
+
+import org.openlmis.stockmanagement.util.ReplicaLagMonitor;
+import org.openlmis.stockmanagement.util.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Configures connections to the primary database and its read replicas. Read-only transactions
+ * use a replica which is not lagging behind, everything else uses the primary. Without replicas,
+ * or when all of them lag behind, everything uses the primary.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+  /**
+   * Comma separated JDBC urls of replicas, without parameters.
+   */
+  @Value("${replica.urls:}")
+  private String replicaUrls;
+
+  @Value("${replica.urlParameters:}")
+  private String replicaUrlParameters;
+
+  @Value("${replica.maxLag:10}")
+  private long replicaMaxLag;
+
+  /**
+   * Creates pool of connections to the primary database.
+   *
+   * @return created data source.
+   */
+  @Bean
+  @ConfigurationProperties(prefix = "spring.datasource.tomcat")
+  public DataSource primaryDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().build();
+  }
+
+  /**
+   * Creates monitor of replicas, each of them with own pool of connections and the same
+   * credentials as the primary database.
+   *
+   * @return created monitor.
+   */
+  @Bean
+  public ReplicaLagMonitor replicaLagMonitor(DataSourceProperties properties) {
+    Map<String, DataSource> replicas = new LinkedHashMap<>();
+    for (String url : Splitter.on(',').trimResults().omitEmptyStrings().split(replicaUrls)) {
+      replicas.put(url, DataSourceBuilder.create()
+          .driverClassName(properties.determineDriverClassName())
+          .url(replicaUrlParameters.isEmpty() ? url : url + '?' + replicaUrlParameters)
+          .username(properties.determineUsername())
+          .password(properties.determinePassword())
+          .build());
+    }
+    return new ReplicaLagMonitor(replicas, replicaMaxLag);
+  }
+
+  /**
+   * Creates data source used by JPA, JDBC templates and migrations, which routes read-only
+   * transactions to replicas. Connections are got lazily, after transactions are marked as
+   * read-only.
+   *
+   * @return created data source.
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                               ReplicaLagMonitor replicaLagMonitor) {
+    if (replicaLagMonitor.getReplicas().isEmpty()) {
+      return primaryDataSource;
+    }
+    return new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primaryDataSource, replicaLagMonitor, true));
+  }
+
+  /**
+   * Creates data source used by reports, which always uses replicas when they are available.
+   *
+   * @return created data source.
+   */
+  @Bean
+  public DataSource replicationDataSource(
+      @Qualifier("primaryDataSource") DataSource primaryDataSource,
+      ReplicaLagMonitor replicaLagMonitor) {
+    if (replicaLagMonitor.getReplicas().isEmpty()) {
+      return primaryDataSource;
+    }
+    return new ReplicaRoutingDataSource(primaryDataSource, replicaLagMonitor, false);
+  }
+}
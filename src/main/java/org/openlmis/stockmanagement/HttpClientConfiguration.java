@@ -0,0 +1,146 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement;
+
+import com.google.common.base.Splitter;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openlmis.stockmanagement.util.HttpConnectionPoolMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures one pooled HTTP client used by every service that communicates with other
+ * services, so that connections are kept alive and reused instead of opened for every request.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+  @Value("${http.client.maxConnections:100}")
+  private int maxConnections;
+
+  @Value("${http.client.maxConnectionsPerRoute:20}")
+  private int maxConnectionsPerRoute;
+
+  /**
+   * Limits of connections to specific services, as comma separated url=limit pairs.
+   */
+  @Value("${http.client.maxConnectionsPerUrl:}")
+  private String maxConnectionsPerUrl;
+
+  @Value("${http.client.connectTimeout:5000}")
+  private int connectTimeout;
+
+  @Value("${http.client.connectionRequestTimeout:5000}")
+  private int connectionRequestTimeout;
+
+  @Value("${http.client.readTimeout:30000}")
+  private int readTimeout;
+
+  @Value("${http.client.keepAlive:30}")
+  private long keepAlive;
+
+  /**
+   * Creates pool of HTTP connections, limited in total and per route.
+   *
+   * @return created connection manager.
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager httpConnectionManager() {
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(
+        keepAlive, TimeUnit.SECONDS);
+    manager.setMaxTotal(maxConnections);
+    manager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    manager.setValidateAfterInactivity(2000);
+
+    if (!maxConnectionsPerUrl.trim().isEmpty()) {
+      Map<String, String> limits = Splitter.on(',').trimResults().omitEmptyStrings()
+          .withKeyValueSeparator('=')
+          .split(maxConnectionsPerUrl);
+      limits.forEach((url, limit) ->
+          manager.setMaxPerRoute(createRoute(url), Integer.parseInt(limit.trim())));
+    }
+
+    return manager;
+  }
+
+  /**
+   * Creates HTTP client which uses the connection pool and keeps connections alive for as long
+   * as the server allows, or for http.client.keepAlive seconds if it does not say.
+   *
+   * @return created HTTP client.
+   */
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager httpConnectionManager) {
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(connectTimeout)
+        .setConnectionRequestTimeout(connectionRequestTimeout)
+        .setSocketTimeout(readTimeout)
+        .build();
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+      long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+          .getKeepAliveDuration(response, context);
+      return duration > 0 ? duration : TimeUnit.SECONDS.toMillis(keepAlive);
+    };
+
+    return HttpClientBuilder.create()
+        .setConnectionManager(httpConnectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(keepAliveStrategy)
+        .evictExpiredConnections()
+        .evictIdleConnections(keepAlive, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Creates rest template shared by all services that communicate with other services.
+   *
+   * @return created rest template.
+   */
+  @Bean
+  public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+  }
+
+  @Bean
+  public HttpConnectionPoolMetrics httpConnectionPoolMetrics(
+      PoolingHttpClientConnectionManager httpConnectionManager) {
+    return new HttpConnectionPoolMetrics(httpConnectionManager);
+  }
+
+  private HttpRoute createRoute(String url) {
+    URI uri = URI.create(url.trim());
+    boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+    int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+
+    return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+  }
+}
@@ -18,19 +18,14 @@ package org.openlmis.stockmanagement.domain.card;
 import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
 import static javax.persistence.CascadeType.ALL;
-import static org.apache.commons.beanutils.BeanUtils.cloneBean;
 import static org.apache.commons.collections.CollectionUtils.isEmpty;
-import static org.hibernate.annotations.LazyCollectionOption.FALSE;
-import static org.openlmis.stockmanagement.i18n.MessageKeys.SERVER_ERROR_SHALLOW_COPY;
 
-import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.Formula;
 import org.openlmis.stockmanagement.domain.BaseEntity;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.identity.IdentifiableByOrderableLot;
 import org.openlmis.stockmanagement.dto.StockEventDto;
-import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.util.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,10 +34,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.lang.reflect.InvocationTargetException;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 import javax.persistence.Column;
@@ -51,8 +50,8 @@ import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
-import javax.persistence.Transient;
 
 @Entity
 @Data
@@ -80,13 +79,18 @@ public class StockCard extends BaseEntity implements IdentifiableByOrderableLot
   @Column
   private UUID lotId;
 
-  @LazyCollection(FALSE)
+  //line items are loaded only when needed, new ones are added without loading the others
   @OneToMany(cascade = ALL, mappedBy = "stockCard")
+  @OrderBy("occurredDate, processedDate, id")
   private List<StockCardLineItem> lineItems;
 
-  @Transient
+  @Column
   private Integer stockOnHand = null;
 
+  @Formula("(select max(li.occurreddate) from stockmanagement.stock_card_line_items li "
+      + "where li.stockcardid = id)")
+  private LocalDate latestOccurredDate;
+
   /**
    * Create stock card from stock event dto and its line item.
    *
@@ -138,8 +142,18 @@ public class StockCard extends BaseEntity implements IdentifiableByOrderableLot
       return;
     }
 
+    calculateStockOnHand(0);
+  }
+
+  /**
+   * Calculate stock on hand for each line item and the card itself, starting from the given stock
+   * on hand instead of zero. Used to apply new line items on top of a persisted stock on hand.
+   *
+   * @param initialStockOnHand stock on hand before the first line item of this card.
+   */
+  public void calculateStockOnHand(int initialStockOnHand) {
     reorderLineItemsByDates();
-    int previousSoh = 0;
+    int previousSoh = initialStockOnHand;
     for (StockCardLineItem lineItem : getLineItems()) {
       lineItem.calculateStockOnHand(previousSoh);
       previousSoh = lineItem.getStockOnHand();
@@ -148,6 +162,174 @@ public class StockCard extends BaseEntity implements IdentifiableByOrderableLot
     LOGGER.debug("Calculated stock on hand: " + previousSoh);
   }
 
+  /**
+   * Update persisted stock on hand of this card after the given line item has been added to it.
+   * When the line item is the latest one, only the line item itself is calculated on top of the
+   * current stock on hand. A card without persisted stock on hand, or a backdated line item, causes
+   * the whole card to be recalculated. Backdated line items of persisted cards should rather be
+   * recalculated from the nearest checkpoint, see {@link #recalculateStockOnHand(
+   * StockCardLineItem, StockCardCheckpoint, List, List)}.
+   *
+   * @param addedLineItem line item that was just added to this card.
+   */
+  public void updateStockOnHand(StockCardLineItem addedLineItem) {
+    if (null == stockOnHand || isBackdated(addedLineItem)) {
+      LOGGER.debug("Recalculating stock on hand of the whole card");
+      recalculateStockOnHand();
+      return;
+    }
+
+    setStockOnHand(addedLineItem.updateStockOnHand(stockOnHand));
+    setLatestOccurredDate(addedLineItem.getOccurredDate());
+    LOGGER.debug("Updated stock on hand: " + stockOnHand);
+  }
+
+  /**
+   * Recalculate persisted stock on hand after a backdated line item has been added to this card,
+   * starting from the nearest checkpoint before it. Only the line items after the checkpoint are
+   * needed, they are recalculated up to the first physical inventory following the added line
+   * item, since stock on hand from there on does not depend on the line items before. Stock on
+   * hand of checkpoints is updated along with their line items.
+   *
+   * @param addedLineItem    backdated line item that was just added to this card.
+   * @param checkpoint       the nearest checkpoint before the added line item.
+   * @param lineItems        line items after the checkpoint, in order of their dates.
+   * @param laterCheckpoints checkpoints after the given one.
+   */
+  public void recalculateStockOnHand(StockCardLineItem addedLineItem,
+                                     StockCardCheckpoint checkpoint,
+                                     List<StockCardLineItem> lineItems,
+                                     List<StockCardCheckpoint> laterCheckpoints) {
+    Map<UUID, StockCardCheckpoint> checkpointsByLineItem = new HashMap<>();
+    laterCheckpoints.forEach(later -> checkpointsByLineItem.put(later.getLineItemId(), later));
+
+    //added line item is replayed whether it has been flushed already or not
+    List<StockCardLineItem> items = lineItems.stream()
+        .filter(item -> item != addedLineItem
+            && (null == item.getId() || !item.getId().equals(addedLineItem.getId())))
+        .collect(toList());
+    items.add(addedLineItem);
+    items.sort(byDates());
+
+    int previousSoh = checkpoint.getStockOnHand();
+    boolean afterAddedLineItem = false;
+    for (StockCardLineItem lineItem : items) {
+      if (afterAddedLineItem && lineItem.isPhysicalInventory()) {
+        LOGGER.debug("Recalculated stock on hand up to physical inventory");
+        return;
+      }
+
+      previousSoh = lineItem.updateStockOnHand(previousSoh);
+      afterAddedLineItem |= lineItem == addedLineItem;
+
+      StockCardCheckpoint laterCheckpoint = checkpointsByLineItem.get(lineItem.getId());
+      if (null != laterCheckpoint) {
+        laterCheckpoint.setStockOnHand(previousSoh);
+      }
+    }
+    setStockOnHand(previousSoh);
+    LOGGER.debug("Recalculated stock on hand from checkpoint: " + stockOnHand);
+  }
+
+  /**
+   * Whether the given line item occurred before the latest line item of this card.
+   *
+   * @param lineItem line item of this card.
+   * @return true if the line item is backdated.
+   */
+  public boolean isBackdated(StockCardLineItem lineItem) {
+    LocalDate latest = latestOccurredDate();
+    return null != latest && lineItem.getOccurredDate().isBefore(latest);
+  }
+
+  /**
+   * Whether the given line item, which is not backdated, is the first one of its month. A
+   * checkpoint is taken after such line items.
+   *
+   * @param lineItem line item of this card.
+   * @return true if no line item of this card occurred in the same month before.
+   */
+  public boolean startsNewMonth(StockCardLineItem lineItem) {
+    LocalDate latest = latestOccurredDate();
+    return null == latest
+        || YearMonth.from(latest).isBefore(YearMonth.from(lineItem.getOccurredDate()));
+  }
+
+  /**
+   * Recalculate persisted stock on hand of this card and its line items by replaying all line
+   * items. In contrast to {@link #calculateStockOnHand()}, quantities and reasons of line items are
+   * left untouched, so it is safe to call it on managed entities.
+   */
+  public void recalculateStockOnHand() {
+    if (isEmpty(lineItems)) {
+      return;
+    }
+
+    int previousSoh = 0;
+    for (StockCardLineItem lineItem : lineItems.stream().sorted(byDates()).collect(toList())) {
+      previousSoh = lineItem.updateStockOnHand(previousSoh);
+    }
+    setStockOnHand(previousSoh);
+    setLatestOccurredDate(maxOccurredDate());
+  }
+
+  /**
+   * Check whether persisted stock on hand of this card, its line items and the given checkpoints
+   * matches the one calculated by replaying all line items. The card itself is not modified.
+   *
+   * @param checkpoints checkpoints of this card.
+   * @return true if persisted stock on hand is consistent with a full replay.
+   */
+  public boolean isStockOnHandConsistent(List<StockCardCheckpoint> checkpoints) {
+    StockCardLedger ledger = StockCardLedger.of(lineItems);
+    int[] replayed = ledger.calculateStockOnHands();
+    Map<UUID, Integer> replayedByLineItem = new HashMap<>();
+
+    for (int i = 0; i < replayed.length; i++) {
+      if (!Objects.equals(lineItems.get(i).getStockOnHand(), replayed[i])) {
+        return false;
+      }
+      replayedByLineItem.put(lineItems.get(i).getId(), replayed[i]);
+    }
+
+    for (StockCardCheckpoint checkpoint : checkpoints) {
+      Integer replayedStockOnHand = replayedByLineItem.get(checkpoint.getLineItemId());
+      if (!Objects.equals(checkpoint.getStockOnHand(), replayedStockOnHand)) {
+        return false;
+      }
+    }
+
+    return replayed.length == 0 || Objects.equals(stockOnHand, ledger.calculateStockOnHand());
+  }
+
+  /**
+   * Returns persisted stock on hand of this card. Cards that have not got it yet are recalculated
+   * by replaying all line items first.
+   *
+   * @return current stock on hand.
+   */
+  public Integer currentStockOnHand() {
+    if (null == stockOnHand) {
+      recalculateStockOnHand();
+    }
+
+    return stockOnHand;
+  }
+
+  /**
+   * Returns occurred date of the latest line item of this card. For persisted cards it is
+   * selected together with the card, so line items are not loaded.
+   *
+   * @return the latest occurred date, or null if card has no line items.
+   */
+  public LocalDate latestOccurredDate() {
+    if (null == latestOccurredDate) {
+      return maxOccurredDate();
+    }
+
+    return latestOccurredDate;
+  }
+
   /**
    * Creates a shallow copy of this stock card. Used during recalculation to avoid updates on
    * existing stock cards and line items.
@@ -162,30 +344,38 @@ public class StockCard extends BaseEntity implements IdentifiableByOrderableLot
     clone.setFacilityId(facilityId);
     clone.setLineItems(new ArrayList<>());
 
-    try {
-      if (lineItems != null) {
-        for (StockCardLineItem lineItem : this.getLineItems()) {
-          clone.getLineItems().add((StockCardLineItem) cloneBean(lineItem));
-        }
+    if (lineItems != null) {
+      for (StockCardLineItem lineItem : this.getLineItems()) {
+        clone.getLineItems().add(lineItem.shallowCopy());
       }
-    } catch (InvocationTargetException | NoSuchMethodException
-      | InstantiationException | IllegalAccessException ex) {
-      //if this exception is ever seen in front end, that means our code has a bug. we only put
-      //this here to satisfy checkstyle/pmd and to make sure potential bug is not hidden.
-      throw new ValidationMessageException(new Message(SERVER_ERROR_SHALLOW_COPY, ex));
     }
 
     return clone;
   }
 
+  private LocalDate maxOccurredDate() {
+    if (isEmpty(lineItems)) {
+      return null;
+    }
+
+    return lineItems.stream()
+        .map(StockCardLineItem::getOccurredDate)
+        .max(Comparator.naturalOrder())
+        .orElse(null);
+  }
+
   private void reorderLineItemsByDates() {
+    setLineItems(lineItems.stream()
+        .sorted(byDates())
+        .collect(toList()));
+  }
+
+  private static Comparator<StockCardLineItem> byDates() {
     Comparator<StockCardLineItem> byOccurred =
         comparing(StockCardLineItem::getOccurredDate);
     Comparator<StockCardLineItem> byProcessed =
         comparing(StockCardLineItem::getProcessedDate);
 
-    setLineItems(lineItems.stream()
-        .sorted(byOccurred.thenComparing(byProcessed))
-        .collect(toList()));
+    return byOccurred.thenComparing(byProcessed);
   }
 }
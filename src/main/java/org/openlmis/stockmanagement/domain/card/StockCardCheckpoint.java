@@ -0,0 +1,90 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.card;
+
+import org.openlmis.stockmanagement.domain.BaseEntity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Stock on hand of a stock card after one of its line items. A checkpoint is taken after the first
+ * line item of each month, so that a backdated line item is recalculated from the nearest
+ * checkpoint before it, without reading older line items of the card. Dates of the line item are
+ * copied, so that checkpoints are looked up without joining line items.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "stock_card_checkpoints", schema = "stockmanagement")
+public class StockCardCheckpoint extends BaseEntity {
+
+  @Column(nullable = false)
+  private UUID stockCardId;
+
+  @Column(nullable = false, unique = true)
+  private UUID lineItemId;
+
+  @Column(nullable = false)
+  private LocalDate occurredDate;
+
+  @Column(nullable = false, columnDefinition = "timestamp")
+  private ZonedDateTime processedDate;
+
+  @Column(nullable = false)
+  private Integer stockOnHand;
+
+  /**
+   * Create a checkpoint after the given persisted line item, with its current stock on hand.
+   *
+   * @param lineItem line item of a stock card.
+   * @return created checkpoint.
+   */
+  public static StockCardCheckpoint createCheckpointAfter(StockCardLineItem lineItem) {
+    StockCardCheckpoint checkpoint = new StockCardCheckpoint();
+    checkpoint.setStockCardId(lineItem.getStockCard().getId());
+    checkpoint.setLineItemId(lineItem.getId());
+    checkpoint.setOccurredDate(lineItem.getOccurredDate());
+    checkpoint.setProcessedDate(lineItem.getProcessedDate());
+    checkpoint.setStockOnHand(lineItem.getStockOnHand());
+    return checkpoint;
+  }
+
+  /**
+   * Create a checkpoint before the first line item of the given card, it is never persisted.
+   *
+   * @param stockCardId stock card id.
+   * @return created checkpoint with zero stock on hand.
+   */
+  public static StockCardCheckpoint createInitialCheckpoint(UUID stockCardId) {
+    StockCardCheckpoint checkpoint = new StockCardCheckpoint();
+    checkpoint.setStockCardId(stockCardId);
+    checkpoint.setStockOnHand(0);
+    return checkpoint;
+  }
+
+  public boolean isInitial() {
+    return null == lineItemId;
+  }
+}
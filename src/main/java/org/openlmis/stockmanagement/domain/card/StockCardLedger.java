@@ -0,0 +1,172 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.card;
+
+import static org.openlmis.stockmanagement.domain.card.StockCardLineItem.calculateNextStockOnHand;
+
+import java.util.List;
+
+/**
+ * Read-only view of stock card line items, holding only what is needed to calculate stock on
+ * hand: quantities, kinds and dates of line items. Stock on hand can be calculated against it
+ * without copying or modifying line item entities, so it is safe to use on managed entities.
+ */
+public final class StockCardLedger {
+  private final int[] quantities;
+  private final boolean[] physicalInventories;
+  private final boolean[] increases;
+  //dates are kept as primitive keys, so that line items are ordered without boxing
+  private final long[] occurredDays;
+  private final long[] processedSeconds;
+  private final int[] processedNanos;
+
+  private StockCardLedger(int size) {
+    quantities = new int[size];
+    physicalInventories = new boolean[size];
+    increases = new boolean[size];
+    occurredDays = new long[size];
+    processedSeconds = new long[size];
+    processedNanos = new int[size];
+  }
+
+  /**
+   * Create ledger of given line items. Order of line items does not matter, they are ordered by
+   * occurred date, then by processed date when stock on hand is calculated.
+   *
+   * @param lineItems line items of a stock card.
+   * @return the created ledger.
+   */
+  public static StockCardLedger of(List<StockCardLineItem> lineItems) {
+    StockCardLedger ledger = new StockCardLedger(lineItems.size());
+
+    for (int i = 0; i < lineItems.size(); i++) {
+      StockCardLineItem lineItem = lineItems.get(i);
+      ledger.quantities[i] = lineItem.getQuantity();
+      ledger.physicalInventories[i] = lineItem.isPhysicalInventory();
+      ledger.increases[i] = lineItem.shouldIncrease();
+      ledger.occurredDays[i] = lineItem.getOccurredDate().toEpochDay();
+      ledger.processedSeconds[i] = lineItem.getProcessedDate().toEpochSecond();
+      ledger.processedNanos[i] = lineItem.getProcessedDate().getNano();
+    }
+
+    return ledger;
+  }
+
+  /**
+   * Calculate stock on hand after all line items of this ledger.
+   *
+   * @return stock on hand, zero if there are no line items.
+   */
+  public int calculateStockOnHand() {
+    return calculateStockOnHand(0);
+  }
+
+  /**
+   * Calculate stock on hand after all line items of this ledger, starting from the given stock on
+   * hand instead of zero.
+   *
+   * @param initialStockOnHand stock on hand before the first line item of this ledger.
+   * @return stock on hand after the last line item.
+   */
+  public int calculateStockOnHand(int initialStockOnHand) {
+    int previousSoh = initialStockOnHand;
+    for (int index : orderByDates()) {
+      previousSoh = calculateNextStockOnHand(
+          previousSoh, quantities[index], physicalInventories[index], increases[index]);
+    }
+
+    return previousSoh;
+  }
+
+  /**
+   * Calculate stock on hand after each line item of this ledger.
+   *
+   * @return stock on hand after each line item, in the order line items were given.
+   */
+  public int[] calculateStockOnHands() {
+    int[] stockOnHands = new int[quantities.length];
+
+    int previousSoh = 0;
+    for (int index : orderByDates()) {
+      previousSoh = calculateNextStockOnHand(
+          previousSoh, quantities[index], physicalInventories[index], increases[index]);
+      stockOnHands[index] = previousSoh;
+    }
+
+    return stockOnHands;
+  }
+
+  /**
+   * Indexes of line items ordered by occurred date, then by processed date. Line items are usually
+   * given in this order already, then they are only checked. Otherwise indexes are merge sorted,
+   * which keeps line items with the same dates in the order they were given.
+   */
+  private int[] orderByDates() {
+    int[] order = new int[quantities.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    if (!isOrderedByDates(order)) {
+      mergeSort(order.clone(), order, 0, order.length);
+    }
+
+    return order;
+  }
+
+  private boolean isOrderedByDates(int[] order) {
+    for (int i = 1; i < order.length; i++) {
+      if (compareDates(order[i - 1], order[i]) > 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void mergeSort(int[] source, int[] target, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+
+    //halves are sorted into the source, then merged into the target
+    int middle = (from + to) >>> 1;
+    mergeSort(target, source, from, middle);
+    mergeSort(target, source, middle, to);
+
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || left < middle && compareDates(source[left], source[right]) <= 0) {
+        target[i] = source[left++];
+      } else {
+        target[i] = source[right++];
+      }
+    }
+  }
+
+  private int compareDates(int first, int second) {
+    int result = Long.compare(occurredDays[first], occurredDays[second]);
+    if (result == 0) {
+      result = Long.compare(processedSeconds[first], processedSeconds[second]);
+    }
+    if (result == 0) {
+      result = Integer.compare(processedNanos[first], processedNanos[second]);
+    }
+
+    return result;
+  }
+}
@@ -18,11 +18,13 @@ package org.openlmis.stockmanagement.domain.card;
 import static com.fasterxml.jackson.annotation.JsonFormat.Shape.STRING;
 import static java.time.ZonedDateTime.now;
 import static javax.persistence.CascadeType.ALL;
+import static org.apache.commons.beanutils.BeanUtils.cloneBean;
 import static org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason.physicalBalance;
 import static org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason.physicalCredit;
 import static org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason.physicalDebit;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERRRO_EVENT_SOH_EXCEEDS_LIMIT;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.SERVER_ERROR_SHALLOW_COPY;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -46,6 +48,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.lang.reflect.InvocationTargetException;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -60,7 +63,6 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
-import javax.persistence.Transient;
 
 @Entity
 @Data
@@ -77,7 +79,8 @@ public class StockCardLineItem extends BaseEntity {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(StockCardLineItem.class);
 
-  @ManyToOne()
+  //line items are usually read for a card that is already loaded, so it is not fetched with them
+  @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(nullable = false)
   private StockCard stockCard;
 
@@ -120,7 +123,7 @@ public class StockCardLineItem extends BaseEntity {
   @Column(nullable = false)
   private UUID userId;
 
-  @Transient
+  @Column
   private Integer stockOnHand;
 
   @OneToMany(
@@ -194,6 +197,21 @@ public class StockCardLineItem extends BaseEntity {
     return cardLineItem;
   }
 
+  /**
+   * Creates a shallow copy of this line item. Used to calculate stock on hand for display without
+   * updating the persisted line item.
+   */
+  public StockCardLineItem shallowCopy() {
+    try {
+      return (StockCardLineItem) cloneBean(this);
+    } catch (InvocationTargetException | NoSuchMethodException
+      | InstantiationException | IllegalAccessException ex) {
+      //if this exception is ever seen in front end, that means our code has a bug. we only put
+      //this here to satisfy checkstyle/pmd and to make sure potential bug is not hidden.
+      throw new ValidationMessageException(new Message(SERVER_ERROR_SHALLOW_COPY, ex));
+    }
+  }
+
   /**
    * Calculate stock on hand with previous stock on hand.
    *
@@ -205,28 +223,62 @@ public class StockCardLineItem extends BaseEntity {
       setStockOnHand(quantity);
       setQuantity(Math.abs(getStockOnHand() - previousStockOnHand));
       LOGGER.debug("Physical inventory: " + getStockOnHand());
-    } else if (shouldIncrease()) {
-      tryIncrease(previousStockOnHand);
     } else {
-      tryDecrease(previousStockOnHand);
+      updateStockOnHand(previousStockOnHand);
+    }
+  }
+
+  /**
+   * Update stock on hand with previous stock on hand. Unlike {@link #calculateStockOnHand(int)}
+   * it never changes quantity or reason of physical inventory line items, so it can be used to
+   * keep persisted stock on hand up to date.
+   *
+   * @param previousStockOnHand previous stock on hand.
+   * @return stock on hand after this line item.
+   */
+  public int updateStockOnHand(int previousStockOnHand) {
+    setStockOnHand(calculateNextStockOnHand(
+        previousStockOnHand, quantity, isPhysicalInventory(), shouldIncrease()));
+
+    return getStockOnHand();
+  }
+
+  /**
+   * Calculate stock on hand after a line item with given quantity and kind.
+   *
+   * @param previousStockOnHand previous stock on hand.
+   * @param quantity            quantity of the line item.
+   * @param physicalInventory   whether the line item is a physical inventory.
+   * @param increase            whether the line item increases stock on hand.
+   * @return stock on hand after the line item.
+   */
+  public static int calculateNextStockOnHand(int previousStockOnHand, int quantity,
+                                             boolean physicalInventory, boolean increase) {
+    if (physicalInventory) {
+      return quantity;
+    } else if (increase) {
+      return tryIncrease(previousStockOnHand, quantity);
+    } else {
+      return tryDecrease(previousStockOnHand, quantity);
     }
   }
 
-  private void tryDecrease(int previousStockOnHand) {
+  private static int tryDecrease(int previousStockOnHand, int quantity) {
     if (previousStockOnHand - quantity < 0) {
       throw new ValidationMessageException(
           new Message(ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH, previousStockOnHand, quantity));
     }
 
-    setStockOnHand(previousStockOnHand - quantity);
-    LOGGER.debug(previousStockOnHand + " - " + quantity + " = " + getStockOnHand());
+    LOGGER.debug(previousStockOnHand + " - " + quantity + " = " + (previousStockOnHand - quantity));
+    return previousStockOnHand - quantity;
   }
 
-  private void tryIncrease(int previousStockOnHand) {
+  private static int tryIncrease(int previousStockOnHand, int quantity) {
     try {
       //this may exceed max of integer
-      setStockOnHand(Math.addExact(previousStockOnHand, quantity));
-      LOGGER.debug(previousStockOnHand + " + " + quantity + " = " + getStockOnHand());
+      int stockOnHand = Math.addExact(previousStockOnHand, quantity);
+      LOGGER.debug(previousStockOnHand + " + " + quantity + " = " + stockOnHand);
+      return stockOnHand;
     } catch (ArithmeticException ex) {
       throw new ValidationMessageException(
           new Message(ERRRO_EVENT_SOH_EXCEEDS_LIMIT, previousStockOnHand, quantity, ex));
@@ -243,11 +295,11 @@ public class StockCardLineItem extends BaseEntity {
     }
   }
 
-  private boolean isPhysicalInventory() {
+  boolean isPhysicalInventory() {
     return source == null && destination == null && reason == null;
   }
 
-  private boolean shouldIncrease() {
+  boolean shouldIncrease() {
     boolean hasSource = source != null;
     boolean isCredit = reason != null && reason.getReasonType() == ReasonType.CREDIT;
     return hasSource || isCredit;
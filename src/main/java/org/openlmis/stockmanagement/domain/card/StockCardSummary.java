@@ -0,0 +1,49 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.card;
+
+import org.openlmis.stockmanagement.domain.identity.IdentifiableByOrderableLot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Summary of a stock card: persisted stock on hand and the latest occurred date, without any line
+ * items. It is selected directly by {@link org.openlmis.stockmanagement.repository
+ * .StockCardRepository}, so line items of the card are never loaded.
+ */
+@Getter
+@AllArgsConstructor
+public class StockCardSummary implements IdentifiableByOrderableLot {
+  private UUID id;
+  private UUID programId;
+  private UUID facilityId;
+  private UUID orderableId;
+  private UUID lotId;
+  private Integer stockOnHand;
+  private LocalDate lastUpdate;
+
+  /**
+   * Create summary without the latest occurred date, when only the card itself is needed.
+   */
+  public StockCardSummary(UUID id, UUID programId, UUID facilityId, UUID orderableId, UUID lotId,
+                          Integer stockOnHand) {
+    this(id, programId, facilityId, orderableId, lotId, stockOnHand, null);
+  }
+}
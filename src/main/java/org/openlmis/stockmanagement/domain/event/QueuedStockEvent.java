@@ -0,0 +1,125 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.event;
+
+import static javax.persistence.EnumType.STRING;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.FAILED;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.PROCESSED;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.QUEUED;
+
+import org.openlmis.stockmanagement.domain.BaseEntity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+
+/**
+ * A stock event submitted for asynchronous processing. The event itself is kept as JSON until it
+ * is processed, events of the same facility are processed in order of their sequence numbers.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "queued_stock_events", schema = "stockmanagement")
+public class QueuedStockEvent extends BaseEntity {
+
+  @Column(nullable = false, insertable = false, updatable = false)
+  private Long sequenceNumber;
+
+  @Column(nullable = false)
+  private UUID facilityId;
+
+  @Column(nullable = false)
+  private UUID programId;
+
+  private UUID userId;
+
+  @Column(nullable = false, columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String payload;
+
+  @Enumerated(STRING)
+  @Column(nullable = false, columnDefinition = TEXT_COLUMN_DEFINITION)
+  private QueuedStockEventStatus status;
+
+  private UUID stockEventId;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String errorMessageKey;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String errorMessage;
+
+  @Column(nullable = false, columnDefinition = "timestamp")
+  private ZonedDateTime queuedDate;
+
+  @Column(columnDefinition = "timestamp")
+  private ZonedDateTime processedDate;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(columnDefinition = "timestamp")
+  private ZonedDateTime nextAttemptDate;
+
+  /**
+   * Mark the event as processed.
+   *
+   * @param stockEventId id of the saved stock event.
+   */
+  public void processed(UUID stockEventId) {
+    this.status = PROCESSED;
+    this.stockEventId = stockEventId;
+    this.processedDate = ZonedDateTime.now();
+  }
+
+  /**
+   * Mark the event as failed.
+   *
+   * @param messageKey key of the error message.
+   * @param message    localized error message.
+   */
+  public void failed(String messageKey, String message) {
+    this.status = FAILED;
+    this.errorMessageKey = messageKey;
+    this.errorMessage = message;
+    this.processedDate = ZonedDateTime.now();
+  }
+
+  /**
+   * Count a failed attempt to process the event.
+   */
+  public void attemptFailed() {
+    this.attempts++;
+  }
+
+  /**
+   * Queue the event again after a failed attempt to process it. Later events of the facility
+   * wait until it is processed.
+   *
+   * @param delaySeconds seconds to wait before the next attempt.
+   */
+  public void retryLater(long delaySeconds) {
+    this.status = QUEUED;
+    this.nextAttemptDate = ZonedDateTime.now().plusSeconds(delaySeconds);
+  }
+}
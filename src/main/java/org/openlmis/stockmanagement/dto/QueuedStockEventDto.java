@@ -0,0 +1,59 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.dto;
+
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
+import org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class QueuedStockEventDto {
+  private UUID id;
+  private QueuedStockEventStatus status;
+  private UUID stockEventId;
+  private String messageKey;
+  private String message;
+  private ZonedDateTime queuedDate;
+  private ZonedDateTime processedDate;
+  private int attempts;
+  private ZonedDateTime nextAttemptDate;
+
+  /**
+   * Create dto from queued stock event.
+   *
+   * @param queuedEvent queued stock event.
+   * @return created dto.
+   */
+  public static QueuedStockEventDto from(QueuedStockEvent queuedEvent) {
+    return new QueuedStockEventDto(queuedEvent.getId(), queuedEvent.getStatus(),
+        queuedEvent.getStockEventId(), queuedEvent.getErrorMessageKey(),
+        queuedEvent.getErrorMessage(), queuedEvent.getQueuedDate(),
+        queuedEvent.getProcessedDate(), queuedEvent.getAttempts(),
+        queuedEvent.getNextAttemptDate());
+  }
+}
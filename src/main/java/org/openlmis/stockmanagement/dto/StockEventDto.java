@@ -96,6 +96,17 @@ public class StockEventDto {
     return !isEmpty(getLineItems());
   }
 
+  /**
+   * Retrieves all orderable IDs from event line items.
+   */
+  @JsonIgnore
+  public Set<UUID> getOrderableIds() {
+    return lineItems
+        .stream()
+        .map(StockEventLineItem::getOrderableId)
+        .collect(Collectors.toSet());
+  }
+
   /**
    * Retrieves all reason IDs from event line items.
    */
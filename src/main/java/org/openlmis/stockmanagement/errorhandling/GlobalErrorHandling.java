@@ -15,15 +15,19 @@
 
 package org.openlmis.stockmanagement.errorhandling;
 
+import org.openlmis.stockmanagement.dto.StockEventsErrorDto;
 import org.openlmis.stockmanagement.exception.AuthenticationException;
+import org.openlmis.stockmanagement.exception.BaseMessageException;
 import org.openlmis.stockmanagement.exception.JasperReportViewException;
 import org.openlmis.stockmanagement.exception.PermissionMessageException;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.exception.StockEventsPartiallySavedException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.service.referencedata.DataRetrievalException;
 import org.openlmis.stockmanagement.util.ErrorResponse;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -96,4 +100,39 @@ public class GlobalErrorHandling extends AbstractErrorHandling {
   public Message.LocalizedMessage handleMessageException(ValidationMessageException ex) {
     return getLocalizedMessage(ex);
   }
+
+  /**
+   * Handles failure of a batch of stock events after some of them have been saved. The status is
+   * the one of the failure, and the error message comes with ids of the saved events.
+   *
+   * @param ex the StockEventsPartiallySavedException to handle
+   * @return the error response with ids of the saved events
+   */
+  @ExceptionHandler(StockEventsPartiallySavedException.class)
+  public ResponseEntity<StockEventsErrorDto> handleStockEventsPartiallySavedException(
+      StockEventsPartiallySavedException ex) {
+    StockEventsErrorDto error = new StockEventsErrorDto();
+    error.setSavedEventIds(ex.getSavedEventIds());
+    HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
+
+    Throwable cause = ex.getCause();
+    if (cause instanceof BaseMessageException) {
+      Message.LocalizedMessage message = getLocalizedMessage((BaseMessageException) cause);
+      error.setMessageKey(message.getMessageKey());
+      error.setMessage(message.getMessage());
+
+      if (cause instanceof ValidationMessageException) {
+        status = HttpStatus.BAD_REQUEST;
+      } else if (cause instanceof PermissionMessageException) {
+        status = HttpStatus.FORBIDDEN;
+      } else if (cause instanceof ResourceNotFoundException) {
+        status = HttpStatus.NOT_FOUND;
+      }
+    } else {
+      logger.error("Error processing stock events", cause);
+      error.setMessage(cause.getMessage());
+    }
+
+    return new ResponseEntity<>(error, status);
+  }
 }
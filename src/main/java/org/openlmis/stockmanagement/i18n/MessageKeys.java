@@ -96,6 +96,11 @@ public abstract class MessageKeys {
   public static final String ERROR_EVENT_ADJUSTMENT_QUANITITY_INVALID = EVENT_ERROR_PREFIX
       + ".adjustment.quantity.invalid";
 
+  public static final String ERROR_EVENT_QUEUED_NOT_FOUND = EVENT_ERROR_PREFIX
+      + ".queued.notFound";
+  public static final String ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED = EVENT_ERROR_PREFIX
+      + ".queued.attemptsExceeded";
+
   //stock events creation: adjustment reason
   public static final String ERROR_EVENT_ADJUSTMENT_REASON_TYPE_INVALID = EVENT_ERROR_PREFIX
       + ".adjustment.reason.type.invalid";
@@ -254,6 +259,18 @@ public abstract class MessageKeys {
 
   public static final String ERROR_REPORT_ID_NOT_FOUND = ERROR_PREFIX + ".report.id.notFound";
 
+  public static final String ERROR_STOCK_CARD_EXPORT_FORMAT_NOT_ALLOWED = ERROR_PREFIX
+      + ".stockCard.export.format.notAllowed";
+
+  public static final String ERROR_STOCK_CARD_LINE_ITEM_NOT_FOUND = ERROR_PREFIX
+      + ".stockCard.lineItem.notFound";
+
+  public static final String ERROR_STOCK_CARD_LINE_ITEMS_SIZE_INVALID = ERROR_PREFIX
+      + ".stockCard.lineItems.size.invalid";
+
+  public static final String ERROR_STOCK_CARD_SUMMARIES_SORT_INVALID = ERROR_PREFIX
+      + ".stockCardSummaries.sort.invalid";
+
   public static final String ERROR_JASPER_FILE_CREATION = ERROR_PREFIX + ".jasper.fileCreation";
   public static final String ERROR_CLASS_NOT_FOUND = ERROR_PREFIX + ".classNotFound";
   public static final String ERROR_REPORTING_TEMPLATE_NOT_FOUND_WITH_NAME = ERROR_PREFIX
@@ -267,6 +284,10 @@ public abstract class MessageKeys {
       + ".reporting.file.incorrectType";
   public static final String ERROR_REPORTING_FILE_EMPTY = ERROR_PREFIX + ".reporting.file.empty";
 
+  //reference data
+  public static final String ERROR_REFERENCE_DATA_CACHE_NOT_FOUND = ERROR_PREFIX
+      + ".referenceData.cache.notFound";
+
   //notifications
   public static final String EMAIL_ACTION_REQUIRED_SUBJECT =
       SERVICE_PREFIX + ".email.stockout.subject";
@@ -0,0 +1,57 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.repository;
+
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
+import org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface QueuedStockEventRepository extends
+    PagingAndSortingRepository<QueuedStockEvent, UUID> {
+
+  /**
+   * Find events which can be processed now. Events waiting for their next attempt are skipped
+   * together with all later events of their facilities, so that events of a facility are still
+   * processed in order.
+   */
+  @Query("SELECT e FROM QueuedStockEvent e WHERE e.status = :status AND NOT EXISTS ("
+      + " SELECT w FROM QueuedStockEvent w WHERE w.facilityId = e.facilityId"
+      + " AND w.status = :status AND w.nextAttemptDate > :now"
+      + " AND w.sequenceNumber <= e.sequenceNumber)"
+      + " ORDER BY e.sequenceNumber")
+  List<QueuedStockEvent> findReadyToProcess(@Param("status") QueuedStockEventStatus status,
+                                            @Param("now") ZonedDateTime now,
+                                            Pageable pageable);
+
+  @Modifying
+  @Query("UPDATE QueuedStockEvent e SET e.status = :newStatus"
+      + " WHERE e.id = :id AND e.status = :status")
+  int updateStatus(@Param("id") UUID id, @Param("status") QueuedStockEventStatus status,
+                   @Param("newStatus") QueuedStockEventStatus newStatus);
+
+  @Modifying
+  @Query("UPDATE QueuedStockEvent e SET e.status = :newStatus WHERE e.status = :status")
+  int updateStatus(@Param("status") QueuedStockEventStatus status,
+                   @Param("newStatus") QueuedStockEventStatus newStatus);
+}
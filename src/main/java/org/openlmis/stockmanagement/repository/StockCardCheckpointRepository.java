@@ -0,0 +1,52 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.repository;
+
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface StockCardCheckpointRepository extends
+    PagingAndSortingRepository<StockCardCheckpoint, UUID> {
+
+  String selectCheckpoints = "select c from org.openlmis.stockmanagement.domain.card"
+      + ".StockCardCheckpoint c where c.stockCardId = ?1 ";
+
+  String matchBefore = "and (c.occurredDate, c.processedDate) < (?2, ?3) ";
+
+  String matchAfter = "and (c.occurredDate, c.processedDate) > (?2, ?3) ";
+
+  String orderByDates = "order by c.occurredDate, c.processedDate";
+
+  String orderByDatesDesc = "order by c.occurredDate desc, c.processedDate desc";
+
+  @Query(value = selectCheckpoints + orderByDates)
+  List<StockCardCheckpoint> findByStockCardId(UUID stockCardId);
+
+  @Query(value = selectCheckpoints + matchBefore + orderByDatesDesc)
+  List<StockCardCheckpoint> findLatestBefore(UUID stockCardId, LocalDate occurredDate,
+                                             ZonedDateTime processedDate, Pageable pageable);
+
+  @Query(value = selectCheckpoints + matchAfter + orderByDates)
+  List<StockCardCheckpoint> findAfter(UUID stockCardId, LocalDate occurredDate,
+                                      ZonedDateTime processedDate);
+}
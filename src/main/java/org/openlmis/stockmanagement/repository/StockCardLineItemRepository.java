@@ -16,10 +16,45 @@
 package org.openlmis.stockmanagement.repository;
 
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public interface StockCardLineItemRepository extends
     PagingAndSortingRepository<StockCardLineItem, UUID> {
+
+  String selectLineItems = "select li from org.openlmis.stockmanagement.domain.card"
+      + ".StockCardLineItem li where li.stockCard.id = ?1 ";
+
+  String matchBefore = "and (li.occurredDate, li.processedDate, li.id) < (?2, ?3, ?4) ";
+
+  String matchAfter = "and (li.occurredDate, li.processedDate, li.id) > (?2, ?3, ?4) ";
+
+  //order stock on hand is calculated in
+  String orderByDates = "order by li.occurredDate, li.processedDate, li.id";
+
+  //same order as stock on hand is calculated in, latest first
+  String orderByDatesDesc = "order by li.occurredDate desc, li.processedDate desc, li.id desc";
+
+  StockCardLineItem findByIdAndStockCardId(UUID id, UUID stockCardId);
+
+  @Query(value = selectLineItems + orderByDates)
+  List<StockCardLineItem> findInOrder(UUID stockCardId);
+
+  @Query(value = selectLineItems + matchAfter + orderByDates)
+  List<StockCardLineItem> findAfter(UUID stockCardId, LocalDate occurredDate,
+                                    ZonedDateTime processedDate, UUID id);
+
+  @Query(value = selectLineItems + orderByDatesDesc)
+  List<StockCardLineItem> findLatest(UUID stockCardId, Pageable pageable);
+
+  @Query(value = selectLineItems + matchBefore + orderByDatesDesc)
+  List<StockCardLineItem> findLatestBefore(UUID stockCardId, LocalDate occurredDate,
+                                           ZonedDateTime processedDate, UUID id,
+                                           Pageable pageable);
 }
@@ -16,18 +16,21 @@
 package org.openlmis.stockmanagement.repository;
 
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
+import org.openlmis.stockmanagement.repository.custom.StockCardRepositoryCustom;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 public interface StockCardRepository extends
-    JpaRepository<StockCard, UUID> {
+    JpaRepository<StockCard, UUID>, StockCardRepositoryCustom {
 
   String selectIdentity = "select new org.openlmis.stockmanagement.domain"
       + ".identity.OrderableLotIdentity(s.orderableId, s.lotId) ";
@@ -36,6 +39,30 @@ public interface StockCardRepository extends
 
   String matchByProgramAndFacility = "where s.programId = ?1 and s.facilityId = ?2 ";
 
+  String selectSummary = "select new org.openlmis.stockmanagement.domain.card.StockCardSummary("
+      + "s.id, s.programId, s.facilityId, s.orderableId, s.lotId, s.stockOnHand, "
+      + "max(li.occurredDate)) ";
+
+  String selectCard = "select new org.openlmis.stockmanagement.domain.card.StockCardSummary("
+      + "s.id, s.programId, s.facilityId, s.orderableId, s.lotId, s.stockOnHand) ";
+
+  String matchById = "where s.id = ?1 ";
+
+  String joinLineItems = "left join s.lineItems li ";
+
+  String groupByCard = "group by s.id, s.programId, s.facilityId, s.orderableId, s.lotId, "
+      + "s.stockOnHand ";
+
+  String countStockCards = "select count(s) ";
+
+  String selectCards = "select s ";
+
+  String selectCardsWithLineItems = "select distinct s ";
+
+  String fetchLineItems = "left join fetch s.lineItems ";
+
+  String matchByOrderables = "and s.orderableId in ?3 ";
+
   StockCard findByProgramIdAndFacilityIdAndOrderableIdAndLotId(
       @Param("programId") UUID programId,
       @Param("facilityId") UUID facilityId,
@@ -51,8 +78,29 @@ public interface StockCardRepository extends
       @Param("programId") UUID programId,
       @Param("facilityId") UUID facilityId);
 
+  @Query(value = selectCards + fromStockCards + matchByProgramAndFacility + matchByOrderables)
+  List<StockCard> findByProgramIdAndFacilityIdAndOrderableIdIn(
+      UUID programId, UUID facilityId, Collection<UUID> orderableIds);
+
+  @Query(value = selectCardsWithLineItems + fromStockCards + fetchLineItems
+      + matchByProgramAndFacility + matchByOrderables)
+  List<StockCard> findWithLineItemsByProgramIdAndFacilityIdAndOrderableIdIn(
+      UUID programId, UUID facilityId, Collection<UUID> orderableIds);
+
   StockCard findByOriginEvent(@Param("originEventId") StockEvent stockEvent);
 
+  @Query(value = selectSummary + fromStockCards + joinLineItems + matchByProgramAndFacility
+      + groupByCard)
+  List<StockCardSummary> findSummariesBy(UUID programId, UUID facilityId);
+
+  @Query(value = selectSummary + fromStockCards + joinLineItems + matchByProgramAndFacility
+      + groupByCard,
+      countQuery = countStockCards + fromStockCards + matchByProgramAndFacility)
+  Page<StockCardSummary> findSummariesBy(UUID programId, UUID facilityId, Pageable pageable);
+
+  @Query(value = selectCard + fromStockCards + matchById)
+  StockCardSummary findSummaryById(UUID id);
+
   @Query(value = selectIdentity + fromStockCards + matchByProgramAndFacility)
   List<OrderableLotIdentity> getIdentitiesBy(UUID programId, UUID facilityId);
 }
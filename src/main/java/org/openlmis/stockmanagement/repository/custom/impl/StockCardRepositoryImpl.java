@@ -0,0 +1,153 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.repository.custom.impl;
+
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_SUMMARIES_SORT_INVALID;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.repository.custom.StockCardRepositoryCustom;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class StockCardRepositoryImpl implements StockCardRepositoryCustom {
+
+  //for each card only its latest line item up to the date is read, using the index on line item
+  //dates of a card, so the query does not get slower as history of cards grows
+  private static final String SELECT_SUMMARIES_AS_OF = "SELECT sc.id, sc.programid,"
+      + " sc.facilityid, sc.orderableid, sc.lotid, li.stockonhand, li.occurreddate"
+      + " FROM stockmanagement.stock_cards sc"
+      + " JOIN LATERAL (SELECT l.stockonhand, l.occurreddate"
+      + " FROM stockmanagement.stock_card_line_items l"
+      + " WHERE l.stockcardid = sc.id AND l.occurreddate < ?"
+      + " ORDER BY l.occurreddate DESC, l.processeddate DESC, l.id DESC"
+      + " LIMIT 1) li ON TRUE"
+      + " WHERE sc.programid = ? AND sc.facilityid = ?";
+
+  private static final String COUNT_SUMMARIES_AS_OF = "SELECT count(*)"
+      + " FROM stockmanagement.stock_cards sc"
+      + " WHERE sc.programid = ? AND sc.facilityid = ?"
+      + " AND EXISTS (SELECT 1 FROM stockmanagement.stock_card_line_items l"
+      + " WHERE l.stockcardid = sc.id AND l.occurreddate < ?)";
+
+  private static final String ORDER_BY_ID = " ORDER BY sc.id";
+
+  private static final String LIMIT_OFFSET = " LIMIT ? OFFSET ?";
+
+  //summaries can be sorted by the same properties as stock cards
+  private static final Map<String, String> SORT_COLUMNS = ImmutableMap.<String, String>builder()
+      .put("id", "sc.id")
+      .put("programId", "sc.programid")
+      .put("facilityId", "sc.facilityid")
+      .put("orderableId", "sc.orderableid")
+      .put("lotId", "sc.lotid")
+      .put("stockOnHand", "li.stockonhand")
+      .put("lastUpdate", "li.occurreddate")
+      .build();
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * Find summaries of stock cards of given program and facility, with stock on hand at the end of
+   * given date. Cards which have no line items occurred up to that date are omitted.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   * @param asOfDate   date of stock on hand, inclusive.
+   * @return found summaries, last update is the latest occurred date up to given date.
+   */
+  @Override
+  public List<StockCardSummary> findSummariesAsOf(UUID programId, UUID facilityId,
+                                                  LocalDate asOfDate) {
+    return jdbcTemplate.query(SELECT_SUMMARIES_AS_OF + ORDER_BY_ID, this::toSummary,
+        endOfDate(asOfDate), programId, facilityId);
+  }
+
+  /**
+   * Find a page of summaries of stock cards of given program and facility, with stock on hand at
+   * the end of given date. Sorting, limit and offset are applied by the database, and cards are
+   * counted by a separate query only when the size of the page does not tell their total.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   * @param asOfDate   date of stock on hand, inclusive.
+   * @param pageable   page and sort, by properties of stock card summaries.
+   * @return found page of summaries.
+   * @throws ValidationMessageException if sort property is not supported.
+   */
+  @Override
+  public Page<StockCardSummary> findSummariesAsOf(UUID programId, UUID facilityId,
+                                                  LocalDate asOfDate, Pageable pageable) {
+    Timestamp endOfDate = endOfDate(asOfDate);
+
+    List<StockCardSummary> summaries = jdbcTemplate.query(
+        SELECT_SUMMARIES_AS_OF + orderBy(pageable.getSort()) + LIMIT_OFFSET, this::toSummary,
+        endOfDate, programId, facilityId, pageable.getPageSize(), pageable.getOffset());
+
+    return PageableExecutionUtils.getPage(summaries, pageable, () -> jdbcTemplate
+        .queryForObject(COUNT_SUMMARIES_AS_OF, Long.class, programId, facilityId, endOfDate));
+  }
+
+  private String orderBy(Sort sort) {
+    if (null == sort) {
+      return ORDER_BY_ID;
+    }
+
+    StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+    for (Sort.Order order : sort) {
+      String column = SORT_COLUMNS.get(order.getProperty());
+      if (null == column) {
+        throw new ValidationMessageException(new Message(
+            ERROR_STOCK_CARD_SUMMARIES_SORT_INVALID, order.getProperty(), SORT_COLUMNS.keySet()));
+      }
+      orderBy.append(column).append(order.isAscending() ? " ASC, " : " DESC, ");
+    }
+
+    //cards with equal sort values stay in the same order on every page
+    return orderBy.append("sc.id").toString();
+  }
+
+  private Timestamp endOfDate(LocalDate asOfDate) {
+    return Timestamp.valueOf(asOfDate.plusDays(1).atStartOfDay());
+  }
+
+  private StockCardSummary toSummary(ResultSet rs, int rowNum) throws SQLException {
+    return new StockCardSummary(
+        (UUID) rs.getObject("id"),
+        (UUID) rs.getObject("programid"),
+        (UUID) rs.getObject("facilityid"),
+        (UUID) rs.getObject("orderableid"),
+        (UUID) rs.getObject("lotid"),
+        (Integer) rs.getObject("stockonhand"),
+        rs.getTimestamp("occurreddate").toLocalDateTime().toLocalDate());
+  }
+}
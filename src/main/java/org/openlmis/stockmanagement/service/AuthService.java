@@ -19,19 +19,45 @@ import static org.openlmis.stockmanagement.util.RequestHelper.createUri;
 
 import org.apache.commons.codec.binary.Base64;
 import org.openlmis.stockmanagement.util.RequestParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
+import java.time.Clock;
+import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+/**
+ * This class is in charge of obtaining access token of this service from the auth service. The
+ * token is cached until auth.server.tokenExpirationMargin seconds before it expires, and it is
+ * refreshed in the background, by a dedicated thread, from twice the margin before it expires, so
+ * requests to other services do not have to wait for the auth service. A token is always used for
+ * at least half of its lifetime, even if the margin is not much shorter than the lifetime.
+ */
 @Service
+@ManagedResource(description = "Service access token")
 public class AuthService {
   public static final String ACCESS_TOKEN = "access_token";
+  static final String EXPIRES_IN = "expires_in";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuthService.class);
 
   @Value("${auth.server.clientId}")
   private String clientId;
@@ -42,14 +68,142 @@ public class AuthService {
   @Value("${auth.server.authorizationUrl}")
   private String authorizationUrl;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Value("${auth.server.tokenExpirationMargin:30}")
+  private long tokenExpirationMargin = 30;
+
+  @Autowired
+  private RestOperations restTemplate;
+
+  private Clock clock = Clock.systemUTC();
+
+  private volatile CachedToken cachedToken;
+
+  private final AtomicBoolean refreshingInBackground = new AtomicBoolean(false);
+
+  private ExecutorService refreshExecutor;
+
+  private final AtomicLong tokenFetches = new AtomicLong();
+  private final AtomicLong failedTokenFetches = new AtomicLong();
+  private final AtomicLong backgroundTokenRefreshes = new AtomicLong();
+  private final AtomicLong tokenInvalidations = new AtomicLong();
+
+  @PostConstruct
+  void startExecutor() {
+    refreshExecutor = Executors.newSingleThreadExecutor();
+  }
+
+  @PreDestroy
+  void stopExecutor() {
+    refreshExecutor.shutdown();
+  }
 
   /**
-   * Retrieves access token from the auth service.
+   * Retrieves access token, from the cache if it is still valid, otherwise from the auth service.
+   * Concurrent callers share one request to the auth service.
    *
    * @return token.
    */
   public String obtainAccessToken() {
+    CachedToken token = cachedToken;
+
+    if (null == token || token.isExpired()) {
+      return refreshToken(token).getValue();
+    }
+
+    if (token.isAboutToExpire()) {
+      refreshTokenInBackground(token);
+    }
+
+    return token.getValue();
+  }
+
+  /**
+   * Invalidates cached access token, for example when it was rejected by other service. Nothing
+   * happens if the token has already been replaced by a new one.
+   *
+   * @param token the rejected token.
+   */
+  public synchronized void invalidateToken(String token) {
+    if (null != cachedToken && cachedToken.getValue().equals(token)) {
+      LOGGER.debug("Invalidating cached access token");
+      tokenInvalidations.incrementAndGet();
+      cachedToken = null;
+    }
+  }
+
+  /**
+   * Runs the given request with access token. If the request is rejected with 401 Unauthorized,
+   * the token is invalidated and the request is retried once with a new token.
+   *
+   * @param request the request to run, it receives access token.
+   * @return result of the request.
+   */
+  public <T> T runWithAccessToken(Function<String, T> request) {
+    String token = obtainAccessToken();
+
+    try {
+      return request.apply(token);
+    } catch (HttpStatusCodeException ex) {
+      if (ex.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+        throw ex;
+      }
+
+      LOGGER.warn("Access token was rejected, retrying with a new one");
+      invalidateToken(token);
+      return request.apply(obtainAccessToken());
+    }
+  }
+
+  @ManagedAttribute(description = "Number of access tokens fetched from the auth service")
+  public long getTokenFetches() {
+    return tokenFetches.get();
+  }
+
+  @ManagedAttribute(description = "Number of failed requests to the auth service")
+  public long getFailedTokenFetches() {
+    return failedTokenFetches.get();
+  }
+
+  @ManagedAttribute(description = "Number of access tokens refreshed in the background")
+  public long getBackgroundTokenRefreshes() {
+    return backgroundTokenRefreshes.get();
+  }
+
+  @ManagedAttribute(description = "Number of access tokens invalidated after being rejected")
+  public long getTokenInvalidations() {
+    return tokenInvalidations.get();
+  }
+
+  private synchronized CachedToken refreshToken(CachedToken staleToken) {
+    // another caller may have already refreshed the token while this one was waiting
+    CachedToken token = cachedToken;
+    if (null != token && token != staleToken && !token.isExpired()) {
+      return token;
+    }
+
+    cachedToken = fetchToken();
+    return cachedToken;
+  }
+
+  private void refreshTokenInBackground(CachedToken staleToken) {
+    if (!refreshingInBackground.compareAndSet(false, true)) {
+      return;
+    }
+
+    refreshExecutor.execute(() -> {
+      try {
+        refreshToken(staleToken);
+        backgroundTokenRefreshes.incrementAndGet();
+      } catch (RuntimeException ex) {
+        // current token is still valid, so it will be retried by next caller
+        LOGGER.warn("Unable to refresh access token in the background", ex);
+      } finally {
+        refreshingInBackground.set(false);
+      }
+    });
+  }
+
+  private CachedToken fetchToken() {
     String plainCreds = clientId + ":" + clientSecret;
     byte[] plainCredsBytes = plainCreds.getBytes();
     byte[] base64CredsBytes = Base64.encodeBase64(plainCredsBytes);
@@ -64,10 +218,54 @@ public class AuthService {
         .init()
         .set("grant_type", "client_credentials");
 
-    ResponseEntity<?> response = restTemplate.exchange(
-        createUri(authorizationUrl, params), HttpMethod.POST, request, Object.class
-    );
+    ResponseEntity<?> response;
+    try {
+      response = restTemplate.exchange(
+          createUri(authorizationUrl, params), HttpMethod.POST, request, Object.class
+      );
+    } catch (RuntimeException ex) {
+      failedTokenFetches.incrementAndGet();
+      throw ex;
+    }
+    tokenFetches.incrementAndGet();
+
+    Map<String, Object> body = (Map<String, Object>) response.getBody();
+    Object expiresIn = body.get(EXPIRES_IN);
+    long lifetime = expiresIn instanceof Number ? ((Number) expiresIn).longValue() : 0;
+    LOGGER.debug("Obtained access token, expires in {} seconds", lifetime);
+
+    return new CachedToken((String) body.get(ACCESS_TOKEN), clock.instant(), lifetime);
+  }
+
+  private class CachedToken {
+    private final String value;
+    private final Instant halfLife;
+    private final Instant expiresAt;
+
+    CachedToken(String value, Instant fetchedAt, long lifetime) {
+      this.value = value;
+      this.halfLife = fetchedAt.plusMillis(lifetime * 500);
+      this.expiresAt = fetchedAt.plusSeconds(lifetime);
+    }
+
+    String getValue() {
+      return value;
+    }
+
+    boolean isExpired() {
+      return isAfterMargin(tokenExpirationMargin);
+    }
+
+    boolean isAboutToExpire() {
+      return isAfterMargin(2 * tokenExpirationMargin);
+    }
 
-    return ((Map<String, String>) response.getBody()).get(ACCESS_TOKEN);
+    private boolean isAfterMargin(long marginSeconds) {
+      Instant threshold = expiresAt.minusSeconds(marginSeconds);
+      if (threshold.isBefore(halfLife)) {
+        threshold = halfLife;
+      }
+      return !clock.instant().isBefore(threshold);
+    }
   }
 }
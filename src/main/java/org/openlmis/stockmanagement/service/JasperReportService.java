@@ -15,13 +15,10 @@
 
 package org.openlmis.stockmanagement.service;
 
-import static java.io.File.createTempFile;
 import static java.util.Collections.singletonList;
-import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_CLASS_NOT_FOUND;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_GENERATE_REPORT_FAILED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_IO;
-import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_JASPER_FILE_CREATION;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_REPORT_ID_NOT_FOUND;
 
 import net.sf.jasperreports.engine.JRException;
@@ -35,23 +32,22 @@ import org.openlmis.stockmanagement.exception.JasperReportViewException;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.view.jasperreports.JasperReportsMultiFormatView;
 import org.springframework.web.servlet.view.jasperreports.JasperReportsPdfView;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import javax.sql.DataSource;
 
@@ -72,8 +68,12 @@ public class JasperReportService {
   private StockCardSummariesService stockCardSummariesService;
 
   @Autowired
+  @Qualifier("replicationDataSource")
   private DataSource replicationDataSource;
 
+  //compiled reports, keyed by template url or by template name and id for database templates
+  private final Map<String, JasperReport> compiledReports = new ConcurrentHashMap<>();
+
   /**
    * Generate stock card report in PDF format.
    *
@@ -130,13 +130,29 @@ public class JasperReportService {
    */
   public JasperReportsMultiFormatView getJasperReportsView(JasperTemplate jasperTemplate)
       throws JasperReportViewException {
-    JasperReportsMultiFormatView jasperView = new JasperReportsMultiFormatView();
+    JasperReport report = getReportForReportData(jasperTemplate);
+
+    JasperReportsMultiFormatView jasperView = new JasperReportsMultiFormatView() {
+      @Override
+      protected JasperReport loadReport() {
+        return report;
+      }
+    };
     jasperView.setJdbcDataSource(replicationDataSource);
-    jasperView.setUrl(getReportUrlForReportData(jasperTemplate));
     jasperView.setApplicationContext(appContext);
     return jasperView;
   }
 
+  /**
+   * Remove compiled reports of the database template with given name, for example when the
+   * template is replaced.
+   *
+   * @param templateName name of the template.
+   */
+  public void evictTemplate(String templateName) {
+    compiledReports.keySet().removeIf(key -> key.startsWith(templateName + "/"));
+  }
+
   /**
    * Creates PI line sub-report.
    * */
@@ -156,17 +172,29 @@ public class JasperReportService {
   }
 
   private ModelAndView generateReport(String templateUrl, Map<String, Object> params) {
-    JasperReportsPdfView view = new JasperReportsPdfView();
-    view.setUrl(compileReportAndGetUrl(templateUrl));
+    JasperReport report = compileReport(templateUrl);
+
+    JasperReportsPdfView view = new JasperReportsPdfView() {
+      @Override
+      protected JasperReport loadReport() {
+        return report;
+      }
+    };
     view.setApplicationContext(appContext);
     return new ModelAndView(view, params);
   }
 
-  private String compileReportAndGetUrl(String templateUrl) {
+  private JasperReport compileReport(String templateUrl) {
+    JasperReport report = compiledReports.get(templateUrl);
+    if (null != report) {
+      return report;
+    }
+
     try (InputStream inputStream = getClass().getResourceAsStream(templateUrl)) {
-      JasperReport report = JasperCompileManager.compileReport(inputStream);
+      report = JasperCompileManager.compileReport(inputStream);
+      compiledReports.put(templateUrl, report);
 
-      return saveAndGetUrl(report, "report_temp");
+      return report;
     } catch (IOException ex) {
       throw new JasperReportViewException(new Message((ERROR_IO), ex.getMessage()), ex);
     } catch (JRException ex) {
@@ -175,18 +203,25 @@ public class JasperReportService {
   }
 
   /**
-   * Create ".jasper" file with byte array from Template.
+   * Read compiled report from byte array of Template. A replaced template is saved with new id,
+   * so the id tells its version.
    *
-   * @return Url to ".jasper" file.
+   * @return compiled report.
    */
-  private String getReportUrlForReportData(JasperTemplate jasperTemplate)
+  private JasperReport getReportForReportData(JasperTemplate jasperTemplate)
       throws JasperReportViewException {
+    String key = jasperTemplate.getName() + "/" + jasperTemplate.getId();
+    JasperReport report = compiledReports.get(key);
+    if (null != report) {
+      return report;
+    }
 
     try (ObjectInputStream inputStream =
              new ObjectInputStream(new ByteArrayInputStream(jasperTemplate.getData()))) {
-      JasperReport jasperReport = (JasperReport) inputStream.readObject();
+      report = (JasperReport) inputStream.readObject();
+      compiledReports.put(key, report);
 
-      return saveAndGetUrl(jasperReport, jasperTemplate.getName() + "_temp");
+      return report;
     } catch (IOException ex) {
       throw new JasperReportViewException(new Message((ERROR_IO), ex.getMessage()), ex);
     } catch (ClassNotFoundException ex) {
@@ -194,22 +229,4 @@ public class JasperReportService {
           new Message(ERROR_CLASS_NOT_FOUND, JasperReport.class.getName()), ex);
     }
   }
-
-  private String saveAndGetUrl(JasperReport report, String templateName) throws IOException {
-    File reportTempFile;
-    try {
-      reportTempFile = createTempFile(templateName, ".jasper");
-    } catch (IOException ex) {
-      throw new JasperReportViewException(ERROR_JASPER_FILE_CREATION, ex);
-    }
-
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-         ObjectOutputStream out = new ObjectOutputStream(bos)) {
-
-      out.writeObject(report);
-      writeByteArrayToFile(reportTempFile, bos.toByteArray());
-
-      return reportTempFile.toURI().toURL().toString();
-    }
-  }
 }
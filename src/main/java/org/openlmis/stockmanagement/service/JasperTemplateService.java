@@ -47,6 +47,9 @@ public class JasperTemplateService {
   @Autowired
   private TemplateRepository templateRepository;
 
+  @Autowired
+  private JasperReportService jasperReportService;
+
   public JasperTemplate getByName(String name) {
     return templateRepository.findByName(name);
   }
@@ -63,6 +66,7 @@ public class JasperTemplateService {
 
     validateFileAndSetData(template, file);
     templateRepository.save(template);
+    jasperReportService.evictTemplate(template.getName());
   }
 
   /**
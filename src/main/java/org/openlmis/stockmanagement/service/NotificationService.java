@@ -25,7 +25,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 public class NotificationService {
@@ -40,7 +39,8 @@ public class NotificationService {
   @Value("${email.noreply}")
   private String from;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  private RestOperations restTemplate;
 
   /**
    * Send an email notification.
@@ -56,11 +56,10 @@ public class NotificationService {
     );
     
     try {
-      restTemplate.postForObject(
+      authService.runWithAccessToken(token -> restTemplate.postForObject(
           RequestHelper.createUri(notificationUrl),
-          RequestHelper.createEntity(authService.obtainAccessToken(),
-              request),
-          Object.class);
+          RequestHelper.createEntity(token, request),
+          Object.class));
     } catch (HttpStatusCodeException ex) {
       logger.error(
           "Unable to send notification. Error code: {}, response message: {}",
@@ -154,8 +154,13 @@ public class PermissionService {
     canViewStockAssignable(STOCK_DESTINATIONS_MANAGE, program, facilityType);
   }
 
+  /**
+   * Checks if current user has permission to manage system settings, like caches.
+   *
+   * @throws PermissionMessageException if the current user has not a permission.
+   */
   public void canManageSystemSettings() {
-    getRightResult(SYSTEM_SETTINGS_MANAGE, null, null, null);
+    hasPermission(SYSTEM_SETTINGS_MANAGE, null, null, null);
   }
 
   private void hasPermission(String rightName, UUID program, UUID facility, UUID warehouse) {
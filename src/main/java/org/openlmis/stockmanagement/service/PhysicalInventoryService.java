@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
 import java.util.List;
@@ -69,6 +70,7 @@ public class PhysicalInventoryService {
    * @param facilityId facilityId.
    * @return found draft, or if not found, returns empty draft.
    */
+  @Transactional(readOnly = true)
   public List<PhysicalInventoryDto> findPhysicalInventory(UUID programId,
                                                           UUID facilityId,
                                                           Boolean isDraft) {
@@ -175,12 +177,8 @@ public class PhysicalInventoryService {
 
     for (PhysicalInventoryLineItem line : inventory.getLineItems()) {
       StockCard foundCard = cards.get(OrderableLotIdentity.identityOf(line));
-      //use a shallow copy of stock card to do recalculation, because some domain model will be
-      //modified during recalculation, this will avoid persistence of those modified models
       if (foundCard != null) {
-        StockCard stockCard = foundCard.shallowCopy();
-        stockCard.calculateStockOnHand();
-        line.setPreviousStockOnHandWhenSubmitted(stockCard.getStockOnHand());
+        line.setPreviousStockOnHandWhenSubmitted(foundCard.currentStockOnHand());
       }
     }
 
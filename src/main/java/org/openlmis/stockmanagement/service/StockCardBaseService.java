@@ -20,6 +20,9 @@ import static java.util.stream.Collectors.toList;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
+import org.openlmis.stockmanagement.domain.identity.IdentifiableByOrderableLot;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
@@ -33,12 +36,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * This base class is in charge of:
  * 1. assign facility and program to stock card dto
- * 2. re-calculating soh for stock card and line items
+ * 2. using persisted soh of stock cards, their line items and summaries, deriving reason and
+ * quantity of physical inventory line items for display
  * It does not handle assigning orderable dto to stock card dto, that is expected to be done in sub
  * classes, potentially in different ways. It also does not handle assigning facility dto to line
  * items, that is not needed by all sub classes.
@@ -60,28 +66,52 @@ public abstract class StockCardBaseService {
     }
 
     StockCard firstCard = stockCards.get(0);
-
-    LOGGER.debug("Calling ref data to retrieve facility info for card");
-    FacilityDto facility = facilityRefDataService.findOne(firstCard.getFacilityId());
-    LOGGER.debug("Calling ref data to retrieve program info for card");
-    ProgramDto program = programRefDataService.findOne(firstCard.getProgramId());
+    FacilityDto facility = findFacility(firstCard.getFacilityId());
+    ProgramDto program = findProgram(firstCard.getProgramId());
 
     return stockCards.stream()
         .map(card -> cardToDto(facility, program, card))
         .collect(toList());
   }
 
+  /**
+   * Same as {@link #createDtos(List)}, but for stock card summaries, which already carry persisted
+   * stock on hand of cards. Created dtos have no line items.
+   */
+  protected List<StockCardDto> createSummaryDtos(List<StockCardSummary> summaries) {
+    if (summaries.isEmpty()) {
+      return emptyList();
+    }
+
+    StockCardSummary firstSummary = summaries.get(0);
+    FacilityDto facility = findFacility(firstSummary.getFacilityId());
+    ProgramDto program = findProgram(firstSummary.getProgramId());
+
+    return summaries.stream()
+        .map(summary -> summaryToDto(facility, program, summary))
+        .collect(toList());
+  }
+
+  private FacilityDto findFacility(UUID facilityId) {
+    LOGGER.debug("Calling ref data to retrieve facility info for card");
+    return facilityRefDataService.findOne(facilityId);
+  }
+
+  private ProgramDto findProgram(UUID programId) {
+    LOGGER.debug("Calling ref data to retrieve program info for card");
+    return programRefDataService.findOne(programId);
+  }
+
   private StockCardDto cardToDto(FacilityDto facility, ProgramDto program,
                                  StockCard card) {
-    card.calculateStockOnHand();
-    StockCardDto cardDto = StockCardDto.createFrom(card);
+    //line items are loaded in order of their dates, with persisted stock on hand after each
+    StockCardDto cardDto = StockCardDto.builder()
+        .id(card.getId())
+        .stockOnHand(card.getStockOnHand())
+        .lineItems(lineItemsToDtos(card.getLineItems()))
+        .build();
+    assignFacilityProgramOrderableLot(cardDto, facility, program, card);
 
-    cardDto.setFacility(facility);
-    cardDto.setProgram(program);
-    cardDto.setOrderable(OrderableDto.builder().id(card.getOrderableId()).build());
-    if (card.getLotId() != null) {
-      cardDto.setLot(LotDto.builder().id(card.getLotId()).build());
-    }
     List<StockCardLineItemDto> lineItems = cardDto.getLineItems();
     if (!isEmpty(lineItems)) {
       cardDto.setLastUpdate(lineItems.get(lineItems.size() - 1).getLineItem().getOccurredDate());
@@ -90,4 +120,49 @@ public abstract class StockCardBaseService {
     return cardDto;
   }
 
+  /**
+   * Reason and quantity of physical inventory line items are derived from persisted stock on hand
+   * before them, on copies, so that persisted line items are not changed.
+   */
+  private List<StockCardLineItemDto> lineItemsToDtos(List<StockCardLineItem> lineItems) {
+    List<StockCardLineItemDto> lineItemDtos = new ArrayList<>(lineItems.size());
+    int previousStockOnHand = 0;
+
+    for (StockCardLineItem lineItem : lineItems) {
+      StockCardLineItem copy = lineItem.shallowCopy();
+      copy.calculateStockOnHand(previousStockOnHand);
+      if (null != lineItem.getStockOnHand()) {
+        copy.setStockOnHand(lineItem.getStockOnHand());
+      }
+
+      lineItemDtos.add(StockCardLineItemDto.createFrom(copy));
+      previousStockOnHand = copy.getStockOnHand();
+    }
+
+    return lineItemDtos;
+  }
+
+  private StockCardDto summaryToDto(FacilityDto facility, ProgramDto program,
+                                    StockCardSummary summary) {
+    StockCardDto cardDto = StockCardDto.builder()
+        .id(summary.getId())
+        .stockOnHand(summary.getStockOnHand())
+        .lastUpdate(summary.getLastUpdate())
+        .build();
+    assignFacilityProgramOrderableLot(cardDto, facility, program, summary);
+
+    return cardDto;
+  }
+
+  private void assignFacilityProgramOrderableLot(StockCardDto cardDto, FacilityDto facility,
+                                                 ProgramDto program,
+                                                 IdentifiableByOrderableLot card) {
+    cardDto.setFacility(facility);
+    cardDto.setProgram(program);
+    cardDto.setOrderable(OrderableDto.builder().id(card.getOrderableId()).build());
+    if (card.getLotId() != null) {
+      cardDto.setLot(LotDto.builder().id(card.getLotId()).build());
+    }
+  }
+
 }
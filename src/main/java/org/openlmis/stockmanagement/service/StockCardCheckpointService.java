@@ -0,0 +1,146 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.stream.Collectors.toList;
+import static org.openlmis.stockmanagement.domain.card.StockCardCheckpoint.createInitialCheckpoint;
+
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.repository.StockCardCheckpointRepository;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps stock on hand of stock cards up to date with the help of checkpoints, which hold stock on
+ * hand after the first line item of each month of a card. When a backdated line item is added,
+ * only line items after the nearest checkpoint before it are read and recalculated, instead of all
+ * line items of the card.
+ */
+@Service
+public class StockCardCheckpointService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StockCardCheckpointService.class);
+
+  @Autowired
+  private StockCardCheckpointRepository checkpointRepository;
+
+  @Autowired
+  private StockCardLineItemRepository lineItemRepository;
+
+  /**
+   * Update persisted stock on hand after the given line item has been added to the card. A
+   * backdated line item of a persisted card has to be saved already, it is recalculated together
+   * with line items after the nearest checkpoint before it.
+   *
+   * @param card          stock card.
+   * @param addedLineItem line item that was just added to the card.
+   * @return true if a checkpoint should be taken after the line item once it is saved.
+   */
+  public boolean updateStockOnHand(StockCard card, StockCardLineItem addedLineItem) {
+    if (null != card.getId() && null != card.getStockOnHand() && card.isBackdated(addedLineItem)) {
+      StockCardCheckpoint checkpoint = findCheckpointBefore(
+          card.getId(), addedLineItem.getOccurredDate(), addedLineItem.getProcessedDate());
+      List<StockCardLineItem> lineItems = findLineItemsAfter(checkpoint);
+      List<StockCardCheckpoint> laterCheckpoints = findCheckpointsAfter(checkpoint);
+      LOGGER.debug("Recalculating {} line items from checkpoint", lineItems.size());
+
+      card.recalculateStockOnHand(addedLineItem, checkpoint, lineItems, laterCheckpoints);
+      return false;
+    }
+
+    boolean startsNewMonth = card.startsNewMonth(addedLineItem);
+    card.updateStockOnHand(addedLineItem);
+    return startsNewMonth;
+  }
+
+  /**
+   * Save checkpoints after the given saved line items, with their current stock on hand.
+   *
+   * @param lineItems saved line items.
+   */
+  public void saveCheckpointsAfter(List<StockCardLineItem> lineItems) {
+    if (!lineItems.isEmpty()) {
+      checkpointRepository.save(lineItems
+          .stream()
+          .map(StockCardCheckpoint::createCheckpointAfter)
+          .collect(toList()));
+    }
+  }
+
+  /**
+   * Find the nearest checkpoint of a card before the given dates.
+   *
+   * @param stockCardId   stock card id.
+   * @param occurredDate  occurred date of a line item.
+   * @param processedDate processed date of the line item.
+   * @return found checkpoint, or a checkpoint with zero stock on hand before the first line item
+   *         of the card if there is none.
+   */
+  public StockCardCheckpoint findCheckpointBefore(UUID stockCardId, LocalDate occurredDate,
+                                                  ZonedDateTime processedDate) {
+    List<StockCardCheckpoint> checkpoints = checkpointRepository.findLatestBefore(
+        stockCardId, occurredDate, processedDate, new PageRequest(0, 1));
+
+    return checkpoints.isEmpty()
+        ? createInitialCheckpoint(stockCardId)
+        : checkpoints.get(0);
+  }
+
+  /**
+   * Find line items of a card after the given checkpoint, in order of their dates.
+   *
+   * @param checkpoint checkpoint of a stock card.
+   * @return found line items.
+   */
+  public List<StockCardLineItem> findLineItemsAfter(StockCardCheckpoint checkpoint) {
+    if (checkpoint.isInitial()) {
+      return lineItemRepository.findInOrder(checkpoint.getStockCardId());
+    }
+
+    return lineItemRepository.findAfter(checkpoint.getStockCardId(),
+        checkpoint.getOccurredDate(), checkpoint.getProcessedDate(), checkpoint.getLineItemId());
+  }
+
+  /**
+   * Find all checkpoints of a card, in order of their dates.
+   *
+   * @param stockCardId stock card id.
+   * @return found checkpoints.
+   */
+  public List<StockCardCheckpoint> findCheckpoints(UUID stockCardId) {
+    return checkpointRepository.findByStockCardId(stockCardId);
+  }
+
+  private List<StockCardCheckpoint> findCheckpointsAfter(StockCardCheckpoint checkpoint) {
+    if (checkpoint.isInitial()) {
+      return findCheckpoints(checkpoint.getStockCardId());
+    }
+
+    return checkpointRepository.findAfter(checkpoint.getStockCardId(),
+        checkpoint.getOccurredDate(), checkpoint.getProcessedDate());
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.sql.ResultSet.CONCUR_READ_ONLY;
+import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_EXPORT_FORMAT_NOT_ALLOWED;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.openlmis.stockmanagement.domain.reason.ReasonType;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.util.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streams the complete stock ledger of a facility in a program, one row per stock card line
+ * item. Line items are read with a server side cursor and written out as they arrive, with
+ * stock on hand calculated on the fly, so memory use does not depend on the size of the ledger.
+ * Physical inventory line items are exported with the difference to stock on hand before them
+ * and a credit, debit or balance adjustment reason, like in the stock card view. Once the response
+ * is being streamed it can not report errors any more, so stock on hand which goes out of range
+ * is written as calculated and the stock card is logged.
+ */
+@Service
+public class StockCardLedgerExportService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StockCardLedgerExportService.class);
+
+  static final String[] COLUMNS = {
+      "stockCardId", "orderableId", "lotId", "lineItemId", "occurredDate", "processedDate",
+      "reasonName", "reasonType", "sourceId", "destinationId", "sourceFreeText",
+      "destinationFreeText", "reasonFreeText", "documentNumber", "signature", "userId",
+      "quantity", "stockOnHand"
+  };
+
+  private static final String LEDGER_QUERY = "SELECT sc.id AS stockcardid, sc.orderableid,"
+      + " sc.lotid, li.id AS lineitemid, li.occurreddate, li.processeddate,"
+      + " r.name AS reasonname, r.reasontype, src.referenceid AS sourceid,"
+      + " dst.referenceid AS destinationid, li.sourcefreetext, li.destinationfreetext,"
+      + " li.reasonfreetext, li.documentnumber, li.signature, li.userid, li.quantity"
+      + " FROM stockmanagement.stock_card_line_items li"
+      + " JOIN stockmanagement.stock_cards sc ON sc.id = li.stockcardid"
+      + " LEFT JOIN stockmanagement.stock_card_line_item_reasons r ON r.id = li.reasonid"
+      + " LEFT JOIN stockmanagement.nodes src ON src.id = li.sourceid"
+      + " LEFT JOIN stockmanagement.nodes dst ON dst.id = li.destinationid"
+      + " WHERE sc.programid = ? AND sc.facilityid = ?"
+      + " ORDER BY sc.id, li.occurreddate, li.processeddate";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private MessageService messageService;
+
+  @Value("${stockCard.export.fetchSize:1000}")
+  private int fetchSize;
+
+  /**
+   * Write all stock card line items of the given program and facility, ordered by stock card
+   * and then by dates, together with stock on hand after each of them.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   * @param format     output format.
+   * @param writer     writer the rows are written to.
+   * @throws IOException if rows could not be written, for example the client went away.
+   */
+  @Transactional(readOnly = true)
+  public void exportLedger(UUID programId, UUID facilityId, Format format, Writer writer)
+      throws IOException {
+    Map<ReasonType, String> physicalReasonNames = new EnumMap<>(ReasonType.class);
+    for (ReasonType reasonType : ReasonType.values()) {
+      String messageKey = StockCardService.PHYSICAL_INVENTORY_REASON_PREFIX
+          + reasonType.toString().toLowerCase();
+      physicalReasonNames.put(reasonType,
+          messageService.localize(new Message(messageKey)).getMessage());
+    }
+
+    LedgerRowHandler handler = Format.CSV == format
+        ? new CsvRowHandler(writer)
+        : new NdjsonRowHandler(writer);
+    handler.physicalReasonNames = physicalReasonNames;
+
+    try {
+      handler.start();
+      jdbcTemplate.query(connection -> {
+        // PostgreSQL only uses a cursor for a forward only statement with a fetch size
+        // inside a transaction, otherwise the whole result set is read into memory
+        PreparedStatement statement =
+            connection.prepareStatement(LEDGER_QUERY, TYPE_FORWARD_ONLY, CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        statement.setObject(1, programId);
+        statement.setObject(2, facilityId);
+        return statement;
+      }, handler);
+      handler.finish();
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+
+    LOGGER.debug("Exported {} stock card line items of program {} and facility {}",
+        handler.rowCount, programId, facilityId);
+  }
+
+  public enum Format {
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    Format(String contentType) {
+      this.contentType = contentType;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getExtension() {
+      return name().toLowerCase();
+    }
+
+    /**
+     * Find export format by name, ignoring case.
+     *
+     * @param name format name.
+     * @return found format.
+     * @throws ValidationMessageException if format is not supported.
+     */
+    public static Format fromString(String name) {
+      return Arrays.stream(values())
+          .filter(format -> format.name().equalsIgnoreCase(name))
+          .findFirst()
+          .orElseThrow(() -> new ValidationMessageException(
+              new Message(ERROR_STOCK_CARD_EXPORT_FORMAT_NOT_ALLOWED, name,
+                  Arrays.toString(values()))));
+    }
+  }
+
+  private abstract static class LedgerRowHandler implements RowCallbackHandler {
+    private final Object[] values = new Object[COLUMNS.length];
+    private Map<ReasonType, String> physicalReasonNames;
+    private UUID stockCardId;
+    private long stockOnHand;
+    private boolean stockOnHandOutOfRange;
+    private long rowCount;
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+      UUID currentStockCardId = (UUID) rs.getObject("stockcardid");
+      if (!currentStockCardId.equals(stockCardId)) {
+        stockCardId = currentStockCardId;
+        stockOnHand = 0;
+        stockOnHandOutOfRange = false;
+      }
+
+      long quantity = rs.getInt("quantity");
+      String reasonName = rs.getString("reasonname");
+      String reasonType = rs.getString("reasontype");
+      Object sourceId = rs.getObject("sourceid");
+      Object destinationId = rs.getObject("destinationid");
+
+      if (null == sourceId && null == destinationId && null == reasonType) {
+        //physical inventory, quantity is the counted stock on hand
+        ReasonType physicalReasonType = physicalReasonTypeOf(quantity - stockOnHand);
+        reasonName = physicalReasonNames.get(physicalReasonType);
+        reasonType = physicalReasonType.name();
+        long difference = Math.abs(quantity - stockOnHand);
+        stockOnHand = quantity;
+        quantity = difference;
+      } else if (null != sourceId || ReasonType.CREDIT.name().equals(reasonType)) {
+        stockOnHand += quantity;
+      } else {
+        stockOnHand -= quantity;
+      }
+
+      Object lineItemId = rs.getObject("lineitemid");
+      if (!stockOnHandOutOfRange && (stockOnHand < 0 || stockOnHand > Integer.MAX_VALUE)) {
+        stockOnHandOutOfRange = true;
+        LOGGER.warn("Stock on hand of stock card {} is out of range after line item {}: {}",
+            stockCardId, lineItemId, stockOnHand);
+      }
+
+      values[0] = stockCardId;
+      values[1] = rs.getObject("orderableid");
+      values[2] = rs.getObject("lotid");
+      values[3] = lineItemId;
+      values[4] = rs.getDate("occurreddate").toLocalDate();
+      values[5] = rs.getTimestamp("processeddate").toInstant();
+      values[6] = reasonName;
+      values[7] = reasonType;
+      values[8] = sourceId;
+      values[9] = destinationId;
+      values[10] = rs.getString("sourcefreetext");
+      values[11] = rs.getString("destinationfreetext");
+      values[12] = rs.getString("reasonfreetext");
+      values[13] = rs.getString("documentnumber");
+      values[14] = rs.getString("signature");
+      values[15] = rs.getObject("userid");
+      values[16] = quantity;
+      values[17] = stockOnHand;
+
+      try {
+        writeRow(values);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      rowCount++;
+    }
+
+    private static ReasonType physicalReasonTypeOf(long difference) {
+      if (difference > 0) {
+        return ReasonType.CREDIT;
+      } else if (difference < 0) {
+        return ReasonType.DEBIT;
+      } else {
+        return ReasonType.BALANCE_ADJUSTMENT;
+      }
+    }
+
+    abstract void start() throws IOException;
+
+    abstract void writeRow(Object[] values) throws IOException;
+
+    abstract void finish() throws IOException;
+  }
+
+  private static class CsvRowHandler extends LedgerRowHandler {
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private final Writer writer;
+
+    CsvRowHandler(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    void start() throws IOException {
+      writer.write(String.join(",", COLUMNS));
+      writer.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    void writeRow(Object[] values) throws IOException {
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          writer.write(',');
+        }
+        if (null != values[i]) {
+          writer.write(escape(values[i].toString()));
+        }
+      }
+      writer.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    void finish() throws IOException {
+      writer.flush();
+    }
+
+    private static String escape(String value) {
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+          && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+        return value;
+      }
+      return '"' + value.replace("\"", "\"\"") + '"';
+    }
+  }
+
+  private static class NdjsonRowHandler extends LedgerRowHandler {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonGenerator generator;
+
+    NdjsonRowHandler(Writer writer) throws IOException {
+      this.generator = JSON_FACTORY.createGenerator(writer);
+      this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    void start() {
+      // there is no header in NDJSON
+    }
+
+    @Override
+    void writeRow(Object[] values) throws IOException {
+      generator.writeStartObject();
+      for (int i = 0; i < values.length; i++) {
+        generator.writeFieldName(COLUMNS[i]);
+        if (null == values[i]) {
+          generator.writeNull();
+        } else if (values[i] instanceof Long) {
+          generator.writeNumber((Long) values[i]);
+        } else {
+          generator.writeString(values[i].toString());
+        }
+      }
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    }
+
+    @Override
+    void finish() throws IOException {
+      generator.flush();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
@@ -48,6 +49,7 @@ public class StockCardLineItemReasonService {
    *
    * @return found reason list
    */
+  @Transactional(readOnly = true)
   public List<StockCardLineItemReason> findReasons() {
     return reasonRepository.findAll();
   }
@@ -16,22 +16,34 @@
 package org.openlmis.stockmanagement.service;
 
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.openlmis.stockmanagement.domain.card.StockCard.createStockCardFrom;
 import static org.openlmis.stockmanagement.domain.card.StockCardLineItem.createLineItemFrom;
 import static org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity.identityOf;
 import static org.openlmis.stockmanagement.domain.reason.ReasonCategory.PHYSICAL_INVENTORY;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_LINE_ITEMS_SIZE_INVALID;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_LINE_ITEM_NOT_FOUND;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
+import org.openlmis.stockmanagement.domain.sourcedestination.Organization;
 import org.openlmis.stockmanagement.dto.StockCardDto;
+import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.i18n.MessageService;
 import org.openlmis.stockmanagement.repository.OrganizationRepository;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
@@ -40,23 +52,37 @@ import org.openlmis.stockmanagement.util.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is in charge of persisting and retrieving stock cards. For persisting, it may create
  * and save multiple stock cards in one go, since one stock event may involve more than one
- * orderable/lot combos. For retrieving, it only retrieves one stock card at a time. Its purpose is
+ * orderable/lot combos. Stock on hand of cards and their line items is kept up to date as they are
+ * saved. For retrieving, it only retrieves one stock card at a time. Its purpose is
  * for users to view one single stock card with full details.
  */
 @Service
 public class StockCardService extends StockCardBaseService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(StockCardService.class);
-  private static final String PHYSICAL_INVENTORY_REASON_PREFIX =
+  static final String PHYSICAL_INVENTORY_REASON_PREFIX =
       "stockmanagement.reason.physicalInventory.";
+  private static final int PHYSICAL_REASON_NAMES_MAX_LOCALES = 100;
 
   @Autowired
   private MessageService messageService;
@@ -76,9 +102,27 @@ public class StockCardService extends StockCardBaseService {
   @Autowired
   private StockCardRepository cardRepository;
 
+  @Autowired
+  private StockCardLineItemRepository lineItemRepository;
+
   @Autowired
   private OrganizationRepository organizationRepository;
 
+  @Autowired
+  private StockCardSummariesService stockCardSummariesService;
+
+  @Autowired
+  private StockCardCheckpointService checkpointService;
+
+  @Value("${stockCard.lineItems.maximumPageSize:500}")
+  private int maximumLineItemsPageSize = 500;
+
+  //localized names of physical inventory reasons by locale and message key, locales come from
+  //requests, so only a bounded number of them is kept
+  private final Cache<Locale, Map<String, String>> physicalReasonNames = CacheBuilder.newBuilder()
+      .maximumSize(PHYSICAL_REASON_NAMES_MAX_LOCALES)
+      .build();
+
   /**
    * Generate stock card line items and stock cards based on event, and persist them.
    *
@@ -87,17 +131,39 @@ public class StockCardService extends StockCardBaseService {
    */
   void saveFromEvent(StockEventDto stockEventDto, UUID savedEventId) {
     List<StockCard> cardsToUpdate = Lists.newArrayList();
+    List<StockCardLineItem> checkpointLineItems = Lists.newArrayList();
 
     for (StockEventLineItem eventLineItem : stockEventDto.getLineItems()) {
       StockCard stockCard = findOrCreateCard(stockEventDto, eventLineItem, savedEventId);
-      createLineItemFrom(stockEventDto, eventLineItem, stockCard, savedEventId);
+      StockCardLineItem lineItem =
+          createLineItemFrom(stockEventDto, eventLineItem, stockCard, savedEventId);
+      assignEventReason(stockEventDto, eventLineItem, lineItem);
+      if (null != stockCard.getId()) {
+        //saved first, so that recalculation of a backdated line item finds it among the others
+        lineItemRepository.save(lineItem);
+      }
+
+      boolean startsNewMonth = checkpointService.updateStockOnHand(stockCard, lineItem);
+      //a new card starts with the added line item
+      if (null == stockCard.getId() || startsNewMonth) {
+        checkpointLineItems.add(lineItem);
+      }
 
       cardsToUpdate.add(stockCard);
     }
 
+    //new cards are not saved yet, so they do not have ids
+    boolean hasNewCards = cardsToUpdate.stream().anyMatch(card -> null == card.getId());
+
     cardRepository.save(cardsToUpdate);
+    checkpointService.saveCheckpointsAfter(checkpointLineItems);
     stockEventDto.getContext().refreshCards();
 
+    if (hasNewCards) {
+      stockCardSummariesService.evictDummyStockCards(
+          stockEventDto.getProgramId(), stockEventDto.getFacilityId());
+    }
+
     LOGGER.debug("Stock cards and line items saved");
   }
 
@@ -107,25 +173,112 @@ public class StockCardService extends StockCardBaseService {
    * @param stockCardId stock card id.
    * @return the found stock card.
    */
+  @Transactional(readOnly = true)
   public StockCardDto findStockCardById(UUID stockCardId) {
     StockCard card = cardRepository.findOne(stockCardId);
     if (card == null) {
       return null;
     }
-    StockCard foundCard = card.shallowCopy();
 
     LOGGER.debug("Stock card found");
-    permissionService.canViewStockCard(foundCard.getProgramId(), foundCard.getFacilityId());
+    permissionService.canViewStockCard(card.getProgramId(), card.getFacilityId());
 
-    StockCardDto cardDto = createDtos(singletonList(foundCard)).get(0);
-    cardDto.setOrderable(orderableRefDataService.findOne(foundCard.getOrderableId()));
+    StockCardDto cardDto = createDtos(singletonList(card)).get(0);
+    cardDto.setOrderable(orderableRefDataService.findOne(card.getOrderableId()));
     if (cardDto.hasLot()) {
       cardDto.setLot(lotReferenceDataService.findOne(cardDto.getLot().getId()));
     }
-    assignSourceDestinationReasonNameForLineItems(cardDto);
+    assignSourceDestinationReasonNameForLineItems(cardDto.getLineItems());
     return cardDto;
   }
 
+  /**
+   * Find a page of line items of a stock card, latest first, with stock on hand after each of
+   * them. Pages are keyset based: the next page starts after the last line item of the previous
+   * one, so finding a page costs the same no matter how many line items the card has.
+   *
+   * @param stockCardId stock card id.
+   * @param after       id of the last line item of the previous page, null for the first page.
+   * @param size        maximum number of line items in the page, at most
+   *                    stockCard.lineItems.maximumPageSize.
+   * @return found line items, or null if the stock card does not exist.
+   */
+  @Transactional(readOnly = true)
+  public List<StockCardLineItemDto> findLineItems(UUID stockCardId, UUID after, int size) {
+    StockCardSummary card = cardRepository.findSummaryById(stockCardId);
+    if (card == null) {
+      return null;
+    }
+
+    permissionService.canViewStockCard(card.getProgramId(), card.getFacilityId());
+    if (size < 1 || size > maximumLineItemsPageSize) {
+      throw new ValidationMessageException(
+          new Message(ERROR_STOCK_CARD_LINE_ITEMS_SIZE_INVALID, size, maximumLineItemsPageSize));
+    }
+
+    //one more line item is read, its stock on hand is the one before the last line item
+    PageRequest pageRequest = new PageRequest(0, size + 1);
+    List<StockCardLineItem> lineItems;
+    if (after == null) {
+      lineItems = lineItemRepository.findLatest(stockCardId, pageRequest);
+    } else {
+      StockCardLineItem previous = lineItemRepository.findByIdAndStockCardId(after, stockCardId);
+      if (previous == null) {
+        throw new ValidationMessageException(
+            new Message(ERROR_STOCK_CARD_LINE_ITEM_NOT_FOUND, after, stockCardId));
+      }
+      lineItems = lineItemRepository.findLatestBefore(stockCardId, previous.getOccurredDate(),
+          previous.getProcessedDate(), previous.getId(), pageRequest);
+    }
+
+    List<StockCardLineItemDto> lineItemDtos = new ArrayList<>();
+    for (int i = 0; i < lineItems.size() && i < size; i++) {
+      int previousStockOnHand = i + 1 < lineItems.size()
+          ? lineItems.get(i + 1).getStockOnHand()
+          : 0;
+      //copies are calculated, so that persisted line items are not changed
+      StockCardLineItem lineItem = lineItems.get(i).shallowCopy();
+      lineItem.calculateStockOnHand(previousStockOnHand);
+      lineItemDtos.add(StockCardLineItemDto.createFrom(lineItem));
+    }
+
+    assignSourceDestinationReasonNameForLineItems(lineItemDtos);
+    return lineItemDtos;
+  }
+
+  /**
+   * Verify persisted stock on hand of all stock cards of given program and facility against a full
+   * replay of their line items.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   * @return ids of stock cards which persisted stock on hand is not consistent.
+   */
+  @Transactional(readOnly = true)
+  public List<UUID> findCardsWithInconsistentStockOnHand(UUID programId, UUID facilityId) {
+    List<UUID> inconsistentCardIds = cardRepository
+        .findByProgramIdAndFacilityId(programId, facilityId)
+        .stream()
+        .filter(card -> !isStockOnHandConsistent(card))
+        .map(StockCard::getId)
+        .collect(toList());
+
+    if (!inconsistentCardIds.isEmpty()) {
+      LOGGER.warn("Inconsistent stock on hand found for stock cards: " + inconsistentCardIds);
+    }
+    return inconsistentCardIds;
+  }
+
+  private boolean isStockOnHandConsistent(StockCard card) {
+    try {
+      return card.isStockOnHandConsistent(checkpointService.findCheckpoints(card.getId()));
+    } catch (ValidationMessageException ex) {
+      //line items of the card can not be replayed, so persisted values can not be right either
+      LOGGER.warn("Unable to replay line items of stock card: " + card.getId(), ex);
+      return false;
+    }
+  }
+
   private StockCard findOrCreateCard(StockEventDto eventDto, StockEventLineItem eventLineItem,
                                      UUID savedEventId) {
     StockCard card = eventDto.getContext().findCard(identityOf(eventLineItem));
@@ -137,12 +290,28 @@ public class StockCardService extends StockCardBaseService {
     return card;
   }
 
-  private void assignSourceDestinationReasonNameForLineItems(StockCardDto stockCardDto) {
-    stockCardDto.getLineItems().forEach(lineItemDto -> {
+  private void assignEventReason(StockEventDto eventDto, StockEventLineItem eventLineItem,
+                                 StockCardLineItem lineItem) {
+    //reason type is needed to update stock on hand, line item itself only knows the reason id
+    if (eventLineItem.hasReasonId()) {
+      StockCardLineItemReason reason = eventDto.getContext()
+          .findEventReason(eventLineItem.getReasonId());
+
+      if (null != reason) {
+        lineItem.setReason(reason);
+      }
+    }
+  }
+
+  private void assignSourceDestinationReasonNameForLineItems(
+      List<StockCardLineItemDto> lineItems) {
+    Map<Node, FacilityDto> nodes = findNodes(lineItems);
+
+    lineItems.forEach(lineItemDto -> {
       StockCardLineItem lineItem = lineItemDto.getLineItem();
       assignReasonName(lineItem);
-      lineItemDto.setSource(getFromRefDataOrConvertOrg(lineItem.getSource()));
-      lineItemDto.setDestination(getFromRefDataOrConvertOrg(lineItem.getDestination()));
+      lineItemDto.setSource(getNode(nodes, lineItem.getSource()));
+      lineItemDto.setDestination(getNode(nodes, lineItem.getDestination()));
     });
   }
 
@@ -152,21 +321,65 @@ public class StockCardService extends StockCardBaseService {
     if (isPhysicalReason) {
       String messageKey = PHYSICAL_INVENTORY_REASON_PREFIX
           + lineItem.getReason().getReasonType().toString().toLowerCase();
-      String reasonName = messageService.localize(new Message(messageKey)).getMessage();
+      String reasonName = physicalReasonNames
+          .asMap()
+          .computeIfAbsent(LocaleContextHolder.getLocale(), locale -> new ConcurrentHashMap<>())
+          .computeIfAbsent(messageKey,
+              key -> messageService.localize(new Message(messageKey)).getMessage());
       lineItem.getReason().setName(reasonName);
     }
   }
 
-  private FacilityDto getFromRefDataOrConvertOrg(Node node) {
-    if (node == null) {
-      return null;
+  /**
+   * Resolve distinct sources and destinations of given line items, with one reference data call
+   * for facilities and one query for organizations, instead of one for each line item.
+   */
+  private Map<Node, FacilityDto> findNodes(List<StockCardLineItemDto> lineItems) {
+    Set<Node> nodes = lineItems
+        .stream()
+        .flatMap(lineItemDto -> Arrays.asList(
+            lineItemDto.getLineItem().getSource(),
+            lineItemDto.getLineItem().getDestination()).stream())
+        .filter(Objects::nonNull)
+        .collect(toSet());
+
+    if (nodes.isEmpty()) {
+      return new HashMap<>();
     }
 
-    if (node.isRefDataFacility()) {
-      LOGGER.debug("Calling ref data to retrieve facility info for line item");
-      return facilityRefDataService.findOne(node.getReferenceId());
-    } else {
-      return FacilityDto.createFrom(organizationRepository.findOne(node.getReferenceId()));
+    Set<UUID> facilityIds = nodes.stream()
+        .filter(Node::isRefDataFacility)
+        .map(Node::getReferenceId)
+        .collect(toSet());
+    Set<UUID> organizationIds = nodes.stream()
+        .filter(node -> !node.isRefDataFacility())
+        .map(Node::getReferenceId)
+        .collect(toSet());
+
+    Map<UUID, FacilityDto> facilities = new HashMap<>();
+    if (!facilityIds.isEmpty()) {
+      LOGGER.debug("Calling ref data to retrieve facility info for line items");
+      facilities.putAll(facilityRefDataService.findByIds(facilityIds));
     }
+
+    Map<UUID, Organization> organizations = new HashMap<>();
+    if (!organizationIds.isEmpty()) {
+      organizationRepository.findAll(organizationIds)
+          .forEach(organization -> organizations.put(organization.getId(), organization));
+    }
+
+    Map<Node, FacilityDto> found = new HashMap<>();
+    nodes.forEach(node -> found.put(node, node.isRefDataFacility()
+        ? facilities.get(node.getReferenceId())
+        : convertOrganization(organizations.get(node.getReferenceId()))));
+    return found;
+  }
+
+  private FacilityDto getNode(Map<Node, FacilityDto> nodes, Node node) {
+    return node == null ? null : nodes.get(node);
+  }
+
+  private FacilityDto convertOrganization(Organization organization) {
+    return organization == null ? null : FacilityDto.createFrom(organization);
   }
 }
@@ -15,14 +15,21 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Stream.concat;
 import static java.util.stream.Stream.empty;
 import static org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity.identityOf;
 
-import org.openlmis.stockmanagement.domain.card.StockCard;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
 import org.openlmis.stockmanagement.domain.identity.IdentifiableByOrderableLot;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.dto.StockCardDto;
@@ -31,27 +38,41 @@ import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
+import org.openlmis.stockmanagement.util.CachedCopies;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.Getter;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
 
 /**
  * This class is in charge of retrieving stock card summaries(stock cards with soh but not line
  * items).
  * Its result may include existing stock cards only, or it may include dummy stock cards for
  * approved products and their lots. See SearchOptions for details.
+ * Summaries are selected directly by the database, so line items of cards are never loaded.
  */
 @Service
 public class StockCardSummariesService extends StockCardBaseService {
@@ -66,6 +87,23 @@ public class StockCardSummariesService extends StockCardBaseService {
   @Autowired
   private StockCardRepository cardRepository;
 
+  @Value("${stockCardSummaries.noCardsCache.timeToLive:300}")
+  private long noCardsCacheTimeToLive = 300;
+
+  @Value("${stockCardSummaries.noCardsCache.maximumSize:1000}")
+  private long noCardsCacheMaximumSize = 1000;
+
+  //dummy cards are cached serialized, every read deserializes its own deep copy
+  private Cache<String, byte[]> dummyStockCards;
+
+  @PostConstruct
+  void createDummyStockCardsCache() {
+    dummyStockCards = CacheBuilder.newBuilder()
+        .expireAfterWrite(noCardsCacheTimeToLive, TimeUnit.SECONDS)
+        .maximumSize(noCardsCacheTimeToLive > 0 ? noCardsCacheMaximumSize : 0)
+        .build();
+  }
+
   /**
    * Find all stock cards by program id and facility id. No paging, all in one.
    * Used for generating pdf file of all stock cards.
@@ -74,10 +112,12 @@ public class StockCardSummariesService extends StockCardBaseService {
    * @param facilityId facility id.
    * @return found stock cards.
    */
+  @Transactional(readOnly = true)
   public List<StockCardDto> findStockCards(UUID programId, UUID facilityId) {
-    List<StockCard> cards = cardRepository.findByProgramIdAndFacilityId(programId, facilityId);
+    //only summaries are selected, line items of cards are never loaded
+    List<StockCardSummary> summaries = cardRepository.findSummariesBy(programId, facilityId);
 
-    return cardsToDtos(programId, facilityId, cards);
+    return summariesToDtos(programId, facilityId, summaries);
   }
 
   /**
@@ -88,42 +128,107 @@ public class StockCardSummariesService extends StockCardBaseService {
    * @param pageable   page object.
    * @return page of stock cards.
    */
+  @Transactional(readOnly = true)
   public Page<StockCardDto> findStockCards(UUID programId, UUID facilityId, Pageable pageable) {
-    Page<StockCard> pageOfCards = cardRepository
-        .findByProgramIdAndFacilityId(programId, facilityId, pageable);
+    Page<StockCardSummary> pageOfSummaries = cardRepository
+        .findSummariesBy(programId, facilityId, pageable);
 
-    List<StockCardDto> cardDtos = cardsToDtos(programId, facilityId, pageOfCards.getContent());
-    return new PageImpl<>(cardDtos, pageable, pageOfCards.getTotalElements());
+    List<StockCardDto> cardDtos =
+        summariesToDtos(programId, facilityId, pageOfSummaries.getContent());
+    return new PageImpl<>(cardDtos, pageable, pageOfSummaries.getTotalElements());
   }
 
   /**
-   * Create dummy cards for approved products and lots that don't have cards yet.
+   * Get a page of stock cards with stock on hand at the end of given date. The page of summaries
+   * is selected by one query, which reads only the latest line item up to the date of each card.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   * @param asOfDate   date of stock on hand, inclusive.
+   * @param pageable   page object.
+   * @return page of stock cards, without cards which had no line items up to given date.
+   */
+  @Transactional(readOnly = true)
+  public Page<StockCardDto> findStockCards(UUID programId, UUID facilityId, LocalDate asOfDate,
+                                           Pageable pageable) {
+    Page<StockCardSummary> pageOfSummaries =
+        cardRepository.findSummariesAsOf(programId, facilityId, asOfDate, pageable);
+
+    List<StockCardDto> cardDtos =
+        summariesToDtos(programId, facilityId, pageOfSummaries.getContent());
+    return new PageImpl<>(cardDtos, pageable, pageOfSummaries.getTotalElements());
+  }
+
+  /**
+   * Create dummy cards for approved products and lots that don't have cards yet. The result is
+   * cached per program and facility until an event creates a new card for them. The cache is kept
+   * by each instance of the service, every call returns a new deep copy of the cached cards.
    *
    * @param programId  programId
    * @param facilityId facilityId
    * @return dummy cards.
    */
   public List<StockCardDto> createDummyStockCards(UUID programId, UUID facilityId) {
+    try {
+      byte[] json = dummyStockCards.get(dummyStockCardsKey(programId, facilityId),
+          () -> CachedCopies.serialize(doCreateDummyStockCards(programId, facilityId)
+              .toArray(new StockCardDto[0])));
+      return new ArrayList<>(asList(CachedCopies.deserialize(json, StockCardDto[].class)));
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwables.propagateIfPossible(ex.getCause());
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  /**
+   * Evict cached dummy cards of given program and facility. If there is an ongoing transaction,
+   * they are evicted after it is committed, when its new cards become visible to other requests.
+   *
+   * @param programId  programId
+   * @param facilityId facilityId
+   */
+  public void evictDummyStockCards(UUID programId, UUID facilityId) {
+    String key = dummyStockCardsKey(programId, facilityId);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              dummyStockCards.invalidate(key);
+            }
+          });
+    } else {
+      dummyStockCards.invalidate(key);
+    }
+  }
+
+  private List<StockCardDto> doCreateDummyStockCards(UUID programId, UUID facilityId) {
     //this will not read the whole table, only the orderable id and lot id
-    List<OrderableLotIdentity> existingCardIdentities =
-        cardRepository.getIdentitiesBy(programId, facilityId);
+    Set<OrderableLotIdentity> existingCardIdentities =
+        new HashSet<>(cardRepository.getIdentitiesBy(programId, facilityId));
 
     LOGGER.info("Calling ref data to get all approved orderables");
     Map<OrderableLotIdentity, OrderableLot> orderableLotsMap = createOrderableLots(
         approvedProductService.getAllApprovedProducts(programId, facilityId));
 
     //create dummy(fake/not persisted) cards for approved orderables that don't have cards yet
-    List<StockCard> dummyCards = createDummyCards(programId, facilityId, orderableLotsMap.values(),
-        existingCardIdentities).collect(toList());
-    return assignOrderableLotRemoveLineItems(createDtos(dummyCards), orderableLotsMap);
+    List<StockCardSummary> dummyCards = createDummyCards(programId, facilityId,
+        orderableLotsMap.values(), existingCardIdentities).collect(toList());
+    return assignOrderableLotRemoveLineItems(createSummaryDtos(dummyCards), orderableLotsMap);
   }
 
-  private List<StockCardDto> cardsToDtos(UUID programId, UUID facilityId, List<StockCard> cards) {
+  private String dummyStockCardsKey(UUID programId, UUID facilityId) {
+    return programId + "/" + facilityId;
+  }
+
+  private List<StockCardDto> summariesToDtos(UUID programId, UUID facilityId,
+                                             List<StockCardSummary> summaries) {
     LOGGER.info("Calling ref data to get all approved orderables");
     Map<OrderableLotIdentity, OrderableLot> orderableLotsMap = createOrderableLots(
         approvedProductService.getAllApprovedProducts(programId, facilityId));
 
-    return assignOrderableLotRemoveLineItems(createDtos(cards), orderableLotsMap);
+    return assignOrderableLotRemoveLineItems(createSummaryDtos(summaries), orderableLotsMap);
   }
 
   private List<StockCardDto> assignOrderableLotRemoveLineItems(
@@ -138,31 +243,28 @@ public class StockCardSummariesService extends StockCardBaseService {
     return stockCardDtos;
   }
 
-  private Stream<StockCard> createDummyCards(UUID programId, UUID facilityId,
+  private Stream<StockCardSummary> createDummyCards(UUID programId, UUID facilityId,
                                              Collection<OrderableLot> orderableLots,
-                                             List<OrderableLotIdentity> cardIdentities) {
-    return filterOrderableLotsWithoutCards(orderableLots, cardIdentities)
+                                             Set<OrderableLotIdentity> cardIdentities) {
+    return orderableLots
         .stream()
-        .map(orderableLot -> StockCard.builder()
-            .programId(programId)
-            .facilityId(facilityId)
-            .orderableId(orderableLot.getOrderable().getId())
-            .lotId(orderableLot.getLotId())
-            .lineItems(emptyList())//dummy cards don't have line items
-            .build());
-  }
-
-  private List<OrderableLot> filterOrderableLotsWithoutCards(
-      Collection<OrderableLot> orderableLots, List<OrderableLotIdentity> cardIdentities) {
-    return orderableLots.stream()
-        .filter(orderableLot -> cardIdentities.stream()
-            .noneMatch(cardIdentity -> cardIdentity.equals(identityOf(orderableLot))))
-        .collect(toList());
+        .filter(orderableLot -> !cardIdentities.contains(identityOf(orderableLot)))
+        //dummy cards don't have id, stock on hand nor line items
+        .map(orderableLot -> new StockCardSummary(null, programId, facilityId,
+            orderableLot.getOrderable().getId(), orderableLot.getLotId(), null, null));
   }
 
   private Map<OrderableLotIdentity, OrderableLot> createOrderableLots(
       List<OrderableDto> orderableDtos) {
-    Stream<OrderableLot> orderableLots = orderableDtos.stream().flatMap(this::lotsOfOrderable);
+    //lots of all trade items are searched at once, instead of one trade item after another
+    Map<UUID, List<LotDto>> lotsOfTradeItems = lotReferenceDataService.getAllLotsOf(
+        orderableDtos.stream()
+            .map(this::tradeItemOf)
+            .filter(Objects::nonNull)
+            .collect(toSet()));
+
+    Stream<OrderableLot> orderableLots = orderableDtos.stream()
+        .flatMap(orderableDto -> lotsOfOrderable(orderableDto, lotsOfTradeItems));
 
     Stream<OrderableLot> orderablesOnly = orderableDtos.stream()
         .map(orderableDto -> new OrderableLot(orderableDto, null));
@@ -171,16 +273,22 @@ public class StockCardSummariesService extends StockCardBaseService {
         .collect(toMap(OrderableLotIdentity::identityOf, orderableLot -> orderableLot));
   }
 
-  private Stream<OrderableLot> lotsOfOrderable(OrderableDto orderableDto) {
-    String tradeItemId = orderableDto.getIdentifiers().get("tradeItem");
+  private Stream<OrderableLot> lotsOfOrderable(OrderableDto orderableDto,
+                                               Map<UUID, List<LotDto>> lotsOfTradeItems) {
+    UUID tradeItemId = tradeItemOf(orderableDto);
     if (tradeItemId != null) {
-      return lotReferenceDataService.getAllLotsOf(UUID.fromString(tradeItemId)).stream()
+      return lotsOfTradeItems.getOrDefault(tradeItemId, emptyList()).stream()
           .map(lot -> new OrderableLot(orderableDto, lot));
     } else {
       return empty();
     }
   }
 
+  private UUID tradeItemOf(OrderableDto orderableDto) {
+    String tradeItemId = orderableDto.getIdentifiers().get("tradeItem");
+    return tradeItemId == null ? null : UUID.fromString(tradeItemId);
+  }
+
   @Getter
   private static class OrderableLot implements IdentifiableByOrderableLot {
     private OrderableDto orderable;
@@ -17,10 +17,9 @@ package org.openlmis.stockmanagement.service;
 
 import java.util.concurrent.Future;
 import org.openlmis.stockmanagement.domain.card.StockCard;
-import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.card.StockCardLedger;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
-import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.service.notifier.StockoutNotifier;
 import org.slf4j.ext.XLogger;
@@ -65,28 +64,27 @@ public class StockEventNotificationProcessor {
     Profiler profiler = new Profiler("CALL_NOTIFICATION_FOR_LINE_ITEM");
     profiler.setLogger(XLOGGER);
 
-    profiler.start("COPY_STOCK_CARD");
+    profiler.start("FIND_STOCK_CARD");
     OrderableLotIdentity identity = OrderableLotIdentity.identityOf(eventLine);
     StockCard card = event.getContext().findCard(identity);
-    StockCard copy = card.shallowCopy();
+    Integer stockOnHand = card.getStockOnHand();
 
-    for (StockCardLineItem line : copy.getLineItems()) {
-      StockCardLineItemReason reason = line.getReason();
-
-      if (null != reason) {
-        line.setReason(event.getContext().findCardReason(reason.getId()));
-      }
+    if (null == stockOnHand) {
+      stockOnHand = calculateStockOnHand(card, profiler);
     }
 
-    profiler.start("CALCULATE_STOCK_ON_HAND");
-    copy.calculateStockOnHand();
-
     profiler.start("NOTIFY_STOCK_CARD_EDITORS");
-    if (copy.getStockOnHand() == 0) {
-      stockoutNotifier.notifyStockEditors(copy);
+    if (null != stockOnHand && stockOnHand == 0) {
+      stockoutNotifier.notifyStockEditors(card);
     }
 
     profiler.stop().log();
     XLOGGER.exit();
   }
+
+  private Integer calculateStockOnHand(StockCard card, Profiler profiler) {
+    profiler.start("CALCULATE_STOCK_ON_HAND");
+    return StockCardLedger.of(card.getLineItems()).calculateStockOnHand();
+  }
+
 }
@@ -15,6 +15,7 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Collections.emptyList;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.slf4j.ext.XLoggerFactory.getXLogger;
 
@@ -23,6 +24,7 @@ import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidDestinationAssignment;
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidSourceAssignment;
@@ -35,12 +37,15 @@ import org.openlmis.stockmanagement.repository.NodeRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
+import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
 import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
 import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.ProgramReferenceDataService;
 import org.openlmis.stockmanagement.util.AuthenticationHelper;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.LazyGrouping;
 import org.openlmis.stockmanagement.util.LazyList;
 import org.openlmis.stockmanagement.util.LazyResource;
@@ -57,8 +62,11 @@ import org.springframework.stereotype.Service;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -92,6 +100,9 @@ public class StockEventProcessContextBuilder {
   @Autowired
   private LotReferenceDataService lotReferenceDataService;
 
+  @Autowired
+  private OrderableReferenceDataService orderableReferenceDataService;
+
   @Autowired
   private StockCardLineItemReasonRepository reasonRepository;
 
@@ -107,15 +118,32 @@ public class StockEventProcessContextBuilder {
   @Autowired
   private ValidDestinationAssignmentRepository validDestinationAssignmentRepository;
 
+  @Autowired
+  private ValidReasonAssignmentRepository validReasonAssignmentRepository;
+
   /**
    * Before processing events, put all needed ref data into context so we don't have to do frequent
-   * network requests.
+   * network requests. Line items of stock cards are loaded lazily.
    *
    * @param eventDto event dto.
    * @return a context object that includes all needed ref data.
    */
   public StockEventProcessContext buildContext(StockEventDto eventDto) {
-    XLOGGER.entry(eventDto);
+    return buildContext(eventDto, EnumSet.noneOf(ContextResource.class));
+  }
+
+  /**
+   * Before processing events, put all needed ref data into context so we don't have to do frequent
+   * network requests. Stock cards are loaded together with their line items in one query only if
+   * the given dependencies include {@link ContextResource#STOCK_CARD_LINE_ITEMS}.
+   *
+   * @param eventDto     event dto.
+   * @param dependencies context resources which validators of the event depend on.
+   * @return a context object that includes all needed ref data.
+   */
+  public StockEventProcessContext buildContext(StockEventDto eventDto,
+                                               Set<ContextResource> dependencies) {
+    XLOGGER.entry(eventDto, dependencies);
     Profiler profiler = new Profiler("BUILD_CONTEXT");
     profiler.setLogger(XLOGGER);
 
@@ -129,7 +157,8 @@ public class StockEventProcessContextBuilder {
 
     Supplier<UUID> userIdSupplier;
 
-    if (authentication.isClientOnly()) {
+    //queued events are processed without authentication, their user is resolved when queued
+    if (null == authentication || authentication.isClientOnly()) {
       userIdSupplier = eventDto::getUserId;
     } else {
       userIdSupplier = () -> authenticationHelper.getCurrentUser().getId();
@@ -166,6 +195,16 @@ public class StockEventProcessContextBuilder {
     LazyGrouping<UUID, LotDto> lotsGroupedById = new LazyGrouping<>(lots, LotDto::getId);
     context.setLots(lotsGroupedById);
 
+    profiler.start("CREATE_LAZY_ORDERABLES");
+    Supplier<List<OrderableDto>> orderablesSupplier = () -> eventDto.hasLineItems()
+        ? orderableReferenceDataService.findByIds(eventDto.getOrderableIds())
+        : emptyList();
+    LazyList<OrderableDto> orderables = new LazyList<>(orderablesSupplier);
+    LazyGrouping<UUID, OrderableDto> orderablesGroupedById = new LazyGrouping<>(
+        orderables, OrderableDto::getId
+    );
+    context.setOrderables(orderablesGroupedById);
+
     profiler.start("CREATE_LAZY_EVENT_REASONS");
     Supplier<List<StockCardLineItemReason>> eventReasonsSupplier = () -> reasonRepository
         .findByIdIn(eventDto.getReasonIds());
@@ -183,8 +222,8 @@ public class StockEventProcessContextBuilder {
     context.setNodes(nodesGroupedById);
 
     profiler.start("CREATE_LAZY_STOCK_CARDS");
-    Supplier<List<StockCard>> cardsSupplier = () -> stockCardRepository
-        .findByProgramIdAndFacilityId(eventDto.getProgramId(), eventDto.getFacilityId());
+    boolean withLineItems = dependencies.contains(ContextResource.STOCK_CARD_LINE_ITEMS);
+    Supplier<List<StockCard>> cardsSupplier = () -> getCards(eventDto, withLineItems);
     LazyList<StockCard> cards = new LazyList<>(cardsSupplier);
     LazyGrouping<OrderableLotIdentity, StockCard> cardsGroupedByIdentity = new LazyGrouping<>(
         cards, OrderableLotIdentity::identityOf
@@ -192,7 +231,8 @@ public class StockEventProcessContextBuilder {
     context.setCards(cardsGroupedByIdentity);
 
     profiler.start("CREATE_LAZY_CARD_REASONS");
-    Supplier<List<StockCardLineItemReason>> cardReasonsSupplier = () -> getCardReasons(eventDto);
+    Supplier<List<StockCardLineItemReason>> cardReasonsSupplier = () ->
+        getCardReasons(cardsGroupedByIdentity);
     LazyList<StockCardLineItemReason> cardReasons = new LazyList<>(cardReasonsSupplier);
     LazyGrouping<UUID, StockCardLineItemReason> cardReasonsGroupedById = new LazyGrouping<>(
         cardReasons, StockCardLineItemReason::getId
@@ -203,14 +243,29 @@ public class StockEventProcessContextBuilder {
     Supplier<List<ValidSourceAssignment>> sourcesSupplier = () -> validSourceAssignmentRepository
         .findByProgramIdAndFacilityTypeId(eventDto.getProgramId(), context.getFacilityTypeId());
     LazyList<ValidSourceAssignment> sources = new LazyList<>(sourcesSupplier);
-    context.setSources(sources);
+    LazyGrouping<UUID, ValidSourceAssignment> sourcesGroupedByNodeId = new LazyGrouping<>(
+        sources, source -> source.getNode().getId()
+    );
+    context.setSources(sourcesGroupedByNodeId);
 
     profiler.start("CREATE_LAZY_DESTINATIONS");
     Supplier<List<ValidDestinationAssignment>> destinationsSupplier = () ->
         validDestinationAssignmentRepository
         .findByProgramIdAndFacilityTypeId(eventDto.getProgramId(), context.getFacilityTypeId());
     LazyList<ValidDestinationAssignment> destinations = new LazyList<>(destinationsSupplier);
-    context.setDestinations(destinations);
+    LazyGrouping<UUID, ValidDestinationAssignment> destinationsGroupedByNodeId =
+        new LazyGrouping<>(destinations, destination -> destination.getNode().getId());
+    context.setDestinations(destinationsGroupedByNodeId);
+
+    profiler.start("CREATE_LAZY_VALID_REASONS");
+    Supplier<List<ValidReasonAssignment>> validReasonsSupplier = () ->
+        validReasonAssignmentRepository
+        .findByProgramIdAndFacilityTypeId(eventDto.getProgramId(), context.getFacilityTypeId());
+    LazyList<ValidReasonAssignment> validReasons = new LazyList<>(validReasonsSupplier);
+    LazyGrouping<UUID, ValidReasonAssignment> validReasonsGroupedByReasonId = new LazyGrouping<>(
+        validReasons, validReason -> validReason.getReason().getId()
+    );
+    context.setValidReasons(validReasonsGroupedByReasonId);
 
     profiler.stop().log();
     XLOGGER.exit(context);
@@ -219,27 +274,56 @@ public class StockEventProcessContextBuilder {
   }
 
   private List<LotDto> getLots(StockEventDto eventDto) {
-    return eventDto
+    List<UUID> lotIds = eventDto
         .getLineItems()
         .stream()
         .filter(item -> item.getLotId() != null)
         .map(StockEventLineItem::getLotId)
         .distinct()
-        .map(lotReferenceDataService::findOne)
         .collect(Collectors.toList());
+
+    return lotIds.isEmpty() ? emptyList() : lotReferenceDataService.findByIds(lotIds);
   }
 
-  private List<StockCardLineItemReason> getCardReasons(StockEventDto eventDto) {
-    Set<UUID> reasonIds = stockCardRepository
-        .findByProgramIdAndFacilityId(eventDto.getProgramId(), eventDto.getFacilityId())
+  private List<StockCard> getCards(StockEventDto eventDto, boolean withLineItems) {
+    if (!eventDto.hasLineItems()) {
+      return emptyList();
+    }
+
+    //only cards of orderables in the event are selected, their lots are matched afterwards
+    Set<OrderableLotIdentity> identities = eventDto
+        .getLineItems()
+        .stream()
+        .map(OrderableLotIdentity::identityOf)
+        .collect(Collectors.toSet());
+
+    List<StockCard> cards = withLineItems
+        ? stockCardRepository.findWithLineItemsByProgramIdAndFacilityIdAndOrderableIdIn(
+            eventDto.getProgramId(), eventDto.getFacilityId(), eventDto.getOrderableIds())
+        : stockCardRepository.findByProgramIdAndFacilityIdAndOrderableIdIn(
+            eventDto.getProgramId(), eventDto.getFacilityId(), eventDto.getOrderableIds());
+
+    return cards
+        .stream()
+        .filter(card -> identities.contains(OrderableLotIdentity.identityOf(card)))
+        .collect(Collectors.toList());
+  }
+
+  private List<StockCardLineItemReason> getCardReasons(
+      LazyGrouping<OrderableLotIdentity, StockCard> cards) {
+    //reasons are loaded with line items of cards touched by the event
+    Map<UUID, StockCardLineItemReason> reasonsById = cards
+        .get()
+        .values()
         .stream()
         .map(StockCard::getLineItems)
         .flatMap(Collection::stream)
         .map(StockCardLineItem::getReason)
         .filter(Objects::nonNull)
-        .map(StockCardLineItemReason::getId)
-        .collect(Collectors.toSet());
+        .collect(Collectors.toMap(
+            StockCardLineItemReason::getId, reason -> reason, (first, second) -> first));
 
-    return reasonRepository.findByIdIn(reasonIds);
+    return new ArrayList<>(reasonsById.values());
   }
+
 }
@@ -17,10 +17,20 @@ package org.openlmis.stockmanagement.service;
 
 import static org.openlmis.stockmanagement.dto.PhysicalInventoryDto.fromEventDto;
 
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.StockEventsPartiallySavedException;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.slf4j.Logger;
@@ -29,7 +39,12 @@ import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * A service that is in charge of saving stock events and generating stock cards and line items from
@@ -52,6 +67,11 @@ public class StockEventProcessor {
   private StockEventsRepository stockEventsRepository;
   @Autowired
   private StockEventNotificationProcessor stockEventNotificationProcessor;
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Value("${stockEvent.batch.chunkSize:0}")
+  private int chunkSize;
 
   /**
    * Validate and persist event and create stock card and line items from it.
@@ -59,14 +79,84 @@ public class StockEventProcessor {
    * @param eventDto stock event dto.
    * @return the persisted event ids.
    */
-
   public UUID process(StockEventDto eventDto) {
+    UUID eventId = process(eventDto, new HashMap<>());
+    callNotificationsAfterCommit(Collections.singletonList(eventDto));
+    return eventId;
+  }
+
+  /**
+   * Validate and persist events in the given order, each of them is validated against the state
+   * left by the events before it. Resources which depend only on the program and the facility are
+   * retrieved once for all events of the same program and facility. Events are saved in one
+   * transaction, or in one transaction per chunk if stockEvent.batch.chunkSize is set, in which
+   * case chunks before the failing one stay saved. Notifications of a chunk are sent after it is
+   * committed.
+   *
+   * @param eventDtos stock event dtos.
+   * @return the persisted event ids, in the order of events.
+   * @throws StockEventsPartiallySavedException if a chunk failed after earlier chunks were saved,
+   *                                            with ids of the saved events.
+   */
+  public List<UUID> processAll(List<StockEventDto> eventDtos) {
+    XLOGGER.entry(eventDtos);
+    Profiler profiler = new Profiler("PROCESS_ALL");
+    profiler.setLogger(XLOGGER);
+
+    Map<List<UUID>, StockEventProcessContext> sharedContexts = new HashMap<>();
+    List<List<StockEventDto>> chunks = chunkSize > 0
+        ? Lists.partition(eventDtos, chunkSize)
+        : Collections.singletonList(eventDtos);
+
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    List<UUID> eventIds = new ArrayList<>(eventDtos.size());
+
+    for (List<StockEventDto> chunk : chunks) {
+      profiler.start("PROCESS_CHUNK");
+      try {
+        eventIds.addAll(transaction.execute(status -> {
+          List<UUID> chunkEventIds = chunk.stream()
+              .map(eventDto -> process(eventDto, sharedContexts))
+              .collect(Collectors.toList());
+
+          callNotificationsAfterCommit(chunk);
+          return chunkEventIds;
+        }));
+      } catch (RuntimeException ex) {
+        if (eventIds.isEmpty()) {
+          throw ex;
+        }
+        throw new StockEventsPartiallySavedException(eventIds, ex);
+      }
+    }
+
+    profiler.stop().log();
+    XLOGGER.exit(eventIds);
+
+    return eventIds;
+  }
+
+  private UUID process(StockEventDto eventDto,
+                       Map<List<UUID>, StockEventProcessContext> sharedContexts) {
     XLOGGER.entry(eventDto);
     Profiler profiler = new Profiler("PROCESS");
     profiler.setLogger(XLOGGER);
 
     profiler.start("BUILD_CONTEXT");
-    StockEventProcessContext context = contextBuilder.buildContext(eventDto);
+    StockEventProcessContext context = contextBuilder.buildContext(
+        eventDto, stockEventValidationsService.getContextDependencies()
+    );
+    List<UUID> programAndFacility = Arrays.asList(
+        eventDto.getProgramId(), eventDto.getFacilityId()
+    );
+    StockEventProcessContext sharedContext = sharedContexts.get(programAndFacility);
+
+    if (null == sharedContext) {
+      sharedContexts.put(programAndFacility, context);
+    } else {
+      context.shareProgramAndFacilityResources(sharedContext);
+    }
+
     eventDto.setContext(context);
 
     profiler.start("VALIDATE");
@@ -101,9 +191,25 @@ public class StockEventProcessor {
     profiler.start("SAVE_FROM_EVENT");
     stockCardService.saveFromEvent(eventDto, savedEventId);
 
-    profiler.start("CALL_NOTIFICATIONS");
-    stockEventNotificationProcessor.callAllNotifications(eventDto);
-
     return savedEventId;
   }
+
+  /**
+   * Notifications are sent asynchronously and read stock cards of the events, so they have to
+   * wait until the events are committed. Nothing is sent for events which are rolled back.
+   */
+  private void callNotificationsAfterCommit(List<StockEventDto> eventDtos) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      eventDtos.forEach(stockEventNotificationProcessor::callAllNotifications);
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            eventDtos.forEach(stockEventNotificationProcessor::callAllNotifications);
+          }
+        });
+  }
 }
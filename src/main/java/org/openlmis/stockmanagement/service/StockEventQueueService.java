@@ -0,0 +1,306 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.PROCESSING;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.QUEUED;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_QUEUED_NOT_FOUND;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.BaseMessageException;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.repository.QueuedStockEventRepository;
+import org.openlmis.stockmanagement.util.AuthenticationHelper;
+import org.openlmis.stockmanagement.util.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Queue of stock events which are processed asynchronously. Queued events are kept in the
+ * database until they are processed by a pool of workers. Events of one facility are processed
+ * one by one in order of their arrival, events of different facilities are processed in parallel.
+ */
+@Service
+public class StockEventQueueService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StockEventQueueService.class);
+
+  @Autowired
+  private QueuedStockEventRepository queuedStockEventRepository;
+
+  @Autowired
+  private StockEventProcessor stockEventProcessor;
+
+  @Autowired
+  private AuthenticationHelper authenticationHelper;
+
+  @Autowired
+  private MessageService messageService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${stockEvent.queue.workers:4}")
+  private int workers = 4;
+
+  @Value("${stockEvent.queue.pollSize:100}")
+  private int pollSize = 100;
+
+  @Value("${stockEvent.queue.maxAttempts:5}")
+  private int maxAttempts = 5;
+
+  @Value("${stockEvent.queue.retryDelay:10}")
+  private long retryDelay = 10;
+
+  @Value("${stockEvent.queue.maxRetryDelay:600}")
+  private long maxRetryDelay = 600;
+
+  private ExecutorService executor;
+
+  private final Set<UUID> busyFacilities = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Events which were being processed when the service was stopped are queued again.
+   */
+  @PostConstruct
+  void start() {
+    executor = Executors.newFixedThreadPool(workers);
+
+    int requeued = new TransactionTemplate(transactionManager)
+        .execute(status -> queuedStockEventRepository.updateStatus(PROCESSING, QUEUED));
+
+    if (requeued > 0) {
+      LOGGER.info("Queued {} interrupted stock events again", requeued);
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    executor.shutdown();
+  }
+
+  /**
+   * Put stock event into the queue. The user who submits the event is resolved now, because it
+   * will not be known when the event is processed.
+   *
+   * @param eventDto stock event dto.
+   * @return id of the queued event, used to track its status.
+   */
+  public UUID enqueue(StockEventDto eventDto) {
+    OAuth2Authentication authentication = (OAuth2Authentication) SecurityContextHolder
+        .getContext()
+        .getAuthentication();
+
+    QueuedStockEvent queuedEvent = new QueuedStockEvent();
+    queuedEvent.setFacilityId(eventDto.getFacilityId());
+    queuedEvent.setProgramId(eventDto.getProgramId());
+    queuedEvent.setUserId(authentication.isClientOnly()
+        ? eventDto.getUserId()
+        : authenticationHelper.getCurrentUser().getId());
+    queuedEvent.setPayload(writePayload(eventDto));
+    queuedEvent.setStatus(QUEUED);
+    queuedEvent.setQueuedDate(ZonedDateTime.now());
+
+    UUID queuedEventId = queuedStockEventRepository.save(queuedEvent).getId();
+    LOGGER.debug("Queued stock event with id {}", queuedEventId);
+
+    return queuedEventId;
+  }
+
+  /**
+   * Find queued stock event.
+   *
+   * @param queuedEventId id of the queued event.
+   * @return the queued event.
+   * @throws ResourceNotFoundException if there is no such queued event.
+   */
+  public QueuedStockEvent findOne(UUID queuedEventId) {
+    QueuedStockEvent queuedEvent = queuedStockEventRepository.findOne(queuedEventId);
+
+    if (null == queuedEvent) {
+      throw new ResourceNotFoundException(
+          new Message(ERROR_EVENT_QUEUED_NOT_FOUND, queuedEventId));
+    }
+
+    return queuedEvent;
+  }
+
+  /**
+   * Read the stock event dto of the queued event.
+   *
+   * @param queuedEvent the queued event.
+   * @return stock event dto with the user who submitted it.
+   */
+  public StockEventDto readPayload(QueuedStockEvent queuedEvent) {
+    try {
+      StockEventDto eventDto = objectMapper.readValue(queuedEvent.getPayload(),
+          StockEventDto.class);
+      eventDto.setUserId(queuedEvent.getUserId());
+      return eventDto;
+    } catch (IOException ex) {
+      throw new IllegalStateException("Unable to read queued stock event", ex);
+    }
+  }
+
+  /**
+   * Hand queued events over to the workers. Events of a facility are handed over only when no
+   * worker processes events of that facility and none of them waits for its next attempt, so
+   * they are always processed in order.
+   */
+  @Scheduled(fixedDelayString = "${stockEvent.queue.pollInterval:1000}")
+  public void poll() {
+    List<QueuedStockEvent> queuedEvents = queuedStockEventRepository
+        .findReadyToProcess(QUEUED, ZonedDateTime.now(), new PageRequest(0, pollSize));
+
+    Map<UUID, List<UUID>> groupedByFacility = queuedEvents
+        .stream()
+        .collect(Collectors.groupingBy(QueuedStockEvent::getFacilityId, LinkedHashMap::new,
+            Collectors.mapping(QueuedStockEvent::getId, Collectors.toList())));
+
+    groupedByFacility.forEach((facilityId, queuedEventIds) -> {
+      if (busyFacilities.add(facilityId)) {
+        executor.execute(() -> {
+          try {
+            processAll(queuedEventIds);
+          } finally {
+            busyFacilities.remove(facilityId);
+          }
+        });
+      }
+    });
+  }
+
+  private void processAll(List<UUID> queuedEventIds) {
+    for (UUID queuedEventId : queuedEventIds) {
+      if (!process(queuedEventId)) {
+        //later events of the facility wait until this one is processed
+        return;
+      }
+    }
+  }
+
+  /**
+   * Process one queued event. Events which fail with a message exception (validation, permission
+   * or missing resource) are marked as failed. Events which fail for other reasons, like
+   * unavailable reference data, are queued again to be retried after a delay which doubles with
+   * every attempt, until they have failed stockEvent.queue.maxAttempts times and are marked as
+   * failed too.
+   *
+   * @return false if the event has to be retried, true otherwise.
+   */
+  boolean process(UUID queuedEventId) {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    //the event may have been processed since it was polled
+    boolean claimed = transaction.execute(status ->
+        queuedStockEventRepository.updateStatus(queuedEventId, QUEUED, PROCESSING) > 0);
+
+    if (!claimed) {
+      return true;
+    }
+
+    try {
+      transaction.execute(status -> {
+        QueuedStockEvent queuedEvent = queuedStockEventRepository.findOne(queuedEventId);
+        UUID eventId = stockEventProcessor.process(readPayload(queuedEvent));
+
+        queuedEvent.processed(eventId);
+        return queuedStockEventRepository.save(queuedEvent);
+      });
+    } catch (BaseMessageException ex) {
+      Message.LocalizedMessage message = messageService.localize(ex.asMessage());
+      LOGGER.warn("Queued stock event {} failed: {}", queuedEventId, message);
+
+      transaction.execute(status -> {
+        QueuedStockEvent queuedEvent = queuedStockEventRepository.findOne(queuedEventId);
+        queuedEvent.failed(message.getMessageKey(), message.getMessage());
+        return queuedStockEventRepository.save(queuedEvent);
+      });
+    } catch (RuntimeException ex) {
+      QueuedStockEvent queuedEvent = transaction.execute(status -> {
+        QueuedStockEvent failedEvent = queuedStockEventRepository.findOne(queuedEventId);
+        failedEvent.attemptFailed();
+
+        if (failedEvent.getAttempts() < maxAttempts) {
+          failedEvent.retryLater(getRetryDelay(failedEvent.getAttempts()));
+        } else {
+          Message.LocalizedMessage message = messageService.localize(new Message(
+              ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED, failedEvent.getAttempts(), ex.getMessage()));
+          failedEvent.failed(message.getMessageKey(), message.getMessage());
+        }
+        queuedStockEventRepository.save(failedEvent);
+        return failedEvent;
+      });
+
+      if (QUEUED == queuedEvent.getStatus()) {
+        LOGGER.error("Unable to process queued stock event {}, attempt {} of {}, it will be "
+            + "retried at {}", queuedEventId, queuedEvent.getAttempts(), maxAttempts,
+            queuedEvent.getNextAttemptDate(), ex);
+        return false;
+      }
+
+      LOGGER.error("Unable to process queued stock event {}, it failed {} times",
+          queuedEventId, queuedEvent.getAttempts(), ex);
+    }
+
+    return true;
+  }
+
+  private long getRetryDelay(int attempts) {
+    //the delay doubles with every attempt, shifting is limited to avoid overflow
+    long delay = retryDelay << Math.min(attempts - 1, 30);
+    return Math.min(delay, maxRetryDelay);
+  }
+
+  private String writePayload(StockEventDto eventDto) {
+    try {
+      return objectMapper.writeValueAsString(eventDto);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unable to write stock event to the queue", ex);
+    }
+  }
+}
@@ -17,31 +17,216 @@ package org.openlmis.stockmanagement.service;
 
 
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.util.ContextResource;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.openlmis.stockmanagement.validators.StockEventValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * An aggregator of all stock event validators.
  * All validators will run before any actual DB writing happens.
  * It any one validator detects something wrong, we'll stop processing the stock event.
+ * Reference data the validators depend on is retrieved concurrently before they run. Validators
+ * which only read prefetched resources run concurrently as well, the others run one by one in the
+ * thread of the request. Either way the error of the first failing validator in their order is
+ * reported, so that it is deterministic, and validators after it are skipped.
  */
 @Service
+@ManagedResource(description = "Stock event validations")
 public class StockEventValidationsService {
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(StockEventValidationsService.class);
 
   @Autowired
   private List<StockEventValidator> stockEventValidators;
 
+  @Value("${stockEvent.validation.parallelism:4}")
+  private int parallelism = 4;
+
+  private ExecutorService executor;
+
+  private final Map<String, ValidatorTiming> timings = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  void startExecutor() {
+    executor = Executors.newFixedThreadPool(parallelism);
+  }
+
+  @PreDestroy
+  void stopExecutor() {
+    executor.shutdown();
+  }
+
   /**
    * Validate stock event with permission service and all validators.
    *
    * @param stockEventDto the event to be validated.
    */
   public void validate(StockEventDto stockEventDto) {
-    for (StockEventValidator validator : stockEventValidators) {
+    prefetch(stockEventDto.getContext());
+
+    int count = stockEventValidators.size();
+    // index of the first failed validator, validators after it are not run any more
+    AtomicInteger firstFailure = new AtomicInteger(count);
+    List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+
+    for (int index = 0; index < count; ++index) {
+      StockEventValidator validator = stockEventValidators.get(index);
+      futures.add(validator.isConcurrent()
+          ? runConcurrently(validator, stockEventDto, index, firstFailure)
+          : null);
+    }
+
+    try {
+      for (int index = 0; index < count; ++index) {
+        CompletableFuture<Void> future = futures.get(index);
+
+        if (null == future) {
+          runValidator(stockEventValidators.get(index), stockEventDto, index, firstFailure);
+        } else {
+          join(future);
+        }
+      }
+    } finally {
+      firstFailure.set(-1);
+      futures
+          .stream()
+          .filter(Objects::nonNull)
+          .forEach(future -> future.cancel(false));
+    }
+  }
+
+  /**
+   * Get context resources which any of the validators depends on.
+   *
+   * @return declared dependencies of all validators.
+   */
+  public Set<ContextResource> getContextDependencies() {
+    Set<ContextResource> resources = EnumSet.noneOf(ContextResource.class);
+    stockEventValidators
+        .forEach(validator -> resources.addAll(validator.getContextDependencies()));
+
+    return resources;
+  }
+
+  @ManagedAttribute(description = "Number of calls, total and max time of each validator")
+  public String[] getValidatorTimings() {
+    return timings
+        .entrySet()
+        .stream()
+        .sorted(Map.Entry.comparingByKey())
+        .map(entry -> entry.getKey() + ": " + entry.getValue())
+        .toArray(String[]::new);
+  }
+
+  private CompletableFuture<Void> runConcurrently(StockEventValidator validator,
+                                                  StockEventDto stockEventDto, int index,
+                                                  AtomicInteger firstFailure) {
+    Runnable task = () -> runValidator(validator, stockEventDto, index, firstFailure);
+    return CompletableFuture.runAsync(new DelegatingSecurityContextRunnable(task), executor);
+  }
+
+  private void runValidator(StockEventValidator validator, StockEventDto stockEventDto,
+                            int index, AtomicInteger firstFailure) {
+    if (index > firstFailure.get()) {
+      // an earlier validator has failed, its error is reported
+      return;
+    }
+
+    long start = System.nanoTime();
+
+    try {
       validator.validate(stockEventDto);
+    } catch (RuntimeException ex) {
+      firstFailure.accumulateAndGet(index, Math::min);
+      throw ex;
+    } finally {
+      timings
+          .computeIfAbsent(validator.getClass().getSimpleName(), name -> new ValidatorTiming())
+          .record(System.nanoTime() - start);
+    }
+  }
+
+  private void join(CompletableFuture<Void> future) {
+    try {
+      future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+
+      throw ex;
+    }
+  }
+
+  private void prefetch(StockEventProcessContext context) {
+    if (null == context) {
+      return;
+    }
+
+    Set<ContextResource> resources = getContextDependencies();
+
+    // failures are ignored here, the validator which needs the resource will retrieve it again
+    // and report the error in the usual way
+    CompletableFuture<?>[] futures = resources
+        .stream()
+        .filter(resource -> !resource.isStoredInDatabase())
+        .map(resource -> CompletableFuture
+            .runAsync(() -> context.prefetch(resource), executor)
+            .exceptionally(ex -> {
+              LOGGER.warn("Unable to prefetch {} of stock event context", resource, ex);
+              return null;
+            }))
+        .toArray(size -> new CompletableFuture<?>[size]);
+
+    CompletableFuture.allOf(futures).join();
+
+    // resources stored in the database depend on reference data (e.g. the facility type) and
+    // are loaded in the thread and transaction of the request
+    resources
+        .stream()
+        .filter(ContextResource::isStoredInDatabase)
+        .forEach(context::prefetch);
+  }
+
+  private static final class ValidatorTiming {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      calls.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public String toString() {
+      return calls.get() + " calls, " + totalNanos.get() / 1_000_000 + " ms total, "
+          + maxNanos.get() / 1_000_000 + " ms max";
     }
   }
 
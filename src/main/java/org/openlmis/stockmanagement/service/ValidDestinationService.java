@@ -23,6 +23,7 @@ import org.openlmis.stockmanagement.dto.ValidSourceDestinationDto;
 import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
@@ -40,6 +41,7 @@ public class ValidDestinationService extends SourceDestinationBaseService {
    * @param facilityTypeId facility type ID
    * @return valid source assignment DTOs
    */
+  @Transactional(readOnly = true)
   public List<ValidSourceDestinationDto> findDestinations(UUID programId, UUID facilityTypeId) {
     return findAssignments(programId, facilityTypeId, validDestinationRepository);
   }
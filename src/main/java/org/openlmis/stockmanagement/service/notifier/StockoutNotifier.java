@@ -21,7 +21,6 @@ import static org.openlmis.stockmanagement.service.PermissionService.STOCK_INVEN
 
 import org.apache.commons.lang.text.StrSubstitutor;
 import org.openlmis.stockmanagement.domain.card.StockCard;
-import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.RightDto;
 import org.openlmis.stockmanagement.dto.referencedata.SupervisoryNodeDto;
@@ -42,7 +41,6 @@ import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -125,8 +123,7 @@ public class StockoutNotifier extends BaseNotifier {
         getOrderableNameLotInformation(valuesMap.get("orderableName"), stockCard.getLotId()));
     valuesMap.put("programName", getProgramName(stockCard.getProgramId()));
 
-    List<StockCardLineItem> lineItems = stockCard.getLineItems();
-    LocalDate stockoutDate = lineItems.get(lineItems.size() - 1).getOccurredDate();
+    LocalDate stockoutDate = stockCard.latestOccurredDate();
     valuesMap.put("stockoutDate", getDateFormatter().format(stockoutDate));
     long numberOfDaysOfStockout = getNumberOfDaysOfStockout(stockoutDate);
     valuesMap.put("numberOfDaysOfStockout", numberOfDaysOfStockout
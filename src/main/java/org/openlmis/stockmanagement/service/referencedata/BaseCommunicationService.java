@@ -26,16 +26,17 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 public abstract class BaseCommunicationService<T> {
   protected static final String ACCESS_TOKEN = "access_token";
 
-  protected RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  protected RestOperations restTemplate;
 
   protected abstract String getServiceUrl();
 
@@ -48,14 +49,18 @@ public abstract class BaseCommunicationService<T> {
   @Autowired
   private AuthService authService;
 
-  public BaseCommunicationService() {
-    this.restTemplate = new RestTemplate();
-  }
-
   protected String obtainAccessToken() {
     return authService.obtainAccessToken();
   }
 
+  /**
+   * Runs the request with access token of this service, and retries it once with a new token
+   * if the token is rejected.
+   */
+  protected <R> R runWithAccessToken(Function<String, R> request) {
+    return authService.runWithAccessToken(request);
+  }
+
   protected URI buildUri(String url) {
     return buildUri(url, null);
   }
@@ -94,12 +99,13 @@ public abstract class BaseCommunicationService<T> {
     params.putAll(parameters);
 
     try {
-      ResponseEntity<PageImplRepresentation<P>> response = restTemplate.exchange(
-          buildUri(url, params),
-          method,
-          createEntity(obtainAccessToken(), payload),
-          new DynamicPageTypeReference<>(type)
-      );
+      ResponseEntity<PageImplRepresentation<P>> response = runWithAccessToken(
+          token -> restTemplate.exchange(
+              buildUri(url, params),
+              method,
+              createEntity(token, payload),
+              new DynamicPageTypeReference<>(type)
+          ));
       return response.getBody();
 
     } catch (HttpStatusCodeException ex) {
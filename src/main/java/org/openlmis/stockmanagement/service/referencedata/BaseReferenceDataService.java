@@ -18,15 +18,16 @@ package org.openlmis.stockmanagement.service.referencedata;
 import static org.openlmis.stockmanagement.util.RequestHelper.createEntity;
 
 import org.openlmis.stockmanagement.dto.referencedata.ResultDto;
+import org.openlmis.stockmanagement.util.CachedCopies;
 import org.openlmis.stockmanagement.util.DynamicParametrizedTypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,7 +35,12 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 
+/**
+ * Reference data of each type is cached as JSON, so that every caller deserializes its own copy
+ * and nobody can modify the cached value.
+ */
 public abstract class BaseReferenceDataService<T> extends BaseCommunicationService<T> {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -42,6 +48,9 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
   @Value("${referencedata.url}")
   private String referenceDataUrl;
 
+  @Autowired
+  private ReferenceDataCache referenceDataCache;
+
   /**
    * Return one object from Reference data service.
    *
@@ -50,13 +59,13 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
    */
   public T findOne(UUID id) {
     String url = getServiceUrl() + getUrl() + id;
+    return getCachedCopy(url, getResultClass(), () -> retrieveOne(url, id));
+  }
 
-    RestTemplate restTemplate = new RestTemplate();
-
+  private T retrieveOne(String url, UUID id) {
     try {
-      ResponseEntity<T> responseEntity = restTemplate.exchange(
-          buildUri(url), HttpMethod.GET, createEntity(obtainAccessToken()),
-          getResultClass());
+      ResponseEntity<T> responseEntity = runWithAccessToken(token -> restTemplate.exchange(
+          buildUri(url), HttpMethod.GET, createEntity(token), getResultClass()));
       return responseEntity.getBody();
     } catch (HttpStatusCodeException ex) {
       // rest template will handle 404 as an exception, instead of returning null
@@ -98,13 +107,12 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
     Map<String, Object> params = new HashMap<>();
     params.putAll(parameters);
 
-    RestTemplate restTemplate = new RestTemplate();
-    ResponseEntity<ResultDto<P>> response = restTemplate.exchange(
+    ResponseEntity<ResultDto<P>> response = runWithAccessToken(token -> restTemplate.exchange(
         buildUri(url, params),
         HttpMethod.GET,
-        createEntity(obtainAccessToken()),
+        createEntity(token),
         new DynamicParametrizedTypeReference<>(type)
-    );
+    ));
 
     return response.getBody();
   }
@@ -112,17 +120,27 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
   private Collection<T> findAllWithMethod(String resourceUrl, Map<String, Object> uriParameters,
                                           Map<String, Object> payload, HttpMethod method) {
     String url = getServiceUrl() + getUrl() + resourceUrl;
-    RestTemplate restTemplate = new RestTemplate();
 
+    if (HttpMethod.POST == method && !isPostFindAllCached()) {
+      return new ArrayList<>(Arrays.asList(retrieveAll(url, uriParameters, payload, method)));
+    }
+
+    String key = method + " " + buildUri(url, uriParameters) + " " + payload;
+    return new ArrayList<>(Arrays.asList(getCachedCopy(key, getArrayResultClass(),
+        () -> retrieveAll(url, uriParameters, payload, method))));
+  }
+
+  private T[] retrieveAll(String url, Map<String, Object> uriParameters,
+                          Map<String, Object> payload, HttpMethod method) {
     Map<String, Object> params = new HashMap<>();
     params.putAll(uriParameters);
 
     try {
-      ResponseEntity<T[]> responseEntity = restTemplate.exchange(buildUri(url, params),
-          method, createEntity(obtainAccessToken(), payload),
-          getArrayResultClass());
+      ResponseEntity<T[]> responseEntity = runWithAccessToken(token -> restTemplate.exchange(
+          buildUri(url, params), method, createEntity(token, payload),
+          getArrayResultClass()));
 
-      return new ArrayList<>(Arrays.asList(responseEntity.getBody()));
+      return responseEntity.getBody();
     } catch (HttpStatusCodeException ex) {
       throw buildDataRetrievalException(ex);
     }
@@ -137,4 +155,39 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
   protected String getServiceUrl() {
     return referenceDataUrl;
   }
+
+  /**
+   * Whether results of {@link #postFindAll(String, Map, Map)} are cached. Searches sent with POST
+   * are not cached unless a reference data type opts in.
+   */
+  protected boolean isPostFindAllCached() {
+    return false;
+  }
+
+  /**
+   * Return a copy of the value cached under the given key in the cache of this reference data
+   * type, or retrieve it with the given loader and cache it. Each call returns a new copy.
+   */
+  protected <V> V getCachedCopy(String key, Class<V> type, Supplier<V> loader) {
+    byte[] json = referenceDataCache.get(getCacheName(), key,
+        () -> CachedCopies.serialize(loader.get()));
+    return null == json ? null : CachedCopies.deserialize(json, type);
+  }
+
+  /**
+   * Return value cached under the given key in the given cache, or retrieve it with the given
+   * loader and cache it. Used for values which are not of this reference data type.
+   */
+  protected <V> V getCached(String cacheName, String key, Supplier<V> loader) {
+    return referenceDataCache.get(cacheName, key, loader);
+  }
+
+  /**
+   * Name of the cache of this reference data type, used to configure and evict it. By default
+   * it is derived from the result class, for example "program" for ProgramDto.
+   */
+  protected String getCacheName() {
+    String name = getResultClass().getSimpleName().replaceFirst("Dto$", "");
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
 }
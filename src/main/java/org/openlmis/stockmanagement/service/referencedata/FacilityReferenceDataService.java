@@ -15,13 +15,24 @@
 
 package org.openlmis.stockmanagement.service.referencedata;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class FacilityReferenceDataService extends BaseReferenceDataService<FacilityDto> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FacilityReferenceDataService.class);
 
   @Override
   protected String getUrl() {
@@ -41,4 +52,34 @@ public class FacilityReferenceDataService extends BaseReferenceDataService<Facil
   public boolean exists(UUID id) {
     return id != null && findOne(id) != null;
   }
+
+  /**
+   * Find facilities with given ids in one call to reference data. Facilities which are not
+   * returned by that call are retrieved one by one.
+   *
+   * @param ids ids of facilities.
+   * @return found facilities by id, facilities which do not exist are mapped to null.
+   */
+  public Map<UUID, FacilityDto> findByIds(Collection<UUID> ids) {
+    Set<UUID> distinctIds = new LinkedHashSet<>(ids);
+    Map<UUID, FacilityDto> found = new HashMap<>();
+
+    if (distinctIds.size() > 1) {
+      try {
+        findAll("", ImmutableMap.of("id", Joiner.on(',').join(distinctIds)))
+            .stream()
+            .filter(facility -> distinctIds.contains(facility.getId()))
+            .forEach(facility -> found.put(facility.getId(), facility));
+      } catch (DataRetrievalException ex) {
+        LOGGER.warn("Unable to search facilities by ids, retrieving them one by one", ex);
+      }
+    }
+
+    distinctIds
+        .stream()
+        .filter(id -> !found.containsKey(id))
+        .forEach(id -> found.put(id, findOne(id)));
+
+    return found;
+  }
 }
@@ -15,17 +15,55 @@
 
 package org.openlmis.stockmanagement.service.referencedata;
 
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 @Service
 public class LotReferenceDataService extends BaseReferenceDataService<LotDto> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LotReferenceDataService.class);
+
+  @Value("${referencedata.lot.batchSize:50}")
+  private int batchSize = 50;
+
+  @Value("${referencedata.lot.parallelism:4}")
+  private int parallelism = 4;
+
+  private ExecutorService executor;
+
+  @PostConstruct
+  void startExecutor() {
+    executor = Executors.newFixedThreadPool(parallelism);
+  }
+
+  @PreDestroy
+  void stopExecutor() {
+    executor.shutdown();
+  }
+
   @Override
   protected String getUrl() {
     return "/api/lots/";
@@ -42,12 +80,93 @@ public class LotReferenceDataService extends BaseReferenceDataService<LotDto> {
   }
 
   /**
-   * Search for lots under a specific trade item.
+   * Search for lots under a specific trade item. Lots of each trade item are cached, like other
+   * reference data of lots.
    *
    * @param tradeItemId trade item id.
    * @return found page of lots.
    */
   public List<LotDto> getAllLotsOf(UUID tradeItemId) {
+    String key = getServiceUrl() + getUrl() + "search?tradeItemId=" + tradeItemId;
+
+    return new ArrayList<>(Arrays.asList(getCachedCopy(key, LotDto[].class,
+        () -> retrieveAllLotsOf(tradeItemId).toArray(new LotDto[0]))));
+  }
+
+  /**
+   * Search for lots under each of given trade items. Trade items are searched concurrently, at
+   * most referencedata.lot.parallelism at a time.
+   *
+   * @param tradeItemIds trade item ids.
+   * @return found lots grouped by trade item id.
+   */
+  public Map<UUID, List<LotDto>> getAllLotsOf(Collection<UUID> tradeItemIds) {
+    Map<UUID, CompletableFuture<List<LotDto>>> futures = new HashMap<>();
+    tradeItemIds.forEach(tradeItemId -> futures.computeIfAbsent(tradeItemId,
+        id -> CompletableFuture.supplyAsync(() -> getAllLotsOf(id), executor)));
+
+    Map<UUID, List<LotDto>> lots = new HashMap<>();
+    futures.forEach((tradeItemId, future) -> lots.put(tradeItemId, join(future)));
+    return lots;
+  }
+
+  /**
+   * Find lots with given ids. Lots are searched in batches of referencedata.lot.batchSize ids, and
+   * those which are not returned by the search are retrieved one by one, at most
+   * referencedata.lot.parallelism at a time.
+   *
+   * @param ids ids of lots.
+   * @return found lots, lots which do not exist are omitted.
+   */
+  public List<LotDto> findByIds(Collection<UUID> ids) {
+    List<UUID> distinctIds = ids.stream().distinct().collect(toList());
+    Map<UUID, LotDto> found = new HashMap<>();
+
+    for (List<UUID> batch : Lists.partition(distinctIds, batchSize)) {
+      try {
+        searchByIds(batch)
+            .stream()
+            .filter(lot -> batch.contains(lot.getId()))
+            .forEach(lot -> found.put(lot.getId(), lot));
+      } catch (DataRetrievalException ex) {
+        LOGGER.warn("Unable to search lots by ids, retrieving them one by one", ex);
+      }
+    }
+
+    List<UUID> missingIds = distinctIds
+        .stream()
+        .filter(id -> !found.containsKey(id))
+        .collect(toList());
+    findOneByOne(missingIds).forEach(lot -> found.put(lot.getId(), lot));
+
+    return distinctIds
+        .stream()
+        .map(found::get)
+        .filter(Objects::nonNull)
+        .collect(toList());
+  }
+
+  private List<LotDto> searchByIds(List<UUID> ids) {
+    Map<String, Object> params = new HashMap<>();
+    params.put("id", Joiner.on(',').join(ids));
+    params.put("size", ids.size());
+    return getPage("search", params).getContent();
+  }
+
+  private List<LotDto> findOneByOne(List<UUID> ids) {
+    List<CompletableFuture<LotDto>> futures = ids
+        .stream()
+        .map(id -> CompletableFuture.supplyAsync(() -> findOne(id), executor))
+        .collect(toList());
+
+    return futures
+        .stream()
+        .map(this::join)
+        .filter(Objects::nonNull)
+        .collect(toList());
+  }
+
+  private List<LotDto> retrieveAllLotsOf(UUID tradeItemId) {
     List<LotDto> allLots = new ArrayList<>();
 
     int pageNumber = 0;
@@ -64,6 +183,18 @@ public class LotReferenceDataService extends BaseReferenceDataService<LotDto> {
     return allLots;
   }
 
+  private <R> R join(CompletableFuture<R> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      //rethrow the original exception, so that callers can handle it as before
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
   private Page<LotDto> getOnePage(UUID tradeItemId, int pageNumber) {
     HashMap<String, Object> params = new HashMap<>();
     params.put("tradeItemId", tradeItemId);
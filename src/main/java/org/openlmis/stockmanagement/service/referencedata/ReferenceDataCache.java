@@ -0,0 +1,179 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service.referencedata;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.openlmis.stockmanagement.dto.ReferenceDataCacheDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Process-wide cache of reference data responses. Each reference data type has its own cache,
+ * configured by referencedata.cache.{name}.timeToLive (in seconds) and
+ * referencedata.cache.{name}.maximumSize properties, falling back to referencedata.cache.timeToLive
+ * and referencedata.cache.maximumSize. Time to live of zero disables caching of the type.
+ * Within an HTTP request, values are also memoized for the rest of the request.
+ */
+@Component
+public class ReferenceDataCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+  private static final String PROPERTY_PREFIX = "referencedata.cache.";
+  private static final String TIME_TO_LIVE = "timeToLive";
+  private static final String MAXIMUM_SIZE = "maximumSize";
+
+  private final Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+
+  @Autowired
+  private Environment environment;
+
+  /**
+   * Return cached value of given key, or retrieve it with the given loader and cache it. Null
+   * values are not cached.
+   *
+   * @param name   name of the reference data type.
+   * @param key    key of the cached value, unique within the type.
+   * @param loader loader used to retrieve the value when it is not cached.
+   * @return the cached or retrieved value.
+   */
+  public <V> V get(String name, String key, Supplier<V> loader) {
+    ReferenceDataRequestMemo memo = ReferenceDataRequestMemo.current();
+
+    if (null == memo) {
+      return getCached(name, key, loader);
+    }
+
+    return memo.get(name, key, () -> getCached(name, key, memo.counting(name, loader)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> V getCached(String name, String key, Supplier<V> loader) {
+    Cache<String, Object> cache = caches.computeIfAbsent(name, this::createCache);
+
+    V value = (V) cache.getIfPresent(key);
+    if (null == value) {
+      value = loader.get();
+      if (null != value) {
+        cache.put(key, value);
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Evict all entries of given reference data type.
+   *
+   * @param name name of the reference data type.
+   * @return true if the type has been cached before.
+   */
+  public boolean evict(String name) {
+    Cache<String, Object> cache = caches.get(name);
+    if (null == cache) {
+      return false;
+    }
+
+    LOGGER.info("Evicting reference data cache: {}", name);
+    cache.invalidateAll();
+    return true;
+  }
+
+  /**
+   * Evict entries of given reference data type which keys start with the given prefix.
+   *
+   * @param name      name of the reference data type.
+   * @param keyPrefix prefix of keys to evict.
+   * @return true if the type has been cached before.
+   */
+  public boolean evict(String name, String keyPrefix) {
+    Cache<String, Object> cache = caches.get(name);
+    if (null == cache) {
+      return false;
+    }
+
+    LOGGER.info("Evicting entries of reference data cache {} starting with {}", name, keyPrefix);
+    cache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    return true;
+  }
+
+  /**
+   * Evict all entries of all reference data types.
+   */
+  public void evictAll() {
+    LOGGER.info("Evicting all reference data caches");
+    caches.values().forEach(Cache::invalidateAll);
+  }
+
+  /**
+   * Return settings and statistics of all reference data types which have been cached before.
+   *
+   * @return a list of cache statistics.
+   */
+  public List<ReferenceDataCacheDto> getStatistics() {
+    return caches.entrySet()
+        .stream()
+        .map(entry -> createStatistics(entry.getKey(), entry.getValue()))
+        .collect(Collectors.toList());
+  }
+
+  private Cache<String, Object> createCache(String name) {
+    long timeToLive = getSetting(name, TIME_TO_LIVE);
+    long maximumSize = getSetting(name, MAXIMUM_SIZE);
+    LOGGER.debug("Creating reference data cache {}, time to live: {}, maximum size: {}",
+        name, timeToLive, maximumSize);
+
+    return CacheBuilder.newBuilder()
+        .expireAfterWrite(timeToLive, SECONDS)
+        .maximumSize(timeToLive > 0 ? maximumSize : 0)
+        .recordStats()
+        .build();
+  }
+
+  private ReferenceDataCacheDto createStatistics(String name, Cache<String, Object> cache) {
+    CacheStats stats = cache.stats();
+
+    return ReferenceDataCacheDto.builder()
+        .name(name)
+        .timeToLive(getSetting(name, TIME_TO_LIVE))
+        .maximumSize(getSetting(name, MAXIMUM_SIZE))
+        .size(cache.size())
+        .hitCount(stats.hitCount())
+        .missCount(stats.missCount())
+        .evictionCount(stats.evictionCount())
+        .build();
+  }
+
+  private long getSetting(String name, String setting) {
+    Long defaultValue = environment.getProperty(PROPERTY_PREFIX + setting, Long.class, 0L);
+    return environment.getProperty(PROPERTY_PREFIX + name + "." + setting, Long.class,
+        defaultValue);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service.referencedata;
+
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Reference data retrieved within one HTTP request, so that each entity is retrieved at most once
+ * per request, even when caching of its type is disabled. Number of retrievals of each type is
+ * logged when the request completes. Outside of HTTP requests, for example in worker threads,
+ * nothing is memoized.
+ */
+final class ReferenceDataRequestMemo {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceDataRequestMemo.class);
+  private static final String ATTRIBUTE = ReferenceDataRequestMemo.class.getName();
+
+  private final String request;
+  private final Map<String, Optional<Object>> values = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+
+  private ReferenceDataRequestMemo(String request) {
+    this.request = request;
+  }
+
+  /**
+   * Return memo of the current HTTP request, or null if there is no request bound to the thread.
+   */
+  static ReferenceDataRequestMemo current() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (null == attributes) {
+      return null;
+    }
+
+    ReferenceDataRequestMemo memo = (ReferenceDataRequestMemo) attributes
+        .getAttribute(ATTRIBUTE, SCOPE_REQUEST);
+
+    if (null == memo) {
+      String request = attributes instanceof ServletRequestAttributes
+          ? ((ServletRequestAttributes) attributes).getRequest().getRequestURI()
+          : attributes.getSessionId();
+
+      memo = new ReferenceDataRequestMemo(request);
+      attributes.setAttribute(ATTRIBUTE, memo, SCOPE_REQUEST);
+      attributes.registerDestructionCallback(ATTRIBUTE, memo::logFetches, SCOPE_REQUEST);
+    }
+
+    return memo;
+  }
+
+  /**
+   * Return value memoized under the given type and key, or retrieve it with the given loader.
+   * Null values are memoized too, so missing entities are not retrieved again.
+   */
+  @SuppressWarnings("unchecked")
+  <V> V get(String name, String key, Supplier<V> loader) {
+    //loaders may retrieve other reference data, so the value is not computed inside the map
+    String memoKey = name + " " + key;
+    Optional<Object> value = values.get(memoKey);
+
+    if (null == value) {
+      value = Optional.ofNullable(loader.get());
+      values.put(memoKey, value);
+    }
+
+    return (V) value.orElse(null);
+  }
+
+  /**
+   * Wrap the loader of given type, so that its calls are counted.
+   */
+  <V> Supplier<V> counting(String name, Supplier<V> loader) {
+    return () -> {
+      fetches.computeIfAbsent(name, type -> new AtomicInteger()).incrementAndGet();
+      return loader.get();
+    };
+  }
+
+  private void logFetches() {
+    if (!fetches.isEmpty()) {
+      LOGGER.debug("Reference data retrieved for request {}: {}", request, new TreeMap<>(fetches));
+    }
+  }
+}
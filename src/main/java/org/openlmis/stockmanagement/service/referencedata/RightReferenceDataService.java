@@ -42,7 +42,8 @@ public class RightReferenceDataService extends BaseReferenceDataService<RightDto
   }
 
   /**
-   * Find a correct right by the provided name.
+   * Find a correct right by the provided name. The search is cached like any other search of
+   * rights, so it is not cached again by name.
    *
    * @param name right name
    * @return right related with the name or {@code null}.
@@ -29,6 +29,11 @@ import java.util.UUID;
 @Service
 public class UserReferenceDataService extends BaseReferenceDataService<UserDto> {
 
+  /**
+   * Name of the cache of permission decisions, keys of the cache start with the user id.
+   */
+  public static final String PERMISSION_CACHE = "permission";
+
   @Override
   protected String getUrl() {
     return "/api/users/";
@@ -55,10 +60,12 @@ public class UserReferenceDataService extends BaseReferenceDataService<UserDto>
    * @return UserDto containing user's data, or null if such user was not found.
    */
   public UserDto findUser(String name) {
-    Map<String, Object> payload = Collections.singletonMap("username", name);
+    return getCachedCopy("username:" + name, UserDto.class, () -> {
+      Map<String, Object> payload = Collections.singletonMap("username", name);
 
-    Page<UserDto> users = getPage("search", Collections.emptyMap(), payload);
-    return users.getContent().isEmpty() ? null : users.getContent().get(0);
+      Page<UserDto> users = getPage("search", Collections.emptyMap(), payload);
+      return users.getContent().isEmpty() ? null : users.getContent().get(0);
+    });
   }
 
   /**
@@ -68,10 +75,18 @@ public class UserReferenceDataService extends BaseReferenceDataService<UserDto>
    * @param right    right to check
    * @param program  program to check (for supervision rights, can be {@code null})
    * @param facility facility to check (for supervision rights, can be {@code null})
-   * @return {@link ResultDto} of true or false depending on if user has the right.
+   * @return {@link ResultDto} of true or false depending on if user has the right. Decisions are
+   *     cached, see {@link #PERMISSION_CACHE}.
    */
   public ResultDto<Boolean> hasRight(UUID user, UUID right, UUID program, UUID facility,
                                      UUID warehouse) {
+    String key = user + "/" + right + "/" + program + "/" + facility + "/" + warehouse;
+    return getCached(PERMISSION_CACHE, key,
+        () -> retrieveRight(user, right, program, facility, warehouse));
+  }
+
+  private ResultDto<Boolean> retrieveRight(UUID user, UUID right, UUID program, UUID facility,
+                                           UUID warehouse) {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("rightId", right);
 
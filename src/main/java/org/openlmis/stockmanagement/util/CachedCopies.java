@@ -0,0 +1,66 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+
+/**
+ * Values kept in caches are stored serialized to JSON, so that every read deserializes a new deep
+ * copy and nobody can modify the cached value.
+ */
+public final class CachedCopies {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+  private CachedCopies() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Serialize value to be cached.
+   *
+   * @param value value to be cached, may be null.
+   * @return the serialized value, or null if the value is null.
+   */
+  public static byte[] serialize(Object value) {
+    try {
+      return null == value ? null : MAPPER.writeValueAsBytes(value);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Unable to serialize cached value", ex);
+    }
+  }
+
+  /**
+   * Deserialize a new copy of a cached value.
+   *
+   * @param json serialized value.
+   * @param type type of the value.
+   * @return a new copy of the value.
+   */
+  public static <V> V deserialize(byte[] json, Class<V> type) {
+    try {
+      return MAPPER.readValue(json, type);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Unable to deserialize cached value", ex);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+/**
+ * Resources of {@link StockEventProcessContext} which stock event validators declare as their
+ * dependencies. Resources retrieved from the reference data service are prefetched concurrently,
+ * resources stored in the database have to be loaded in the thread and transaction of the request.
+ * Stock cards of the event are loaded together with their line items only if some validator
+ * declares {@link #STOCK_CARD_LINE_ITEMS}, otherwise line items are loaded lazily when read.
+ */
+public enum ContextResource {
+  PROGRAM(false),
+  FACILITY(false),
+  APPROVED_PRODUCTS(false),
+  LOTS(false),
+  ORDERABLES(false),
+  SOURCES(true),
+  DESTINATIONS(true),
+  EVENT_REASONS(true),
+  STOCK_CARDS(true),
+  STOCK_CARD_LINE_ITEMS(true);
+
+  private final boolean storedInDatabase;
+
+  ContextResource(boolean storedInDatabase) {
+    this.storedInDatabase = storedInDatabase;
+  }
+
+  public boolean isStoredInDatabase() {
+    return storedInDatabase;
+  }
+}
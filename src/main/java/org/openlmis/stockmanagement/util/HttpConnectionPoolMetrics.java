@@ -0,0 +1,72 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Exposes usage of the pool of HTTP connections to other services as JMX attributes.
+ */
+@ManagedResource(description = "Pool of HTTP connections to other services")
+public class HttpConnectionPoolMetrics {
+  private final PoolingHttpClientConnectionManager connectionManager;
+
+  public HttpConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+    this.connectionManager = connectionManager;
+  }
+
+  @ManagedAttribute(description = "Number of connections currently used by requests")
+  public int getLeased() {
+    return connectionManager.getTotalStats().getLeased();
+  }
+
+  @ManagedAttribute(description = "Number of idle connections kept alive in the pool")
+  public int getAvailable() {
+    return connectionManager.getTotalStats().getAvailable();
+  }
+
+  @ManagedAttribute(description = "Number of requests waiting for a connection")
+  public int getPending() {
+    return connectionManager.getTotalStats().getPending();
+  }
+
+  @ManagedAttribute(description = "Maximum number of connections in the pool")
+  public int getMax() {
+    return connectionManager.getTotalStats().getMax();
+  }
+
+  /**
+   * Usage of connections per route, in form of "route: leased/available/pending/max".
+   *
+   * @return usage of each route the pool has connections to.
+   */
+  @ManagedAttribute(description = "Usage of connections per route")
+  public String[] getRoutes() {
+    return connectionManager.getRoutes().stream()
+        .map(this::describe)
+        .toArray(String[]::new);
+  }
+
+  private String describe(HttpRoute route) {
+    PoolStats stats = connectionManager.getStats(route);
+    return route.getTargetHost().toURI() + ": " + stats.getLeased() + "/" + stats.getAvailable()
+        + "/" + stats.getPending() + "/" + stats.getMax();
+  }
+}
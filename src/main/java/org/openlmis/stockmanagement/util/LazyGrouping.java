@@ -40,9 +40,10 @@ public class LazyGrouping<K, V> implements Supplier<Map<K, V>> {
 
   /**
    * Retrieve grouped data. At the first time data will be retrieved from the lazy list and then
-   * grouped. Next executions should not retrieved data.
+   * grouped. Next executions should not retrieved data. If more elements have the same key, the
+   * first one is kept.
    */
-  public Map<K, V> get() {
+  public synchronized Map<K, V> get() {
     if (null != grouped) {
       return grouped;
     }
@@ -51,7 +52,7 @@ public class LazyGrouping<K, V> implements Supplier<Map<K, V>> {
         .get()
         .stream()
         .filter(Objects::nonNull)
-        .collect(Collectors.toMap(grouping, element -> element));
+        .collect(Collectors.toMap(grouping, element -> element, (first, second) -> first));
 
     return grouped;
   }
@@ -60,7 +61,7 @@ public class LazyGrouping<K, V> implements Supplier<Map<K, V>> {
    * Refresh current grouped data. Data will be loaded one more time from the lazy list and grouped
    * by grouping function.
    */
-  void refresh() {
+  synchronized void refresh() {
     grouped = null;
     collection.refresh();
   }
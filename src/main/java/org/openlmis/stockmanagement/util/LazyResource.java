@@ -30,7 +30,7 @@ public class LazyResource<T> implements Supplier<T> {
    * Retrieve resource. At the first time resource will be retrieved from a source. Next executions
    * should not retrieved resource.
    */
-  public T get() {
+  public synchronized T get() {
     if (retrieved) {
       return resource;
     }
@@ -44,7 +44,7 @@ public class LazyResource<T> implements Supplier<T> {
   /**
    * Refresh current resource. Data will be loaded one more time.
    */
-  void refresh() {
+  synchronized void refresh() {
     resource = null;
     retrieved = false;
   }
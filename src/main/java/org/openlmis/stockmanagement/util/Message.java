@@ -104,6 +104,10 @@ public class Message {
       this.message = message;
     }
 
+    public String getMessageKey() {
+      return messageKey;
+    }
+
     public String getMessage() {
       return message;
     }
@@ -0,0 +1,142 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Keeps track of replication lag of database replicas. Replicas which lag behind the primary
+ * more than allowed, or which can not be reached, are not used until a later check finds them
+ * caught up again.
+ */
+@ManagedResource(description = "Replication lag of database replicas")
+public class ReplicaLagMonitor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+  //a replica which replayed everything it received is not lagging, even if the primary is idle
+  static final String LAG_QUERY = "SELECT CASE"
+      + " WHEN NOT pg_is_in_recovery() THEN 0"
+      + " WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0"
+      + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())"
+      + " END";
+
+  private final Map<String, DataSource> replicas;
+  private final long maxLag;
+
+  private final Map<String, Double> lags = new ConcurrentHashMap<>();
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private volatile List<String> healthyReplicas = emptyList();
+
+  /**
+   * Creates monitor of given replicas.
+   *
+   * @param replicas replicas keyed by their names.
+   * @param maxLag   maximum lag in seconds of replicas which can be used.
+   */
+  public ReplicaLagMonitor(Map<String, DataSource> replicas, long maxLag) {
+    this.replicas = new LinkedHashMap<>(replicas);
+    this.maxLag = maxLag;
+  }
+
+  public Map<String, DataSource> getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * Check lag of every replica and update which of them can be used.
+   */
+  @Scheduled(fixedDelayString = "${replica.lagCheckInterval:5000}")
+  public void checkReplicas() {
+    List<String> healthy = new ArrayList<>();
+
+    replicas.forEach((name, replica) -> {
+      Double lag = findLag(name, replica);
+      if (lag == null) {
+        lags.remove(name);
+      } else {
+        lags.put(name, lag);
+      }
+
+      boolean wasHealthy = healthyReplicas.contains(name);
+      if (lag != null && lag <= maxLag) {
+        healthy.add(name);
+        if (!wasHealthy) {
+          LOGGER.info("Replica {} is used for read-only transactions, lag: {}s", name, lag);
+        }
+      } else if (wasHealthy) {
+        LOGGER.warn("Replica {} is not used for read-only transactions, lag: {}s", name, lag);
+      }
+    });
+
+    healthyReplicas = unmodifiableList(healthy);
+  }
+
+  /**
+   * Get name of the next replica which can be used, replicas are used in turns.
+   *
+   * @return replica name, or null if no replica can be used.
+   */
+  public String nextHealthyReplica() {
+    List<String> healthy = healthyReplicas;
+    if (healthy.isEmpty()) {
+      return null;
+    }
+    return healthy.get(Math.floorMod(nextReplica.getAndIncrement(), healthy.size()));
+  }
+
+  @ManagedAttribute(description = "Number of replicas used for read-only transactions")
+  public int getHealthy() {
+    return healthyReplicas.size();
+  }
+
+  /**
+   * Lag of replicas, in form of "replica: lag in seconds".
+   *
+   * @return lag of each replica, unknown for replicas which could not be reached.
+   */
+  @ManagedAttribute(description = "Replication lag of replicas in seconds")
+  public String[] getLags() {
+    return replicas.keySet().stream()
+        .map(name -> name + ": " + (lags.containsKey(name) ? lags.get(name) : "unknown"))
+        .toArray(String[]::new);
+  }
+
+  private Double findLag(String name, DataSource replica) {
+    try {
+      return new JdbcTemplate(replica).queryForObject(LAG_QUERY, Double.class);
+    } catch (DataAccessException ex) {
+      LOGGER.warn("Could not check lag of replica " + name, ex);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import javax.sql.DataSource;
+
+/**
+ * Data source which gets connections from a replica that is not lagging behind, or from the
+ * primary if there is no such replica. When only read-only transactions are routed, everything
+ * else goes to the primary.
+ *
+ * <p>Transaction managers get connection before the transaction is marked as read-only, so when
+ * routing read-only transactions this data source needs to be wrapped in
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+  private final ReplicaLagMonitor monitor;
+  private final boolean readOnlyTransactionsOnly;
+
+  /**
+   * Creates data source routing to given primary and replicas of given monitor.
+   *
+   * @param primary                  primary data source.
+   * @param monitor                  monitor of replicas.
+   * @param readOnlyTransactionsOnly whether only read-only transactions are routed to replicas.
+   */
+  public ReplicaRoutingDataSource(DataSource primary, ReplicaLagMonitor monitor,
+                                  boolean readOnlyTransactionsOnly) {
+    this.monitor = monitor;
+    this.readOnlyTransactionsOnly = readOnlyTransactionsOnly;
+    setDefaultTargetDataSource(primary);
+    setTargetDataSources(new HashMap<>(monitor.getReplicas()));
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (readOnlyTransactionsOnly
+        && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return null;
+    }
+    //no key means the primary
+    return monitor.nextHealthyReplica();
+  }
+}
@@ -18,6 +18,7 @@ package org.openlmis.stockmanagement.util;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidDestinationAssignment;
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidSourceAssignment;
@@ -29,14 +30,14 @@ import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import lombok.Setter;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.UUID;
 
 /**
  * Before processing a stock event, one instance of this class will be created to hold all things
  * needed from ref-data service. By doing this, all network traffic is concentrated in one place,
  * not scattered around in different places. All resources use lazy loading so they are retrieved
- * only when there is a need.
+ * only when there is a need. Resources which are looked up for each line item are grouped by id,
+ * so that validators do not scan them again for every line item.
  */
 @Setter
 public class StockEventProcessContext {
@@ -45,10 +46,14 @@ public class StockEventProcessContext {
   private LazyResource<FacilityDto> facility;
 
   private LazyList<OrderableDto> allApprovedProducts;
-  private LazyList<ValidSourceAssignment> sources;
-  private LazyList<ValidDestinationAssignment> destinations;
+
+  private LazyGrouping<UUID, OrderableDto> approvedProducts;
+  private LazyGrouping<UUID, ValidSourceAssignment> sources;
+  private LazyGrouping<UUID, ValidDestinationAssignment> destinations;
+  private LazyGrouping<UUID, ValidReasonAssignment> validReasons;
 
   private LazyGrouping<UUID, LotDto> lots;
+  private LazyGrouping<UUID, OrderableDto> orderables;
   private LazyGrouping<UUID, StockCardLineItemReason> cardReasons;
   private LazyGrouping<UUID, StockCardLineItemReason> eventReasons;
   private LazyGrouping<UUID, Node> nodes;
@@ -71,22 +76,44 @@ public class StockEventProcessContext {
     return null == facilityDto ? null : facilityDto.getType().getId();
   }
 
+  /**
+   * Set approved products, they are also grouped by id when they are looked up by id.
+   *
+   * @param allApprovedProducts lazy list of approved products.
+   */
+  public void setAllApprovedProducts(LazyList<OrderableDto> allApprovedProducts) {
+    this.allApprovedProducts = allApprovedProducts;
+    this.approvedProducts = new LazyGrouping<>(allApprovedProducts, OrderableDto::getId);
+  }
+
   public Collection<OrderableDto> getAllApprovedProducts() {
     return allApprovedProducts.get();
   }
 
-  public List<ValidSourceAssignment> getSources() {
-    return sources.get();
+  public OrderableDto findApprovedProduct(UUID orderableId) {
+    return approvedProducts.get().get(orderableId);
+  }
+
+  public ValidSourceAssignment findSource(UUID nodeId) {
+    return sources.get().get(nodeId);
+  }
+
+  public ValidDestinationAssignment findDestination(UUID nodeId) {
+    return destinations.get().get(nodeId);
   }
 
-  public List<ValidDestinationAssignment> getDestinations() {
-    return destinations.get();
+  public ValidReasonAssignment findValidReason(UUID reasonId) {
+    return validReasons.get().get(reasonId);
   }
 
   public LotDto findLot(UUID lotId) {
     return lots.get().get(lotId);
   }
 
+  public OrderableDto findOrderable(UUID orderableId) {
+    return orderables.get().get(orderableId);
+  }
+
   public StockCardLineItemReason findEventReason(UUID reasonId) {
     return eventReasons.get().get(reasonId);
   }
@@ -103,6 +130,65 @@ public class StockEventProcessContext {
     return cards.get().get(identity);
   }
 
+  /**
+   * Retrieve the given resource now, instead of when it is needed for the first time. Resources
+   * are grouped as well, so validators running concurrently only read them afterwards.
+   *
+   * @param resource resource to retrieve.
+   */
+  public void prefetch(ContextResource resource) {
+    switch (resource) {
+      case PROGRAM:
+        program.get();
+        break;
+      case FACILITY:
+        facility.get();
+        break;
+      case APPROVED_PRODUCTS:
+        approvedProducts.get();
+        break;
+      case LOTS:
+        lots.get();
+        break;
+      case ORDERABLES:
+        orderables.get();
+        break;
+      case SOURCES:
+        sources.get();
+        break;
+      case DESTINATIONS:
+        destinations.get();
+        break;
+      case EVENT_REASONS:
+        eventReasons.get();
+        break;
+      case STOCK_CARDS:
+      case STOCK_CARD_LINE_ITEMS:
+        cards.get();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown context resource: " + resource);
+    }
+  }
+
+  /**
+   * Reuse resources which depend only on the program, the facility and the current user from the
+   * context of another event of the same program and facility, so that they are retrieved once
+   * for a batch of events.
+   *
+   * @param other context of another event of the same program and facility.
+   */
+  public void shareProgramAndFacilityResources(StockEventProcessContext other) {
+    currentUserId = other.currentUserId;
+    program = other.program;
+    facility = other.facility;
+    allApprovedProducts = other.allApprovedProducts;
+    approvedProducts = other.approvedProducts;
+    sources = other.sources;
+    destinations = other.destinations;
+    validReasons = other.validReasons;
+  }
+
   public void refreshCards() {
     cards.refresh();
   }
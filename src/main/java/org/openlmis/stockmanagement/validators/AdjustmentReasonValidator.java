@@ -17,14 +17,19 @@ package org.openlmis.stockmanagement.validators;
 
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_ADJUSTMENT_REASON_CATEGORY_INVALID;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_ADJUSTMENT_REASON_TYPE_INVALID;
+import static org.openlmis.stockmanagement.util.ContextResource.EVENT_REASONS;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * An adjustment should have a reason that is either DEBIT or CREDIT.
  * And it should have a reason category that is ADJUSTMENT
@@ -47,6 +52,16 @@ public class AdjustmentReasonValidator implements StockEventValidator {
     }
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(EVENT_REASONS);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
   private void validateReason(StockEventDto event, StockEventLineItem lineItem) {
     StockCardLineItemReason foundReason = event
         .getContext()
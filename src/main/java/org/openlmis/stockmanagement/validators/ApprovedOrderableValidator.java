@@ -18,18 +18,22 @@ package org.openlmis.stockmanagement.validators;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.collections.CollectionUtils.isEmpty;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_ORDERABLE_NOT_IN_APPROVED_LIST;
+import static org.openlmis.stockmanagement.util.ContextResource.APPROVED_PRODUCTS;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -57,8 +61,7 @@ public class ApprovedOrderableValidator implements StockEventValidator {
       return;
     }
 
-    List<UUID> nonApprovedIds =
-        findNonApprovedIds(stockEventDto, stockEventDto.getContext().getAllApprovedProducts());
+    List<UUID> nonApprovedIds = findNonApprovedIds(stockEventDto);
 
     if (!isEmpty(nonApprovedIds)) {
       List<OrderableDto> orderables = orderableReferenceDataService.findByIds(nonApprovedIds);
@@ -72,15 +75,22 @@ public class ApprovedOrderableValidator implements StockEventValidator {
     }
   }
 
-  private List<UUID> findNonApprovedIds(StockEventDto stockEventDto,
-                                        Collection<OrderableDto> approvedProductDtos) {
-    List<UUID> approvedIds = approvedProductDtos.stream()
-        .map(OrderableDto::getId)
-        .collect(toList());
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(APPROVED_PRODUCTS);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
+  private List<UUID> findNonApprovedIds(StockEventDto stockEventDto) {
+    StockEventProcessContext context = stockEventDto.getContext();
 
     return stockEventDto.getLineItems().stream()
         .map(StockEventLineItem::getOrderableId)
-        .filter(id -> !approvedIds.contains(id))
+        .filter(id -> null == context.findApprovedProduct(id))
         .collect(toList());
   }
 }
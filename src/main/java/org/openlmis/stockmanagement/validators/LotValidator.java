@@ -18,16 +18,20 @@ package org.openlmis.stockmanagement.validators;
 import static java.util.UUID.fromString;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_LOT_NOT_EXIST;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_LOT_ORDERABLE_NOT_MATCH;
+import static org.openlmis.stockmanagement.util.ContextResource.APPROVED_PRODUCTS;
+import static org.openlmis.stockmanagement.util.ContextResource.LOTS;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * This validator makes sure all lot ids included in stock event do exist in reference data.
@@ -52,15 +56,23 @@ public class LotValidator implements StockEventValidator {
     });
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(LOTS, APPROVED_PRODUCTS);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
   private void checkLotOrderableMatches(StockEventDto stockEventDto,
                                         StockEventLineItem lineItem, LotDto lotDto) {
-    Optional<OrderableDto> foundOrderableDto = stockEventDto.getContext()
-        .getAllApprovedProducts().stream()
-        .filter(orderableDto -> orderableDto.getId().equals(lineItem.getOrderableId()))
-        .findFirst();
+    OrderableDto foundOrderableDto = stockEventDto.getContext()
+        .findApprovedProduct(lineItem.getOrderableId());
 
-    if (foundOrderableDto.isPresent()) {
-      String tradeItemId = foundOrderableDto.get().getIdentifiers().get("tradeItem");
+    if (null != foundOrderableDto) {
+      String tradeItemId = foundOrderableDto.getIdentifiers().get("tradeItem");
       if (tradeItemId == null || !lotDto.getTradeItemId().equals(fromString(tradeItemId))) {
         throw new ValidationMessageException(
             new Message(ERROR_EVENT_LOT_ORDERABLE_NOT_MATCH,
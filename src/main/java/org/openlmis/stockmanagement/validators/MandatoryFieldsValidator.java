@@ -24,15 +24,20 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_OCCURRED
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_ORDERABLE_INVALID;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_PROGRAM_INVALID;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_QUANTITY_INVALID;
+import static org.openlmis.stockmanagement.util.ContextResource.FACILITY;
+import static org.openlmis.stockmanagement.util.ContextResource.PROGRAM;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This validator makes sure all must have fields are present.
@@ -49,6 +54,11 @@ public class MandatoryFieldsValidator implements StockEventValidator {
     validateQuantity(stockEventDto);
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(PROGRAM, FACILITY);
+  }
+
   private void validateFacilityProgramAndOrderables(StockEventDto dto) {
     if (dto.getContext().getFacility() == null) {
       throw new ValidationMessageException(
@@ -19,19 +19,20 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_FACILITY
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_DISCREPANCY_QUANTITY_NOT_PROVIDED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_DISCREPANCY_REASON_NOT_PROVIDED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_DISCREPANCY_REASON_NOT_VALID;
+import static org.openlmis.stockmanagement.util.ContextResource.FACILITY;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.physicalinventory.StockAdjustment;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
-import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -42,9 +43,6 @@ import java.util.UUID;
 @Component(value = "PhysicalInventoryAdjustmentReasonsValidator")
 public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventValidator {
 
-  @Autowired
-  private ValidReasonAssignmentRepository validReasonRepository;
-
   @Override
   public void validate(StockEventDto stockEventDto) {
 
@@ -55,6 +53,11 @@ public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventVa
     }
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(FACILITY);
+  }
+
   private void validateAdjustments(StockEventDto event, StockEventLineItem line) {
     List<StockAdjustment> stockAdjustments = line.getStockAdjustments();
 
@@ -82,7 +85,7 @@ public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventVa
     UUID reasonId = reason.getId();
 
     UUID programId = event.getProgramId();
-    if (!isReasonValid(programId, facilityType, reasonId)) {
+    if (null == event.getContext().findValidReason(reasonId)) {
       throwException(programId, facilityType, reasonId);
     }
   }
@@ -98,13 +101,6 @@ public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventVa
     return typeId;
   }
 
-  private boolean isReasonValid(UUID programId, UUID facilityTypeId, UUID reasonId) {
-    ValidReasonAssignment validReason =
-        validReasonRepository.findByProgramIdAndFacilityTypeIdAndReasonId(
-            programId, facilityTypeId, reasonId);
-    return validReason != null;
-  }
-
   private void throwException(UUID programId, UUID facilityTypeId, UUID reasonId) {
     throw new ValidationMessageException(
         new Message(ERROR_PHYSICAL_INVENTORY_DISCREPANCY_REASON_NOT_VALID,
@@ -15,40 +15,57 @@
 
 package org.openlmis.stockmanagement.validators;
 
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.groupingBy;
+import static org.openlmis.stockmanagement.util.ContextResource.STOCK_CARDS;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_ADJUSTMENT_QUANITITY_INVALID;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_STOCK_ADJUSTMENTS_NOT_PROVIDED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_STOCK_ON_HAND_CURRENT_STOCK_DIFFER;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
+import org.openlmis.stockmanagement.domain.card.StockCardLedger;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.physicalinventory.StockAdjustment;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.service.StockCardCheckpointService;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 1 This validator makes sure stock on hand does NOT go below zero for any stock card. 2 This
  * validator also makes sure soh does not be over upper limit of integer. It does so by
  * re-calculating soh of each orderable/lot combo. The re-calculation does not apply to physical
- * inventory. This has a negative impact on performance. The impact grows larger as stock card line
- * items accumulates over time. Because re-calculation requires reading stock card line items from
- * DB.
+ * inventory. Line items of the event are calculated on top of persisted stock on hand of the card.
+ * When any of them is backdated, only line items after the nearest stock card checkpoint before
+ * them are read from DB and re-calculated. Only a card without persisted stock on hand has to be
+ * re-calculated as a whole. Calculation runs against a read-only ledger of line items, so no stock
+ * card entity is modified.
  */
 @Component(value = "QuantityValidator")
 public class QuantityValidator implements StockEventValidator {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(QuantityValidator.class);
 
+  @Autowired
+  private StockCardCheckpointService checkpointService;
+
   @Override
   public void validate(StockEventDto stockEventDto) {
     LOGGER.debug("Validate quantity");
@@ -67,33 +84,85 @@ public class QuantityValidator implements StockEventValidator {
     }
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    // line items are only read from cards without persisted stock on hand, they are loaded lazily
+    return EnumSet.of(STOCK_CARDS);
+  }
+
   private void validateEventItems(StockEventDto event, List<StockEventLineItem> items) {
-    StockCard foundCard = tryFindCard(event, items.get(0));
+    StockCard foundCard = event.getContext()
+        .findCard(OrderableLotIdentity.identityOf(items.get(0)));
+
+    // line items of the event are added to a pending card, so the found card is never modified
+    StockCard pendingCard = new StockCard();
+    pendingCard.setLineItems(new ArrayList<>());
+    addLineItems(event, items, pendingCard);
 
-    if (event.isPhysicalInventory()) {
-      validateQuantities(items, foundCard.getStockOnHand());
+    if (canCalculateFromStockOnHand(foundCard, items)) {
+      if (event.isPhysicalInventory()) {
+        validateQuantities(items, foundCard.getStockOnHand());
+      }
+
+      // none of event line items is backdated, so only they have to be recalculated, starting
+      // from persisted stock on hand of the found card
+      StockCardLedger.of(pendingCard.getLineItems())
+          .calculateStockOnHand(foundCard.getStockOnHand());
+      return;
     }
 
-    // create line item from event line item and add it to stock card for recalculation
-    calculateStockOnHand(event, items, foundCard);
-  }
+    if (canCalculateFromCheckpoint(foundCard, items)) {
+      if (event.isPhysicalInventory()) {
+        validateQuantities(items, foundCard.getStockOnHand());
+      }
 
-  private StockCard tryFindCard(StockEventDto event, StockEventLineItem lineItem) {
-    StockCard foundCard = event.getContext().findCard(OrderableLotIdentity.identityOf(lineItem));
+      // backdated line items are recalculated together with the line items following the
+      // nearest checkpoint before them, the line items before it are not read
+      LocalDate earliestDate = items.stream()
+          .map(StockEventLineItem::getOccurredDate)
+          .min(Comparator.naturalOrder())
+          .get();
+      StockCardCheckpoint checkpoint = checkpointService
+          .findCheckpointBefore(foundCard.getId(), earliestDate, ZonedDateTime.now());
+
+      List<StockCardLineItem> windowItems =
+          new ArrayList<>(checkpointService.findLineItemsAfter(checkpoint));
+      windowItems.addAll(pendingCard.getLineItems());
+      StockCardLedger.of(windowItems).calculateStockOnHand(checkpoint.getStockOnHand());
+      return;
+    }
 
-    if (foundCard == null) {
-      StockCard emptyCard = new StockCard();
-      emptyCard.setLineItems(new ArrayList<>());
+    List<StockCardLineItem> existingItems = null == foundCard
+        ? emptyList()
+        : foundCard.getLineItems();
 
-      return emptyCard;
-    } else {
-      //use a shallow copy of stock card to do recalculation, because some domain model will be
-      //modified during recalculation, this will avoid persistence of those modified models
-      StockCard stockCard = foundCard.shallowCopy();
-      stockCard.calculateStockOnHand();
+    if (event.isPhysicalInventory() && null != foundCard) {
+      validateQuantities(items, StockCardLedger.of(existingItems).calculateStockOnHand());
+    }
+
+    // replay existing line items together with the new ones, without copying any of them
+    List<StockCardLineItem> allItems = new ArrayList<>(existingItems);
+    allItems.addAll(pendingCard.getLineItems());
+    StockCardLedger.of(allItems).calculateStockOnHand();
+  }
 
-      return stockCard;
+  private boolean canCalculateFromStockOnHand(StockCard foundCard,
+                                              List<StockEventLineItem> items) {
+    if (foundCard == null || foundCard.getStockOnHand() == null) {
+      return false;
     }
+
+    LocalDate latestOccurredDate = foundCard.latestOccurredDate();
+
+    return latestOccurredDate == null || items.stream()
+        .noneMatch(item -> item.getOccurredDate() == null
+            || item.getOccurredDate().isBefore(latestOccurredDate));
+  }
+
+  private boolean canCalculateFromCheckpoint(StockCard foundCard,
+                                             List<StockEventLineItem> items) {
+    return foundCard != null && foundCard.getId() != null && foundCard.getStockOnHand() != null
+        && items.stream().allMatch(item -> item.getOccurredDate() != null);
   }
 
   private void validateQuantities(List<StockEventLineItem> items, Integer stockOnHand) {
@@ -148,15 +217,13 @@ public class QuantityValidator implements StockEventValidator {
     }
   }
 
-  private void calculateStockOnHand(StockEventDto eventDto, List<StockEventLineItem> group,
-                                    StockCard foundCard) {
+  private void addLineItems(StockEventDto eventDto, List<StockEventLineItem> group,
+                            StockCard foundCard) {
     for (StockEventLineItem lineItem : group) {
       StockCardLineItem stockCardLineItem = StockCardLineItem
           .createLineItemFrom(eventDto, lineItem, foundCard, null);
       stockCardLineItem.setReason(eventDto.getContext().findEventReason(lineItem.getReasonId()));
     }
-
-    foundCard.calculateStockOnHand();
   }
 
   private void debugAdjustments(List<StockAdjustment> adjustments) {
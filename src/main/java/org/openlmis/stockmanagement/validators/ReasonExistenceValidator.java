@@ -16,13 +16,17 @@
 package org.openlmis.stockmanagement.validators;
 
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_REASON_NOT_EXIST;
+import static org.openlmis.stockmanagement.util.ContextResource.EVENT_REASONS;
 
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.UUID;
 
 @Component(value = "ReasonExistenceValidator")
@@ -48,4 +52,14 @@ public class ReasonExistenceValidator implements StockEventValidator {
     }
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(EVENT_REASONS);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
 }
@@ -18,16 +18,20 @@ package org.openlmis.stockmanagement.validators;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_DESTINATION_NOT_IN_VALID_LIST;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SOURCE_DESTINATION_BOTH_PRESENT;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SOURCE_NOT_IN_VALID_LIST;
+import static org.openlmis.stockmanagement.util.ContextResource.DESTINATIONS;
+import static org.openlmis.stockmanagement.util.ContextResource.FACILITY;
+import static org.openlmis.stockmanagement.util.ContextResource.SOURCES;
 
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
-import org.openlmis.stockmanagement.domain.sourcedestination.SourceDestinationAssignment;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.openlmis.stockmanagement.util.Message;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -61,6 +65,16 @@ public class SourceDestinationAssignmentValidator implements StockEventValidator
     }
   }
 
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(FACILITY, SOURCES, DESTINATIONS);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
   private void checkIsValidAssignment(StockEventDto eventDto, StockEventLineItem eventLineItem) {
     if (eventLineItem.hasSourceId()) {
       checkSourceAssignment(eventDto.getContext(), eventLineItem);
@@ -80,7 +94,7 @@ public class SourceDestinationAssignmentValidator implements StockEventValidator
 
   private void checkSourceAssignment(StockEventProcessContext context,
                                      StockEventLineItem eventLineItem) {
-    boolean isInValidList = checkAssignment(context.getSources(), eventLineItem.getSourceId());
+    boolean isInValidList = null != context.findSource(eventLineItem.getSourceId());
 
     if (!isInValidList) {
       throwError(ERROR_SOURCE_NOT_IN_VALID_LIST, eventLineItem.getSourceId());
@@ -89,23 +103,13 @@ public class SourceDestinationAssignmentValidator implements StockEventValidator
 
   private void checkDestinationAssignment(StockEventProcessContext context,
                                           StockEventLineItem eventLineItem) {
-    boolean isInValidList = checkAssignment(
-        context.getDestinations(), eventLineItem.getDestinationId()
-    );
+    boolean isInValidList = null != context.findDestination(eventLineItem.getDestinationId());
 
     if (!isInValidList) {
       throwError(ERROR_DESTINATION_NOT_IN_VALID_LIST, eventLineItem.getDestinationId());
     }
   }
 
-  private boolean checkAssignment(List<? extends SourceDestinationAssignment> assignments,
-                                  UUID nodeId) {
-    return assignments
-        .stream()
-        .anyMatch(assignment -> assignment.getNode().getId().equals(nodeId));
-  }
-
-
   private void throwError(String key, Object... params) {
     throw new ValidationMessageException(new Message(key, params));
   }
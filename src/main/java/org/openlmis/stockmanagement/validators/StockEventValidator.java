@@ -16,10 +16,14 @@
 package org.openlmis.stockmanagement.validators;
 
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * All implementations of this interface is supposed to be independent. Meaning that it should not
  * assume any specific execution order.
@@ -31,4 +35,25 @@ public interface StockEventValidator {
   Logger LOGGER = LoggerFactory.getLogger(StockEventValidator.class);
 
   void validate(StockEventDto stockEventDto);
+
+  /**
+   * Resources of the event context that this validator uses. They are prefetched before
+   * validators run.
+   *
+   * @return resources used by this validator.
+   */
+  default Set<ContextResource> getContextDependencies() {
+    return EnumSet.noneOf(ContextResource.class);
+  }
+
+  /**
+   * Whether this validator may run in another thread, concurrently with other validators. It is
+   * only allowed if the validator reads nothing but its declared context dependencies and calls
+   * no repositories, because the database session is bound to the thread of the request.
+   *
+   * @return true if this validator can run concurrently, false otherwise.
+   */
+  default boolean isConcurrent() {
+    return false;
+  }
 }
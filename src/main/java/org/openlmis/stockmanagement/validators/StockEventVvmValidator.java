@@ -16,11 +16,16 @@
 package org.openlmis.stockmanagement.validators;
 
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_EVENT_ORDERABLE_DISABLED_VVM;
+import static org.openlmis.stockmanagement.util.ContextResource.ORDERABLES;
 
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.util.ContextResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * This validator ensures that stock event line items for orderables
  * with disabled VVM usage do not specify VVM Status.
@@ -35,8 +40,20 @@ public class StockEventVvmValidator implements StockEventValidator {
   public void validate(StockEventDto stockEventDto) {
     // we set ignoreMissingOrderable parameter on true
     // because this case is handled by another validator
+    //orderables of the event are retrieved with the event context
     vvmValidator.validate(
-        stockEventDto.getLineItems(), ERROR_STOCK_EVENT_ORDERABLE_DISABLED_VVM, true
+        stockEventDto.getLineItems(), stockEventDto.getContext()::findOrderable,
+        ERROR_STOCK_EVENT_ORDERABLE_DISABLED_VVM, true
     );
   }
+
+  @Override
+  public Set<ContextResource> getContextDependencies() {
+    return EnumSet.of(ORDERABLES);
+  }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
 }
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -62,8 +63,24 @@ public class VvmValidator {
         .stream()
         .collect(Collectors.toMap(OrderableDto::getId, orderable -> orderable));
 
+    validate(vvmApplicables, groupById::get, messageKey, ignoreMissingOrderable);
+  }
+
+  /**
+   * Validates whether the vvm applicables have proper vvm status (if applicable), with orderables
+   * which have already been retrieved.
+   * Throws ValidationMessageException if any of items is in invalid state.
+   *
+   * @param vvmApplicables list of items to test
+   * @param orderables function which finds orderable by id
+   * @param messageKey error message key for exception
+   * @param ignoreMissingOrderable whether should
+   */
+  public void validate(List<? extends VvmApplicable> vvmApplicables,
+                       Function<UUID, OrderableDto> orderables, String messageKey,
+                       boolean ignoreMissingOrderable) {
     for (VvmApplicable item : vvmApplicables) {
-      OrderableDto orderable = groupById.get(item.getOrderableId());
+      OrderableDto orderable = orderables.apply(item.getOrderableId());
 
       if (null == orderable) {
         if (ignoreMissingOrderable) {
@@ -0,0 +1,106 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_REFERENCE_DATA_CACHE_NOT_FOUND;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+import org.openlmis.stockmanagement.dto.ReferenceDataCacheDto;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.referencedata.ReferenceDataCache;
+import org.openlmis.stockmanagement.service.referencedata.UserReferenceDataService;
+import org.openlmis.stockmanagement.util.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Controller used by administrators to inspect and evict caches of reference data.
+ */
+@RestController
+@RequestMapping("/api/referenceDataCaches")
+public class ReferenceDataCacheController {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceDataCacheController.class);
+
+  @Autowired
+  private PermissionService permissionService;
+
+  @Autowired
+  private ReferenceDataCache referenceDataCache;
+
+  /**
+   * Get settings and hit/miss statistics of reference data caches.
+   *
+   * @return a list of cache statistics.
+   */
+  @RequestMapping(method = GET)
+  public List<ReferenceDataCacheDto> getCaches() {
+    permissionService.canManageSystemSettings();
+    return referenceDataCache.getStatistics();
+  }
+
+  /**
+   * Evict all reference data caches.
+   */
+  @RequestMapping(method = DELETE)
+  @ResponseStatus(NO_CONTENT)
+  public void evictCaches() {
+    LOGGER.debug("Try to evict all reference data caches");
+    permissionService.canManageSystemSettings();
+    referenceDataCache.evictAll();
+  }
+
+  /**
+   * Evict cache of one reference data type.
+   *
+   * @param name name of the reference data type, for example "program".
+   */
+  @RequestMapping(value = "/{name}", method = DELETE)
+  @ResponseStatus(NO_CONTENT)
+  public void evictCache(@PathVariable("name") String name) {
+    LOGGER.debug("Try to evict reference data cache: {}", name);
+    permissionService.canManageSystemSettings();
+
+    if (!referenceDataCache.evict(name)) {
+      throw new ResourceNotFoundException(new Message(ERROR_REFERENCE_DATA_CACHE_NOT_FOUND, name));
+    }
+  }
+
+  /**
+   * Evict cached permission decisions of one user, for example after role assignments of the
+   * user have changed.
+   *
+   * @param userId id of the user.
+   */
+  @RequestMapping(value = "/permission/{userId}", method = DELETE)
+  @ResponseStatus(NO_CONTENT)
+  public void evictPermissions(@PathVariable("userId") UUID userId) {
+    LOGGER.debug("Try to evict cached permissions of user: {}", userId);
+    permissionService.canManageSystemSettings();
+    referenceDataCache.evict(UserReferenceDataService.PERMISSION_CACHE, userId.toString());
+  }
+}
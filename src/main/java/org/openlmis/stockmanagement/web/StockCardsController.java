@@ -15,11 +15,20 @@
 
 package org.openlmis.stockmanagement.web;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.VARY;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 
 import org.openlmis.stockmanagement.dto.StockCardDto;
+import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.StockCardLedgerExportService;
+import org.openlmis.stockmanagement.service.StockCardLedgerExportService.Format;
 import org.openlmis.stockmanagement.service.StockCardService;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
 import org.slf4j.Logger;
@@ -27,14 +36,26 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api")
@@ -51,6 +72,9 @@ public class StockCardsController {
   @Autowired
   private StockCardSummariesService stockCardSummariesService;
 
+  @Autowired
+  private StockCardLedgerExportService stockCardLedgerExportService;
+
   /**
    * Get stock card by id.
    *
@@ -72,7 +96,33 @@ public class StockCardsController {
   }
 
   /**
-   * Get stock card summaries by program and facility.
+   * Get a page of line items of a stock card, latest first, with stock on hand after each of
+   * them. To get the next page, pass id of the last line item of the current one as after.
+   *
+   * @param stockCardId stock card id.
+   * @param after       id of the last line item of the previous page.
+   * @param size        maximum number of line items in the page.
+   * @return found line items.
+   */
+  @RequestMapping(value = "/stockCards/{stockCardId}/lineItems", method = GET)
+  public ResponseEntity<List<StockCardLineItemDto>> getStockCardLineItems(
+      @PathVariable("stockCardId") UUID stockCardId,
+      @RequestParam(required = false) UUID after,
+      @RequestParam(defaultValue = "50") int size) {
+    LOGGER.debug("Try to find line items of stock card with id: " + stockCardId);
+
+    List<StockCardLineItemDto> lineItems =
+        stockCardService.findLineItems(stockCardId, after, size);
+    if (lineItems == null) {
+      LOGGER.debug("Not found stock card with id: " + stockCardId);
+      return new ResponseEntity<>(NOT_FOUND);
+    }
+    return new ResponseEntity<>(lineItems, OK);
+  }
+
+  /**
+   * Get stock card summaries by program and facility. When as of date is given, stock on hand of
+   * summaries is the one at the end of that date.
    *
    * @return Stock card summaries.
    */
@@ -80,10 +130,14 @@ public class StockCardsController {
   public Page<StockCardDto> getStockCardSummaries(
       @RequestParam() UUID program,
       @RequestParam() UUID facility,
+      @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate asOfDate,
       Pageable pageable
   ) {
     LOGGER.debug("Try to find stock card summaries");
     permissionService.canViewStockCard(program, facility);
+    if (asOfDate != null) {
+      return stockCardSummariesService.findStockCards(program, facility, asOfDate, pageable);
+    }
     return stockCardSummariesService.findStockCards(program, facility, pageable);
   }
 
@@ -102,4 +156,60 @@ public class StockCardsController {
     return stockCardSummariesService.createDummyStockCards(program, facility);
   }
 
+  /**
+   * Export the complete stock ledger of a facility in a program, as CSV or NDJSON. Line items are
+   * streamed to the client as they are read, gzip compressed if the client accepts it.
+   *
+   * @param program        program id.
+   * @param facility       facility id.
+   * @param format         csv or ndjson, csv by default.
+   * @param acceptEncoding value of the Accept-Encoding header.
+   * @param response       response the ledger is written to.
+   */
+  @RequestMapping(value = "/stockCards/export", method = GET)
+  public void exportStockLedger(
+      @RequestParam() UUID program,
+      @RequestParam() UUID facility,
+      @RequestParam(defaultValue = "csv") String format,
+      @RequestHeader(value = ACCEPT_ENCODING, required = false) String acceptEncoding,
+      HttpServletResponse response
+  ) throws IOException {
+    LOGGER.debug("Export stock ledger of program {} and facility {}", program, facility);
+    permissionService.canViewStockCard(program, facility);
+    Format exportFormat = Format.fromString(format);
+
+    response.setContentType(exportFormat.getContentType() + ";charset=" + UTF_8.name());
+    response.setHeader(CONTENT_DISPOSITION, "attachment; filename=stock-ledger-"
+        + facility + "." + exportFormat.getExtension());
+    response.setHeader(VARY, ACCEPT_ENCODING);
+
+    OutputStream outputStream = response.getOutputStream();
+    if (null != acceptEncoding && acceptEncoding.contains("gzip")) {
+      response.setHeader(CONTENT_ENCODING, "gzip");
+      outputStream = new GZIPOutputStream(outputStream);
+    }
+
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8))) {
+      stockCardLedgerExportService.exportLedger(program, facility, exportFormat, writer);
+    }
+  }
+
+  /**
+   * Verify persisted stock on hand of all stock cards of a facility in a program against a full
+   * replay of their line items. Only administrators are allowed to run it.
+   *
+   * @param program  program id.
+   * @param facility facility id.
+   * @return ids of stock cards which persisted stock on hand is not consistent.
+   */
+  @RequestMapping(value = "/stockCards/inconsistentStockOnHand", method = GET)
+  public List<UUID> getCardsWithInconsistentStockOnHand(
+      @RequestParam() UUID program,
+      @RequestParam() UUID facility
+  ) {
+    LOGGER.debug("Verify stock on hand of program {} and facility {}", program, facility);
+    permissionService.canManageSystemSettings();
+    return stockCardService.findCardsWithInconsistentStockOnHand(program, facility);
+  }
+
 }
@@ -15,13 +15,19 @@
 
 package org.openlmis.stockmanagement.web;
 
+import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
+import org.openlmis.stockmanagement.dto.QueuedStockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.service.HomeFacilityPermissionService;
 import org.openlmis.stockmanagement.service.PermissionService;
 import org.openlmis.stockmanagement.service.StockEventProcessor;
+import org.openlmis.stockmanagement.service.StockEventQueueService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.ext.XLogger;
@@ -32,10 +38,17 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -57,14 +70,21 @@ public class StockEventsController {
   @Autowired
   private StockEventProcessor stockEventProcessor;
 
+  @Autowired
+  private StockEventQueueService stockEventQueueService;
+
   /**
-   * Create stock event.
+   * Create stock event. In async mode the event is only queued, and its status can be tracked
+   * with the returned ID.
    *
    * @param eventDto a stock event bound to request body.
-   * @return created stock event's ID.
+   * @param async    whether the event should be queued and processed asynchronously.
+   * @return created stock event's ID, or queued stock event's ID in async mode.
    */
   @RequestMapping(value = "stockEvents", method = POST)
-  public ResponseEntity<UUID> createStockEvent(@RequestBody StockEventDto eventDto) {
+  public ResponseEntity<UUID> createStockEvent(
+      @RequestBody StockEventDto eventDto,
+      @RequestParam(value = "async", required = false, defaultValue = "false") boolean async) {
     LOGGER.debug("Try to create a stock event");
 
     XLOGGER.entry(eventDto);
@@ -73,11 +93,91 @@ public class StockEventsController {
 
     checkPermission(eventDto, profiler.startNested("CHECK_PERMISSION"));
 
+    ResponseEntity<UUID> response;
+
+    if (async) {
+      profiler.start("ENQUEUE");
+      UUID queuedEventId = stockEventQueueService.enqueue(eventDto);
+
+      profiler.start("CREATE_RESPONSE");
+      response = new ResponseEntity<>(queuedEventId, ACCEPTED);
+    } else {
+      profiler.start("PROCESS");
+      UUID createdEventId = stockEventProcessor.process(eventDto);
+
+      profiler.start("CREATE_RESPONSE");
+      response = new ResponseEntity<>(createdEventId, CREATED);
+    }
+
+    profiler.stop().log();
+    XLOGGER.exit(response);
+
+    return response;
+  }
+
+  /**
+   * Create stock events in one request. Events are processed in the given order, transactions are
+   * handled by the processor so that events can be saved in chunks.
+   *
+   * @param eventDtos stock events bound to request body.
+   * @return created stock events' IDs, in the order of events.
+   */
+  @RequestMapping(value = "stockEvents/batch", method = POST)
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public ResponseEntity<List<UUID>> createStockEvents(@RequestBody List<StockEventDto> eventDtos) {
+    LOGGER.debug("Try to create {} stock events", eventDtos.size());
+
+    XLOGGER.entry(eventDtos);
+    Profiler profiler = new Profiler("CREATE_STOCK_EVENTS");
+    profiler.setLogger(XLOGGER);
+
+    //permissions are the same for all events of the same program, facility and type
+    Set<List<Object>> checked = new HashSet<>();
+    for (StockEventDto eventDto : eventDtos) {
+      List<Object> permissionKey = Arrays.asList(
+          eventDto.getProgramId(), eventDto.getFacilityId(), eventDto.isPhysicalInventory()
+      );
+
+      if (checked.add(permissionKey)) {
+        checkPermission(eventDto, profiler.startNested("CHECK_PERMISSION"));
+      }
+    }
+
     profiler.start("PROCESS");
-    UUID createdEventId = stockEventProcessor.process(eventDto);
+    List<UUID> createdEventIds = stockEventProcessor.processAll(eventDtos);
+
+    profiler.start("CREATE_RESPONSE");
+    ResponseEntity<List<UUID>> response = new ResponseEntity<>(createdEventIds, CREATED);
+
+    profiler.stop().log();
+    XLOGGER.exit(response);
+
+    return response;
+  }
+
+  /**
+   * Get status of a queued stock event.
+   *
+   * @param id queued stock event's ID.
+   * @return status of the event, with the created stock event's ID or the validation error.
+   */
+  @RequestMapping(value = "queuedStockEvents/{id}", method = GET)
+  public ResponseEntity<QueuedStockEventDto> getQueuedStockEvent(@PathVariable("id") UUID id) {
+    XLOGGER.entry(id);
+    Profiler profiler = new Profiler("GET_QUEUED_STOCK_EVENT");
+    profiler.setLogger(XLOGGER);
+
+    profiler.start("FIND_QUEUED_EVENT");
+    QueuedStockEvent queuedEvent = stockEventQueueService.findOne(id);
+
+    //status is visible to those who can submit the event
+    checkPermission(stockEventQueueService.readPayload(queuedEvent),
+        profiler.startNested("CHECK_PERMISSION"));
 
     profiler.start("CREATE_RESPONSE");
-    ResponseEntity<UUID> response = new ResponseEntity<>(createdEventId, CREATED);
+    ResponseEntity<QueuedStockEventDto> response = new ResponseEntity<>(
+        QueuedStockEventDto.from(queuedEvent), OK
+    );
 
     profiler.stop().log();
     XLOGGER.exit(response);
@@ -17,6 +17,7 @@ package org.openlmis.stockmanagement.web.report;
 
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_IO;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.openlmis.stockmanagement.domain.JasperTemplate;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
@@ -107,6 +108,8 @@ public class PhysicalInventoryTemplateController {
         response.flushBuffer();
       } catch (IOException ex) {
         throw new ValidationMessageException(ex, new Message(ERROR_IO, ex.getMessage()));
+      } finally {
+        FileUtils.deleteQuietly(file);
       }
     }
   }
@@ -0,0 +1,36 @@
+ALTER TABLE stock_cards ADD COLUMN stockonhand INTEGER;
+ALTER TABLE stock_card_line_items ADD COLUMN stockonhand INTEGER;
+
+-- calculate running stock on hand of existing line items, physical inventories reset the balance
+WITH line_items AS (
+  SELECT li.id, li.stockcardid, li.occurreddate, li.processeddate,
+    CASE WHEN li.reasonid IS NULL AND li.sourceid IS NULL AND li.destinationid IS NULL
+      THEN li.quantity END AS counted,
+    CASE WHEN li.reasonid IS NULL AND li.sourceid IS NULL AND li.destinationid IS NULL THEN 0
+      WHEN li.sourceid IS NOT NULL OR r.reasontype = 'CREDIT' THEN li.quantity
+      ELSE -li.quantity END AS change
+  FROM stock_card_line_items li
+  LEFT JOIN stock_card_line_item_reasons r ON r.id = li.reasonid
+), grouped_line_items AS (
+  SELECT *, COUNT(counted) OVER (PARTITION BY stockcardid
+    ORDER BY occurreddate, processeddate, id ROWS UNBOUNDED PRECEDING) AS inventory
+  FROM line_items
+), balances AS (
+  SELECT id,
+    COALESCE(MAX(counted) OVER (PARTITION BY stockcardid, inventory), 0)
+      + SUM(change) OVER (PARTITION BY stockcardid, inventory
+        ORDER BY occurreddate, processeddate, id ROWS UNBOUNDED PRECEDING) AS stockonhand
+  FROM grouped_line_items
+)
+UPDATE stock_card_line_items li
+SET stockonhand = balances.stockonhand
+FROM balances
+WHERE li.id = balances.id;
+
+UPDATE stock_cards c
+SET stockonhand = (
+  SELECT li.stockonhand
+  FROM stock_card_line_items li
+  WHERE li.stockcardid = c.id
+  ORDER BY li.occurreddate DESC, li.processeddate DESC, li.id DESC
+  LIMIT 1);
@@ -0,0 +1,19 @@
+CREATE TABLE queued_stock_events (
+  id uuid NOT NULL,
+  sequencenumber bigserial NOT NULL,
+  facilityid uuid NOT NULL,
+  programid uuid NOT NULL,
+  userid uuid,
+  payload text NOT NULL,
+  status text NOT NULL,
+  stockeventid uuid,
+  errormessagekey text,
+  errormessage text,
+  queueddate timestamp NOT NULL,
+  processeddate timestamp,
+  CONSTRAINT queued_stock_events_pkey PRIMARY KEY (id)
+);
+
+-- queued events are picked up in order of arrival, only those waiting to be processed
+CREATE INDEX queued_stock_events_status_sequencenumber_idx
+  ON queued_stock_events (status, sequencenumber);
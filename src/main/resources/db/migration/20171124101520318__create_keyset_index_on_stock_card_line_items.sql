@@ -0,0 +1,6 @@
+-- serves line items of a card in the order of their dates, so pages of line items are read
+-- straight from the index; the index on stockcardid alone is superseded by it
+CREATE INDEX stock_card_line_items_stockcardid_dates_idx
+  ON stock_card_line_items (stockcardid, occurreddate, processeddate, id);
+
+DROP INDEX IF EXISTS stock_card_line_items_stockcardid_idx;
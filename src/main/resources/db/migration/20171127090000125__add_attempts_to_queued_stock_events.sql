@@ -0,0 +1,2 @@
+ALTER TABLE queued_stock_events ADD COLUMN attempts integer NOT NULL DEFAULT 0;
+ALTER TABLE queued_stock_events ADD COLUMN nextattemptdate timestamp;
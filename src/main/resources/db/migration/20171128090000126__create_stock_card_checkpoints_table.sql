@@ -0,0 +1,28 @@
+-- checkpoints are derived from line items, so they are removed together with them
+CREATE TABLE stock_card_checkpoints (
+  id uuid NOT NULL,
+  stockcardid uuid NOT NULL,
+  lineitemid uuid NOT NULL,
+  occurreddate date NOT NULL,
+  processeddate timestamp NOT NULL,
+  stockonhand integer NOT NULL,
+  CONSTRAINT stock_card_checkpoints_pkey PRIMARY KEY (id),
+  CONSTRAINT stock_card_checkpoints_lineitemid_key UNIQUE (lineitemid),
+  CONSTRAINT stock_card_checkpoints_stockcardid_fkey
+    FOREIGN KEY (stockcardid) REFERENCES stock_cards (id) ON DELETE CASCADE,
+  CONSTRAINT stock_card_checkpoints_lineitemid_fkey
+    FOREIGN KEY (lineitemid) REFERENCES stock_card_line_items (id) ON DELETE CASCADE
+);
+
+-- the nearest checkpoint before a date is read straight from the index
+CREATE INDEX stock_card_checkpoints_stockcardid_dates_idx
+  ON stock_card_checkpoints (stockcardid, occurreddate, processeddate);
+
+-- a checkpoint is kept after the first line item of each month of every stock card
+INSERT INTO stock_card_checkpoints
+  (id, stockcardid, lineitemid, occurreddate, processeddate, stockonhand)
+SELECT DISTINCT ON (stockcardid, date_trunc('month', occurreddate))
+  md5(random()::text || id::text)::uuid, stockcardid, id, occurreddate, processeddate, stockonhand
+FROM stock_card_line_items
+WHERE stockonhand IS NOT NULL
+ORDER BY stockcardid, date_trunc('month', occurreddate), occurreddate, processeddate, id;
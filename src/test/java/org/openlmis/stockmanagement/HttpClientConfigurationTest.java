@@ -0,0 +1,54 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class HttpClientConfigurationTest {
+  private HttpClientConfiguration configuration = new HttpClientConfiguration();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(configuration, "maxConnections", 100);
+    ReflectionTestUtils.setField(configuration, "maxConnectionsPerRoute", 20);
+    ReflectionTestUtils.setField(configuration, "maxConnectionsPerUrl",
+        "http://referencedata:8080 = 50, https://auth.example.org=5");
+    ReflectionTestUtils.setField(configuration, "keepAlive", 30L);
+  }
+
+  @Test
+  public void shouldLimitConnectionsPerConfiguredUrl() {
+    //when
+    PoolingHttpClientConnectionManager manager = configuration.httpConnectionManager();
+
+    //then
+    assertEquals(100, manager.getMaxTotal());
+    assertEquals(20, manager.getDefaultMaxPerRoute());
+    assertEquals(50, manager.getMaxPerRoute(
+        new HttpRoute(new HttpHost("referencedata", 8080, "http"))));
+    assertEquals(5, manager.getMaxPerRoute(
+        new HttpRoute(new HttpHost("auth.example.org", 443, "https"), null, true)));
+    assertEquals(20, manager.getMaxPerRoute(
+        new HttpRoute(new HttpHost("notification", 80, "http"))));
+  }
+}
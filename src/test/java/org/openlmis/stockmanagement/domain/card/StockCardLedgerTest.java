@@ -0,0 +1,150 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.domain.card;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH;
+import static org.openlmis.stockmanagement.testutils.DatesUtil.getBaseDate;
+import static org.openlmis.stockmanagement.testutils.DatesUtil.getBaseDateTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openlmis.stockmanagement.domain.reason.ReasonType;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class StockCardLedgerTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void should_calculate_soh_of_line_items_ordered_by_dates() throws Exception {
+    //given
+    StockCardLineItem debit = createLineItem(getBaseDate().plusDays(2), 4, ReasonType.DEBIT);
+    StockCardLineItem credit = createLineItem(getBaseDate(), 10, ReasonType.CREDIT);
+    StockCardLineItem physicalInventory = createLineItem(getBaseDate().plusDays(1), 7, null);
+
+    //when
+    StockCardLedger ledger = StockCardLedger.of(asList(debit, credit, physicalInventory));
+
+    //then
+    assertThat(ledger.calculateStockOnHand(), is(3));
+    assertThat(ledger.calculateStockOnHand(5), is(3));
+    assertThat(ledger.calculateStockOnHands(), is(new int[]{3, 10, 7}));
+  }
+
+  @Test
+  public void should_not_modify_line_items_when_calculate_soh() throws Exception {
+    //given
+    StockCardLineItem physicalInventory = createLineItem(getBaseDate(), 7, null);
+
+    //when
+    StockCardLedger.of(asList(physicalInventory)).calculateStockOnHand(10);
+
+    //then
+    assertThat(physicalInventory.getQuantity(), is(7));
+    assertThat(physicalInventory.getReason(), is(nullValue()));
+    assertThat(physicalInventory.getStockOnHand(), is(nullValue()));
+  }
+
+  @Test
+  public void should_reject_when_soh_goes_below_zero() throws Exception {
+    //expect
+    expectedException.expect(ValidationMessageException.class);
+    expectedException.expectMessage(ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH);
+
+    //given
+    StockCardLedger ledger = StockCardLedger.of(asList(
+        createLineItem(getBaseDate(), 1, ReasonType.CREDIT),
+        createLineItem(getBaseDate().plusDays(1), 2, ReasonType.DEBIT)));
+
+    //when
+    ledger.calculateStockOnHand();
+  }
+
+  @Test
+  public void should_calculate_same_soh_as_stock_card_for_long_history() throws Exception {
+    //given
+    List<StockCardLineItem> lineItems = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      ReasonType reasonType = i % 3 == 2 ? ReasonType.DEBIT : ReasonType.CREDIT;
+      lineItems.add(createLineItem(getBaseDate().plusDays(i), i % 7 + 1, reasonType));
+    }
+
+    StockCard card = new StockCard();
+    card.setLineItems(lineItems);
+
+    //when
+    int[] stockOnHands = StockCardLedger.of(lineItems).calculateStockOnHands();
+    card.recalculateStockOnHand();
+
+    //then
+    for (int i = 0; i < lineItems.size(); i++) {
+      assertThat(stockOnHands[i], is(lineItems.get(i).getStockOnHand()));
+    }
+    assertThat(StockCardLedger.of(lineItems).calculateStockOnHand(), is(card.getStockOnHand()));
+  }
+
+  @Test
+  public void should_order_shuffled_line_items_by_occurred_then_by_processed_date()
+      throws Exception {
+    //given
+    List<StockCardLineItem> lineItems = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ReasonType reasonType = i % 3 == 2 ? ReasonType.DEBIT : ReasonType.CREDIT;
+      StockCardLineItem lineItem =
+          createLineItem(getBaseDate().plusDays(i / 10), i % 7 + 1, reasonType);
+      lineItem.setProcessedDate(getBaseDateTime().plusNanos(i % 10));
+      lineItems.add(lineItem);
+    }
+    Collections.shuffle(lineItems, new Random(42));
+
+    StockCard card = new StockCard();
+    card.setLineItems(lineItems);
+
+    //when
+    int[] stockOnHands = StockCardLedger.of(lineItems).calculateStockOnHands();
+    card.recalculateStockOnHand();
+
+    //then
+    for (int i = 0; i < lineItems.size(); i++) {
+      assertThat(stockOnHands[i], is(lineItems.get(i).getStockOnHand()));
+    }
+  }
+
+  private StockCardLineItem createLineItem(LocalDate occurredDate, int quantity,
+                                           ReasonType reasonType) {
+    StockCardLineItem lineItem = new StockCardLineItem();
+    lineItem.setOccurredDate(occurredDate);
+    lineItem.setProcessedDate(getBaseDateTime());
+    lineItem.setQuantity(quantity);
+    if (null != reasonType) {
+      lineItem.setReason(StockCardLineItemReason.builder().reasonType(reasonType).build());
+    }
+    return lineItem;
+  }
+}
@@ -21,6 +21,7 @@ import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.openlmis.stockmanagement.domain.card.StockCardLineItem.createLineItemFrom;
@@ -222,6 +223,23 @@ public class StockCardLineItemTest {
     assertThat(lineItem.getReason().getReasonCategory(), is(ReasonCategory.PHYSICAL_INVENTORY));
   }
 
+  @Test
+  public void should_not_change_original_line_item_when_calculating_its_shallow_copy()
+      throws Exception {
+    //given
+    StockCardLineItem lineItem = StockCardLineItem.builder()
+        .quantity(15).stockOnHand(15).build();
+
+    //when
+    StockCardLineItem copy = lineItem.shallowCopy();
+    copy.calculateStockOnHand(20);
+
+    //then
+    assertThat(copy.getQuantity(), is(5));
+    assertThat(lineItem.getQuantity(), is(15));
+    assertThat(lineItem.getReason(), is(nullValue()));
+  }
+
   private static StockAdjustment createStockAdjustment() {
     StockCardLineItemReason reason = StockCardLineItemReason.builder()
         .name("test reason")
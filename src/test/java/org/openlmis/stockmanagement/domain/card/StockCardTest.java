@@ -16,11 +16,17 @@
 package org.openlmis.stockmanagement.domain.card;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.domain.card.StockCardCheckpoint.createCheckpointAfter;
+import static org.openlmis.stockmanagement.domain.card.StockCardCheckpoint.createInitialCheckpoint;
 import static org.openlmis.stockmanagement.testutils.DatesUtil.getBaseDate;
 import static org.openlmis.stockmanagement.testutils.DatesUtil.getBaseDateTime;
 import static org.openlmis.stockmanagement.testutils.DatesUtil.oneDayLater;
@@ -29,6 +35,8 @@ import static org.openlmis.stockmanagement.testutils.DatesUtil.oneHourLater;
 
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.openlmis.stockmanagement.domain.reason.ReasonType;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
@@ -95,6 +103,207 @@ public class StockCardTest {
     assertThat(card.getStockOnHand(), is(456));
   }
 
+  @Test
+  public void should_update_soh_from_persisted_soh_when_added_line_item_is_latest()
+      throws Exception {
+    //given
+    StockCardLineItem existing = createCreditLineItem(getBaseDate(), 3);
+    StockCardLineItem added = createCreditLineItem(getBaseDate().plusDays(1), 5);
+
+    StockCard card = new StockCard();
+    card.setLineItems(new ArrayList<>(asList(existing, added)));
+    card.setStockOnHand(10);
+
+    //when
+    card.updateStockOnHand(added);
+
+    //then
+    assertThat(card.getStockOnHand(), is(15));
+    assertThat(added.getStockOnHand(), is(15));
+    assertThat(existing.getStockOnHand(), is(nullValue()));
+  }
+
+  @Test
+  public void should_recalculate_whole_card_when_added_line_item_is_backdated() throws Exception {
+    //given
+    StockCardLineItem existing = createCreditLineItem(getBaseDate(), 3);
+    StockCardLineItem added = createCreditLineItem(getBaseDate().minusDays(1), 5);
+
+    StockCard card = new StockCard();
+    card.setLineItems(new ArrayList<>(asList(existing, added)));
+    card.setStockOnHand(10);
+
+    //when
+    card.updateStockOnHand(added);
+
+    //then
+    assertThat(card.getStockOnHand(), is(8));
+    assertThat(added.getStockOnHand(), is(5));
+    assertThat(existing.getStockOnHand(), is(8));
+  }
+
+  @Test
+  public void should_recalculate_from_nearest_checkpoint_when_added_line_item_is_backdated()
+      throws Exception {
+    //given
+    StockCardLineItem checkpointItem = createCreditLineItem(getBaseDate(), 3);
+    checkpointItem.setStockOnHand(100);
+    StockCardLineItem following = createCreditLineItem(getBaseDate().plusDays(2), 4);
+    following.setStockOnHand(104);
+    StockCardLineItem added = createCreditLineItem(getBaseDate().plusDays(1), 5);
+    StockCardCheckpoint laterCheckpoint = createCheckpointAfter(following);
+
+    StockCard card = new StockCard();
+    card.setLineItems(new ArrayList<>(asList(checkpointItem, following, added)));
+    card.setStockOnHand(104);
+
+    //when
+    card.recalculateStockOnHand(added, createCheckpointAfter(checkpointItem),
+        new ArrayList<>(asList(added, following)), singletonList(laterCheckpoint));
+
+    //then
+    assertThat(checkpointItem.getStockOnHand(), is(100));
+    assertThat(added.getStockOnHand(), is(105));
+    assertThat(following.getStockOnHand(), is(109));
+    assertThat(laterCheckpoint.getStockOnHand(), is(109));
+    assertThat(card.getStockOnHand(), is(109));
+  }
+
+  @Test
+  public void should_recalculate_added_line_item_which_is_not_among_line_items_after_checkpoint()
+      throws Exception {
+    //given
+    StockCardLineItem following = createCreditLineItem(getBaseDate().plusDays(2), 4);
+    following.setStockOnHand(4);
+    StockCardLineItem added = createCreditLineItem(getBaseDate().plusDays(1), 5);
+
+    StockCard card = new StockCard();
+    card.setStockOnHand(4);
+
+    //when
+    card.recalculateStockOnHand(added, createInitialCheckpoint(randomUUID()),
+        singletonList(following), emptyList());
+
+    //then
+    assertThat(added.getStockOnHand(), is(5));
+    assertThat(following.getStockOnHand(), is(9));
+    assertThat(card.getStockOnHand(), is(9));
+  }
+
+  @Test
+  public void should_stop_recalculation_at_physical_inventory_following_backdated_line_item()
+      throws Exception {
+    //given
+    StockCardLineItem checkpointItem = createCreditLineItem(getBaseDate(), 10);
+    checkpointItem.setStockOnHand(10);
+    StockCardLineItem physicalInventory = new StockCardLineItem();
+    physicalInventory.setId(randomUUID());
+    physicalInventory.setOccurredDate(getBaseDate().plusDays(2));
+    physicalInventory.setProcessedDate(getBaseDateTime());
+    physicalInventory.setQuantity(7);
+    physicalInventory.setStockOnHand(7);
+    StockCardLineItem following = createCreditLineItem(getBaseDate().plusDays(3), 1);
+    following.setStockOnHand(8);
+    StockCardLineItem added = createCreditLineItem(getBaseDate().plusDays(1), 5);
+    StockCardCheckpoint laterCheckpoint = createCheckpointAfter(following);
+
+    StockCard card = new StockCard();
+    card.setStockOnHand(8);
+
+    //when
+    card.recalculateStockOnHand(added, createCheckpointAfter(checkpointItem),
+        new ArrayList<>(asList(added, physicalInventory, following)),
+        singletonList(laterCheckpoint));
+
+    //then
+    assertThat(added.getStockOnHand(), is(15));
+    assertThat(physicalInventory.getStockOnHand(), is(7));
+    assertThat(following.getStockOnHand(), is(8));
+    assertThat(laterCheckpoint.getStockOnHand(), is(8));
+    assertThat(card.getStockOnHand(), is(8));
+  }
+
+  @Test
+  public void should_take_checkpoint_after_first_line_item_of_month() throws Exception {
+    //given
+    StockCard card = new StockCard();
+    card.setLatestOccurredDate(LocalDate.of(2017, 3, 31));
+
+    //when
+    boolean sameMonth = card.startsNewMonth(createCreditLineItem(LocalDate.of(2017, 3, 31), 1));
+    boolean nextMonth = card.startsNewMonth(createCreditLineItem(LocalDate.of(2017, 4, 1), 1));
+
+    //then
+    assertThat(sameMonth, is(false));
+    assertThat(nextMonth, is(true));
+  }
+
+  @Test
+  public void should_verify_persisted_soh_against_full_replay() throws Exception {
+    //given
+    StockCardLineItem first = createCreditLineItem(getBaseDate(), 3);
+    first.setStockOnHand(3);
+    StockCardLineItem second = createCreditLineItem(getBaseDate().plusDays(1), 4);
+    second.setStockOnHand(7);
+
+    StockCard card = new StockCard();
+    card.setLineItems(new ArrayList<>(asList(second, first)));
+    card.setStockOnHand(7);
+
+    StockCardCheckpoint checkpoint = createCheckpointAfter(first);
+
+    //when
+    boolean consistentBefore = card.isStockOnHandConsistent(singletonList(checkpoint));
+    checkpoint.setStockOnHand(4);
+    boolean inconsistentCheckpoint = card.isStockOnHandConsistent(singletonList(checkpoint));
+    second.setStockOnHand(6);
+    boolean consistentAfter = card.isStockOnHandConsistent(emptyList());
+
+    //then
+    assertThat(consistentBefore, is(true));
+    assertThat(inconsistentCheckpoint, is(false));
+    assertThat(consistentAfter, is(false));
+    assertThat(second.getStockOnHand(), is(6));
+  }
+
+  @Test
+  public void should_keep_physical_inventory_quantity_when_recalculate_soh() throws Exception {
+    //given
+    StockCardLineItem credit = createCreditLineItem(getBaseDate(), 3);
+    StockCardLineItem physicalInventory = new StockCardLineItem();
+    physicalInventory.setOccurredDate(getBaseDate().plusDays(1));
+    physicalInventory.setProcessedDate(getBaseDateTime());
+    physicalInventory.setQuantity(7);
+
+    StockCard card = new StockCard();
+    card.setLineItems(asList(physicalInventory, credit));
+
+    //when
+    card.recalculateStockOnHand();
+
+    //then
+    assertThat(card.getStockOnHand(), is(7));
+    assertThat(physicalInventory.getQuantity(), is(7));
+    assertThat(physicalInventory.getReason(), is(nullValue()));
+    assertThat(card.getLineItems().get(0), is(physicalInventory));
+  }
+
+  @Test
+  public void should_recalculate_soh_when_it_is_not_persisted() throws Exception {
+    //given
+    StockCard card = new StockCard();
+    card.setLineItems(asList(
+        createCreditLineItem(getBaseDate(), 3),
+        createCreditLineItem(getBaseDate().plusDays(1), 4)));
+
+    //when
+    Integer stockOnHand = card.currentStockOnHand();
+
+    //then
+    assertThat(stockOnHand, is(7));
+    assertThat(card.latestOccurredDate(), is(getBaseDate().plusDays(1)));
+  }
+
   @Test
   public void should_shallow_copy_line_items() throws Exception {
     //given
@@ -118,4 +327,15 @@ public class StockCardTest {
     //then
     assertThat(stockCard.getLineItems().get(0).getQuantity(), is(5));
   }
-}
\ No newline at end of file
+
+  private StockCardLineItem createCreditLineItem(LocalDate occurredDate, int quantity) {
+    StockCardLineItem lineItem = new StockCardLineItem();
+    lineItem.setOccurredDate(occurredDate);
+    lineItem.setProcessedDate(getBaseDateTime());
+    lineItem.setQuantity(quantity);
+    lineItem.setReason(StockCardLineItemReason.builder().reasonType(ReasonType.CREDIT).build());
+    lineItem.setId(randomUUID());
+    lineItem.setStockCard(new StockCard());
+    return lineItem;
+  }
+}
@@ -32,7 +32,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.card.StockCard;
-import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
@@ -130,7 +129,6 @@ public class StockoutNotifierTest {
   private SupervisoryNodeDto supervisoryNode = mock(SupervisoryNodeDto.class);
   private UserDto editor = mock(UserDto.class);
   private StockCard stockCard = mock(StockCard.class);
-  private StockCardLineItem stockCardLineItem = mock(StockCardLineItem.class);
 
   private LocalDate stockoutDate = LocalDate.now().minusDays(5);
 
@@ -207,7 +205,7 @@ public class StockoutNotifierTest {
   @Test
   public void notifyStockEditorsShouldNotifyWithCorrectMessageBodyForOneDayOfStockout() {
     LocalDate stockoutDate = LocalDate.now().minusDays(1);
-    when(stockCardLineItem.getOccurredDate()).thenReturn(stockoutDate);
+    when(stockCard.latestOccurredDate()).thenReturn(stockoutDate);
 
     testNotificationBody(stockoutDate, "1 day");
   }
@@ -270,8 +268,7 @@ public class StockoutNotifierTest {
     when(stockCard.getOrderableId()).thenReturn(orderableId);
     when(stockCard.getProgramId()).thenReturn(programId);
     when(stockCard.getLotId()).thenReturn(lotId);
-    when(stockCard.getLineItems()).thenReturn(Collections.singletonList(stockCardLineItem));
-    when(stockCardLineItem.getOccurredDate()).thenReturn(stockoutDate);
+    when(stockCard.latestOccurredDate()).thenReturn(stockoutDate);
   }
 
   private DateTimeFormatter getDateTimeFormatter() {
@@ -15,14 +15,27 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.JasperTemplate;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
 import java.util.UUID;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -33,6 +46,47 @@ public class JasperReportServiceTest {
   @Mock
   private StockCardService stockCardService;
 
+  private JasperTemplate template;
+
+  @Before
+  public void setUp() throws Exception {
+    ReflectionTestUtils.setField(jasperReportService, "appContext",
+        new StaticApplicationContext());
+
+    try (InputStream inputStream = getClass().getResourceAsStream(
+        "/jasperTemplates/physicalinventoryLines.jrxml");
+         ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(JasperCompileManager.compileReport(inputStream));
+
+      template = new JasperTemplate("print", bos.toByteArray(), null, null);
+      template.setId(UUID.randomUUID());
+    }
+  }
+
+  @Test
+  public void should_reuse_report_of_the_same_template() throws Exception {
+    //when
+    JasperReport first = getReport(template);
+    JasperReport second = getReport(template);
+
+    //then
+    assertThat(second, sameInstance(first));
+  }
+
+  @Test
+  public void should_read_report_again_when_template_is_replaced() throws Exception {
+    //given
+    JasperReport first = getReport(template);
+
+    //when
+    jasperReportService.evictTemplate(template.getName());
+    JasperReport second = getReport(template);
+
+    //then
+    assertThat(second, not(sameInstance(first)));
+  }
+
   @Test(expected = ResourceNotFoundException.class)
   public void should_throw_resource_not_found_exception_when_stock_card_not_exists()
       throws Exception {
@@ -43,4 +97,9 @@ public class JasperReportServiceTest {
     //then
     jasperReportService.getStockCardReportView(stockCardId);
   }
-}
\ No newline at end of file
+
+  private JasperReport getReport(JasperTemplate template) {
+    return ReflectionTestUtils.invokeMethod(
+        jasperReportService.getJasperReportsView(template), "loadReport");
+  }
+}
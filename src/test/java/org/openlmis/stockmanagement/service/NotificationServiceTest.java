@@ -18,6 +18,7 @@ package org.openlmis.stockmanagement.service;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -38,6 +39,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import java.net.URI;
+import java.util.function.Function;
 
 @RunWith(MockitoJUnitRunner.class)
 public class NotificationServiceTest {
@@ -59,7 +61,8 @@ public class NotificationServiceTest {
 
   @Before
   public void setUp() {
-    when(authService.obtainAccessToken()).thenReturn(ACCESS_TOKEN);
+    when(authService.runWithAccessToken(any(Function.class))).thenAnswer(invocation ->
+        ((Function<String, ?>) invocation.getArguments()[0]).apply(ACCESS_TOKEN));
 
     ReflectionTestUtils.setField(notificationService, "restTemplate", restTemplate);
     ReflectionTestUtils.setField(notificationService, "notificationUrl", NOTIFICATION_URL);
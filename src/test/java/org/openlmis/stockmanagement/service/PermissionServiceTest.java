@@ -23,6 +23,7 @@ import static org.openlmis.stockmanagement.service.PermissionService.REASONS_MAN
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_CARD_TEMPLATES_MANAGE;
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_DESTINATIONS_MANAGE;
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_SOURCES_MANAGE;
+import static org.openlmis.stockmanagement.service.PermissionService.SYSTEM_SETTINGS_MANAGE;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -88,6 +89,7 @@ public class PermissionServiceTest {
     when(authenticationHelper.getRight(STOCK_SOURCES_MANAGE)).thenReturn(new RightDto());
     when(authenticationHelper.getRight(STOCK_DESTINATIONS_MANAGE)).thenReturn(new RightDto());
     when(authenticationHelper.getRight(REASONS_MANAGE)).thenReturn(new RightDto());
+    when(authenticationHelper.getRight(SYSTEM_SETTINGS_MANAGE)).thenReturn(new RightDto());
 
     securityContext = mock(SecurityContext.class);
     SecurityContextHolder.setContext(securityContext);
@@ -111,6 +113,25 @@ public class PermissionServiceTest {
     permissionService.canCreateStockCardTemplate();
   }
 
+  @Test
+  public void canManageSystemSettings() throws Exception {
+    hasRight(null, true);
+    permissionService.canManageSystemSettings();
+  }
+
+  @Test
+  public void cannotManageSystemSettings() throws Exception {
+    hasRight(null, false);
+    expectException(SYSTEM_SETTINGS_MANAGE);
+    permissionService.canManageSystemSettings();
+  }
+
+  @Test
+  public void cannotManageSystemSettingsWithoutResult() throws Exception {
+    expectException(SYSTEM_SETTINGS_MANAGE);
+    permissionService.canManageSystemSettings();
+  }
+
   @Test
   public void admin_can_view_all_valid_reasons_sources_destinations() throws Exception {
     //given
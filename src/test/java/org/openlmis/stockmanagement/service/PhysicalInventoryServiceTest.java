@@ -93,16 +93,15 @@ public class PhysicalInventoryServiceTest {
             physicalInventoryDto.getProgramId(),
             physicalInventoryDto.getFacilityId()))
         .thenReturn(singletonList(stockCard));
-    StockCard cloneOfCard = mockCloneOfCard(previousSoH);
     when(stockCard.getOrderableId()).thenReturn(lineItemDto.getOrderableId());
     when(stockCard.getLotId()).thenReturn(lineItemDto.getLotId());
-    when(stockCard.shallowCopy()).thenReturn(cloneOfCard);
+    when(stockCard.currentStockOnHand()).thenReturn(previousSoH);
 
     physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID());
 
     verify(physicalInventoryRepository, times(1)).save(inventoryArgumentCaptor.capture());
-    verify(stockCard).shallowCopy();
-    verify(cloneOfCard).calculateStockOnHand();
+    verify(stockCard).currentStockOnHand();
+    verify(stockCard, never()).shallowCopy();
 
     verifyPhysicalInventorySavedWithSohAndAsDraft(previousSoH);
   }
@@ -122,7 +121,7 @@ public class PhysicalInventoryServiceTest {
     physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID());
 
     verify(physicalInventoryRepository, times(1)).save(inventoryArgumentCaptor.capture());
-    verify(stockCard, never()).shallowCopy();
+    verify(stockCard, never()).currentStockOnHand();
 
     verifyPhysicalInventorySavedWithoutSohAndAsDraft();
   }
@@ -319,12 +318,6 @@ public class PhysicalInventoryServiceTest {
         .build();
   }
 
-  private StockCard mockCloneOfCard(int previousSoH) {
-    StockCard cloneOfCard = mock(StockCard.class);
-    when(cloneOfCard.getStockOnHand()).thenReturn(previousSoH);
-    return cloneOfCard;
-  }
-
   private void verifyPhysicalInventorySavedWithSohAndAsDraft(int previousSoH) {
     PhysicalInventory captured = inventoryArgumentCaptor.getValue();
     Integer previousStockOnHand =
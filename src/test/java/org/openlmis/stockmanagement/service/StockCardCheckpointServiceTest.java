@@ -0,0 +1,171 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.reason.ReasonType;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.repository.StockCardCheckpointRepository;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockCardCheckpointServiceTest {
+
+  private static final LocalDate BASE_DATE = LocalDate.of(2017, 3, 10);
+
+  @Mock
+  private StockCardCheckpointRepository checkpointRepository;
+
+  @Mock
+  private StockCardLineItemRepository lineItemRepository;
+
+  @InjectMocks
+  private StockCardCheckpointService checkpointService;
+
+  private UUID cardId = UUID.randomUUID();
+
+  @Test
+  public void should_recalculate_backdated_line_item_from_nearest_checkpoint() throws Exception {
+    //given
+    StockCardLineItem checkpointItem = createCreditLineItem(BASE_DATE, 3);
+    checkpointItem.setStockOnHand(100);
+    StockCardLineItem following = createCreditLineItem(BASE_DATE.plusDays(2), 4);
+    following.setStockOnHand(104);
+    StockCardLineItem added = createCreditLineItem(BASE_DATE.plusDays(1), 5);
+
+    StockCard card = createCard(104, BASE_DATE.plusDays(2));
+    StockCardCheckpoint checkpoint = StockCardCheckpoint.createCheckpointAfter(checkpointItem);
+
+    when(checkpointRepository.findLatestBefore(eq(cardId), eq(added.getOccurredDate()),
+        eq(added.getProcessedDate()), any(Pageable.class)))
+        .thenReturn(singletonList(checkpoint));
+    when(lineItemRepository.findAfter(cardId, checkpoint.getOccurredDate(),
+        checkpoint.getProcessedDate(), checkpointItem.getId()))
+        .thenReturn(asList(added, following));
+    when(checkpointRepository.findAfter(cardId, checkpoint.getOccurredDate(),
+        checkpoint.getProcessedDate()))
+        .thenReturn(emptyList());
+
+    //when
+    boolean takeCheckpoint = checkpointService.updateStockOnHand(card, added);
+
+    //then
+    assertThat(takeCheckpoint, is(false));
+    assertThat(added.getStockOnHand(), is(105));
+    assertThat(following.getStockOnHand(), is(109));
+    assertThat(card.getStockOnHand(), is(109));
+    verify(lineItemRepository, never()).findInOrder(cardId);
+  }
+
+  @Test
+  public void should_recalculate_from_first_line_item_when_there_is_no_checkpoint_before()
+      throws Exception {
+    //given
+    StockCardLineItem following = createCreditLineItem(BASE_DATE.plusDays(2), 4);
+    following.setStockOnHand(4);
+    StockCardLineItem added = createCreditLineItem(BASE_DATE.plusDays(1), 5);
+
+    StockCard card = createCard(4, BASE_DATE.plusDays(2));
+
+    when(checkpointRepository.findLatestBefore(eq(cardId), any(LocalDate.class),
+        any(ZonedDateTime.class), any(Pageable.class)))
+        .thenReturn(emptyList());
+    when(lineItemRepository.findInOrder(cardId)).thenReturn(asList(added, following));
+    when(checkpointRepository.findByStockCardId(cardId)).thenReturn(emptyList());
+
+    //when
+    checkpointService.updateStockOnHand(card, added);
+
+    //then
+    assertThat(added.getStockOnHand(), is(5));
+    assertThat(following.getStockOnHand(), is(9));
+    assertThat(card.getStockOnHand(), is(9));
+  }
+
+  @Test
+  public void should_take_checkpoint_after_first_line_item_of_month() throws Exception {
+    //given
+    StockCard card = createCard(10, BASE_DATE);
+    StockCardLineItem added = createCreditLineItem(BASE_DATE.plusMonths(1), 5);
+
+    //when
+    boolean takeCheckpoint = checkpointService.updateStockOnHand(card, added);
+
+    //then
+    assertThat(takeCheckpoint, is(true));
+    assertThat(card.getStockOnHand(), is(15));
+    verify(checkpointRepository, never()).findLatestBefore(any(UUID.class),
+        any(LocalDate.class), any(ZonedDateTime.class), any(Pageable.class));
+  }
+
+  @Test
+  public void should_not_take_checkpoint_after_line_item_in_same_month() throws Exception {
+    //given
+    StockCard card = createCard(10, BASE_DATE);
+    StockCardLineItem added = createCreditLineItem(BASE_DATE.plusDays(1), 5);
+
+    //when
+    boolean takeCheckpoint = checkpointService.updateStockOnHand(card, added);
+
+    //then
+    assertThat(takeCheckpoint, is(false));
+    assertThat(card.getStockOnHand(), is(15));
+  }
+
+  private StockCard createCard(Integer stockOnHand, LocalDate latestOccurredDate) {
+    StockCard card = new StockCard();
+    card.setId(cardId);
+    card.setLineItems(new ArrayList<>());
+    card.setStockOnHand(stockOnHand);
+    card.setLatestOccurredDate(latestOccurredDate);
+    return card;
+  }
+
+  private StockCardLineItem createCreditLineItem(LocalDate occurredDate, int quantity) {
+    StockCardLineItem lineItem = new StockCardLineItem();
+    lineItem.setId(UUID.randomUUID());
+    lineItem.setStockCard(createCard(null, null));
+    lineItem.setOccurredDate(occurredDate);
+    lineItem.setProcessedDate(ZonedDateTime.now());
+    lineItem.setQuantity(quantity);
+    lineItem.setReason(StockCardLineItemReason.builder().reasonType(ReasonType.CREDIT).build());
+    return lineItem;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.service.StockCardLedgerExportService.Format;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockCardLedgerExportServiceTest {
+
+  private static final Instant PROCESSED_DATE = Instant.parse("2017-11-20T10:15:30Z");
+
+  @Mock
+  private JdbcTemplate jdbcTemplate;
+
+  @Mock
+  private MessageService messageService;
+
+  @InjectMocks
+  private StockCardLedgerExportService exportService;
+
+  private UUID firstCardId = UUID.randomUUID();
+  private UUID secondCardId = UUID.randomUUID();
+  private UUID orderableId = UUID.randomUUID();
+  private UUID lineItemId = UUID.randomUUID();
+  private UUID nodeId = UUID.randomUUID();
+  private UUID userId = UUID.randomUUID();
+
+  @Before
+  public void setUp() {
+    mockPhysicalReasonName("credit", "Overstock");
+    mockPhysicalReasonName("debit", "Understock");
+    mockPhysicalReasonName("balance_adjustment", "Balance adjustment");
+  }
+
+  @Test
+  public void should_write_csv_with_running_stock_on_hand_per_card() throws Exception {
+    //given
+    Map<String, Object> receive = lineItem(firstCardId, 10);
+    receive.put("sourceid", nodeId);
+    receive.put("documentnumber", "DN \"1\", 2017");
+    Map<String, Object> issue = lineItem(firstCardId, 3);
+    issue.put("destinationid", nodeId);
+    Map<String, Object> physicalInventory = lineItem(firstCardId, 5);
+    Map<String, Object> adjustment = lineItem(secondCardId, 4);
+    adjustment.put("reasonname", "Transfer In");
+    adjustment.put("reasontype", "CREDIT");
+    mockLedger(receive, issue, physicalInventory, adjustment);
+
+    //when
+    StringWriter writer = new StringWriter();
+    exportService.exportLedger(UUID.randomUUID(), UUID.randomUUID(), Format.CSV, writer);
+
+    //then
+    List<String> lines = Arrays.asList(writer.toString().split("\r\n"));
+    assertThat(lines.size(), is(5));
+    assertThat(lines.get(0), is(String.join(",", StockCardLedgerExportService.COLUMNS)));
+    assertThat(lines.get(1), is(csvLine(firstCardId, "", "", nodeId, "", "\"DN \"\"1\"\", 2017\"",
+        10, 10)));
+    assertThat(lines.get(2), is(csvLine(firstCardId, "", "", "", nodeId, "", 3, 7)));
+    assertThat(lines.get(3), is(csvLine(firstCardId, "Understock", "DEBIT", "", "", "", 2, 5)));
+    assertThat(lines.get(4), is(csvLine(secondCardId, "Transfer In", "CREDIT", "", "", "", 4, 4)));
+  }
+
+  @Test
+  public void should_write_one_json_object_per_line() throws Exception {
+    //given
+    Map<String, Object> receive = lineItem(firstCardId, 10);
+    receive.put("sourceid", nodeId);
+    mockLedger(receive, lineItem(firstCardId, 8));
+
+    //when
+    StringWriter writer = new StringWriter();
+    exportService.exportLedger(UUID.randomUUID(), UUID.randomUUID(), Format.NDJSON, writer);
+
+    //then
+    String[] lines = writer.toString().split("\n");
+    assertThat(lines.length, is(2));
+    assertThat(lines[0], is("{\"stockCardId\":\"" + firstCardId + "\","
+        + "\"orderableId\":\"" + orderableId + "\",\"lotId\":null,"
+        + "\"lineItemId\":\"" + lineItemId + "\",\"occurredDate\":\"2017-11-20\","
+        + "\"processedDate\":\"" + PROCESSED_DATE + "\",\"reasonName\":null,"
+        + "\"reasonType\":null,\"sourceId\":\"" + nodeId + "\",\"destinationId\":null,"
+        + "\"sourceFreeText\":null,\"destinationFreeText\":null,\"reasonFreeText\":null,"
+        + "\"documentNumber\":null,\"signature\":null,\"userId\":\"" + userId + "\","
+        + "\"quantity\":10,\"stockOnHand\":10}"));
+    assertThat(lines[1].contains("\"reasonName\":\"Understock\",\"reasonType\":\"DEBIT\""),
+        is(true));
+    assertThat(lines[1].endsWith("\"quantity\":2,\"stockOnHand\":8}"), is(true));
+  }
+
+  @Test
+  public void should_write_stock_on_hand_out_of_range_as_calculated() throws Exception {
+    //given
+    Map<String, Object> issue = lineItem(firstCardId, 3);
+    issue.put("destinationid", nodeId);
+    Map<String, Object> receive = lineItem(firstCardId, 10);
+    receive.put("sourceid", nodeId);
+    mockLedger(issue, receive);
+
+    //when
+    StringWriter writer = new StringWriter();
+    exportService.exportLedger(UUID.randomUUID(), UUID.randomUUID(), Format.NDJSON, writer);
+
+    //then
+    String[] lines = writer.toString().split("\n");
+    assertThat(lines.length, is(2));
+    assertThat(lines[0].endsWith("\"quantity\":3,\"stockOnHand\":-3}"), is(true));
+    assertThat(lines[1].endsWith("\"quantity\":10,\"stockOnHand\":7}"), is(true));
+  }
+
+  @Test
+  public void should_find_format_ignoring_case() throws Exception {
+    assertThat(Format.fromString("ndjson"), is(Format.NDJSON));
+    assertThat(Format.fromString("Csv"), is(Format.CSV));
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void should_throw_validation_exception_when_format_is_not_supported() throws Exception {
+    Format.fromString("xml");
+  }
+
+  private Map<String, Object> lineItem(UUID stockCardId, int quantity) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("stockcardid", stockCardId);
+    row.put("orderableid", orderableId);
+    row.put("lineitemid", lineItemId);
+    row.put("occurreddate", Date.valueOf(LocalDate.of(2017, 11, 20)));
+    row.put("processeddate", Timestamp.from(PROCESSED_DATE));
+    row.put("userid", userId);
+    row.put("quantity", quantity);
+    return row;
+  }
+
+  private void mockPhysicalReasonName(String reasonType, String name) {
+    Message message = new Message(StockCardService.PHYSICAL_INVENTORY_REASON_PREFIX + reasonType);
+    when(messageService.localize(message)).thenReturn(message.new LocalizedMessage(name));
+  }
+
+  @SafeVarargs
+  private final void mockLedger(Map<String, Object>... rows) {
+    doAnswer(invocation -> {
+      RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[1];
+      for (Map<String, Object> row : rows) {
+        Answer<Object> columnValue = column -> row.get(column.getArguments()[0]);
+        handler.processRow(mock(ResultSet.class, columnValue));
+      }
+      return null;
+    }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+  }
+
+  private String csvLine(UUID stockCardId, Object reasonName, Object reasonType, Object sourceId,
+                         Object destinationId, Object documentNumber, int quantity,
+                         int stockOnHand) {
+    return String.join(",", stockCardId.toString(), orderableId.toString(), "",
+        lineItemId.toString(), "2017-11-20", PROCESSED_DATE.toString(), reasonName.toString(),
+        reasonType.toString(), sourceId.toString(), destinationId.toString(), "", "", "",
+        documentNumber.toString(), "", userId.toString(), String.valueOf(quantity),
+        String.valueOf(stockOnHand));
+  }
+}
@@ -15,12 +15,12 @@
 
 package org.openlmis.stockmanagement.service;
 
-import static java.time.ZoneOffset.UTC;
-import static java.time.ZonedDateTime.of;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.UUID.fromString;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.Matchers.allOf;
@@ -30,16 +30,18 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
-import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.openlmis.stockmanagement.domain.card.StockCard;
-import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.card.StockCardSummary;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
@@ -81,6 +83,11 @@ public class StockCardSummariesServiceTest {
   @InjectMocks
   private StockCardSummariesService stockCardSummariesService;
 
+  @Before
+  public void setUp() {
+    stockCardSummariesService.createDummyStockCardsCache();
+  }
+
   @Test
   public void should_create_dummy_cards()
       throws Exception {
@@ -112,10 +119,10 @@ public class StockCardSummariesServiceTest {
 
     LotDto lotDto = new LotDto();
     lotDto.setId(randomUUID());
-    //2 has a lot
-    when(lotReferenceDataService
-        .getAllLotsOf(fromString(orderable2.getIdentifiers().get("tradeItem"))))
-        .thenReturn(singletonList(lotDto));
+    //2 has a lot, lots of all trade items are searched at once
+    UUID tradeItem2Id = fromString(orderable2.getIdentifiers().get("tradeItem"));
+    when(lotReferenceDataService.getAllLotsOf(singleton(tradeItem2Id)))
+        .thenReturn(singletonMap(tradeItem2Id, singletonList(lotDto)));
 
     //when
     List<StockCardDto> cardDtos = stockCardSummariesService
@@ -158,6 +165,60 @@ public class StockCardSummariesServiceTest {
         hasProperty(lineItemsPropertyName, nullValue()))));
   }
 
+  @Test
+  public void should_cache_dummy_cards_until_evicted() throws Exception {
+    //given
+    UUID programId = randomUUID();
+    UUID facilityId = randomUUID();
+    OrderableDto orderable = createOrderableDto(randomUUID(), "");
+
+    when(approvedProductReferenceDataService.getAllApprovedProducts(programId, facilityId))
+        .thenReturn(singletonList(orderable));
+    when(cardRepository.getIdentitiesBy(programId, facilityId))
+        .thenReturn(emptyList())
+        .thenReturn(singletonList(new OrderableLotIdentity(orderable.getId(), null)));
+
+    //when
+    List<StockCardDto> dummyCards = stockCardSummariesService
+        .createDummyStockCards(programId, facilityId);
+    List<StockCardDto> cachedDummyCards = stockCardSummariesService
+        .createDummyStockCards(programId, facilityId);
+    stockCardSummariesService.evictDummyStockCards(programId, facilityId);
+    List<StockCardDto> dummyCardsAfterEviction = stockCardSummariesService
+        .createDummyStockCards(programId, facilityId);
+
+    //then
+    assertThat(dummyCards.size(), is(1));
+    assertThat(cachedDummyCards.size(), is(1));
+    assertThat(dummyCardsAfterEviction.size(), is(0));
+    verify(cardRepository, times(2)).getIdentitiesBy(programId, facilityId);
+  }
+
+  @Test
+  public void should_return_deep_copies_of_cached_dummy_cards() throws Exception {
+    //given
+    UUID programId = randomUUID();
+    UUID facilityId = randomUUID();
+    OrderableDto orderable = createOrderableDto(randomUUID(), "");
+
+    when(approvedProductReferenceDataService.getAllApprovedProducts(programId, facilityId))
+        .thenReturn(singletonList(orderable));
+    when(cardRepository.getIdentitiesBy(programId, facilityId)).thenReturn(emptyList());
+
+    //when
+    StockCardDto dummyCard = stockCardSummariesService
+        .createDummyStockCards(programId, facilityId).get(0);
+    dummyCard.setStockOnHand(10);
+    dummyCard.getOrderable().setId(randomUUID());
+    StockCardDto cachedDummyCard = stockCardSummariesService
+        .createDummyStockCards(programId, facilityId).get(0);
+
+    //then
+    assertThat(cachedDummyCard.getStockOnHand(), is(nullValue()));
+    assertThat(cachedDummyCard.getOrderable().getId(), is(orderable.getId()));
+    verify(cardRepository, times(1)).getIdentitiesBy(programId, facilityId);
+  }
+
   @Test
   public void should_find_existing_stock_cards()
       throws Exception {
@@ -178,13 +239,13 @@ public class StockCardSummariesServiceTest {
         .getAllApprovedProducts(programId, facilityId))
         .thenReturn(asList(orderable1, orderable2, orderable3, orderable4));
 
-    when(cardRepository.findByProgramIdAndFacilityId(programId, facilityId))
+    when(cardRepository.findSummariesBy(programId, facilityId))
         .thenReturn(asList(
-            createStockCard(orderable1Id, randomUUID()),
-            createStockCard(orderable3Id, randomUUID())));
+            createSummary(orderable1Id, randomUUID()),
+            createSummary(orderable3Id, randomUUID())));
 
-    when(lotReferenceDataService.getAllLotsOf(any(UUID.class)))
-        .thenReturn(emptyList());
+    when(lotReferenceDataService.getAllLotsOf(anyCollectionOf(UUID.class)))
+        .thenReturn(emptyMap());
 
     //when
     List<StockCardDto> cardDtos = stockCardSummariesService
@@ -202,13 +263,13 @@ public class StockCardSummariesServiceTest {
     assertThat(cardDtos, hasItem(allOf(
         hasProperty(orderablePropertyName, is(orderable1)),
         hasProperty(idPropertyName, notNullValue()),
-        hasProperty(stockOnHandPropertyName, notNullValue()),
+        hasProperty(stockOnHandPropertyName, is(2)),
         hasProperty(lastUpdatePropertyName, is(LocalDate.of(2017, 3, 18))),
         hasProperty(lineItemsPropertyName, nullValue()))));
     assertThat(cardDtos, hasItem(allOf(
         hasProperty(orderablePropertyName, is(orderable3)),
         hasProperty(idPropertyName, notNullValue()),
-        hasProperty(stockOnHandPropertyName, notNullValue()),
+        hasProperty(stockOnHandPropertyName, is(2)),
         hasProperty(lastUpdatePropertyName, is(LocalDate.of(2017, 3, 18))),
         hasProperty(lineItemsPropertyName, nullValue()))));
   }
@@ -220,16 +281,16 @@ public class StockCardSummariesServiceTest {
     UUID facilityId = randomUUID();
     PageRequest pageRequest = new PageRequest(0, 1);
 
-    StockCard card = new StockCard();
-    card.setLineItems(emptyList());
-    when(cardRepository.findByProgramIdAndFacilityId(programId, facilityId, pageRequest))
-        .thenReturn(new PageImpl<>(singletonList(card), pageRequest, 10));
+    StockCardSummary summary =
+        new StockCardSummary(randomUUID(), programId, facilityId, null, null, 0, null);
+    when(cardRepository.findSummariesBy(programId, facilityId, pageRequest))
+        .thenReturn(new PageImpl<>(singletonList(summary), pageRequest, 10));
 
     when(approvedProductReferenceDataService.getAllApprovedProducts(programId, facilityId))
         .thenReturn(singletonList(OrderableDto.builder().identifiers(emptyMap()).build()));
 
-    when(lotReferenceDataService.getAllLotsOf(any(UUID.class)))
-        .thenReturn(emptyList());
+    when(lotReferenceDataService.getAllLotsOf(anyCollectionOf(UUID.class)))
+        .thenReturn(emptyMap());
 
     //when
     Page<StockCardDto> stockCards = stockCardSummariesService
@@ -240,24 +301,42 @@ public class StockCardSummariesServiceTest {
     assertThat(stockCards.getTotalElements(), is(10L));
   }
 
-  private StockCard createStockCard(UUID orderableId, UUID cardId) {
-    StockCard stockCard = new StockCard();
-    stockCard.setOrderableId(orderableId);
-    stockCard.setId(cardId);
-    StockCardLineItem lineItem1 = StockCardLineItem.builder()
-        .occurredDate(LocalDate.of(2017, 3, 17))
-        .processedDate(of(2017, 3, 17, 15, 10, 31, 100, UTC))
-        .quantity(1)
-        .build();
-    StockCardLineItem lineItem2 = StockCardLineItem.builder()
-        .occurredDate(LocalDate.of(2017, 3, 18))
-        .processedDate(of(2017, 3, 18, 15, 10, 31, 100, UTC))
-        .quantity(1)
-        .build();
-    stockCard.setLineItems(asList(lineItem1, lineItem2, lineItem1));
-    return stockCard;
+  @Test
+  public void should_return_page_of_stock_cards_as_of_date() throws Exception {
+    //given
+    UUID programId = randomUUID();
+    UUID facilityId = randomUUID();
+    LocalDate asOfDate = LocalDate.of(2017, 3, 31);
+    PageRequest pageRequest = new PageRequest(1, 2);
+
+    UUID orderable3Id = randomUUID();
+    StockCardSummary summary3 = createSummary(orderable3Id, randomUUID());
+    when(cardRepository.findSummariesAsOf(programId, facilityId, asOfDate, pageRequest))
+        .thenReturn(new PageImpl<>(singletonList(summary3), pageRequest, 3));
+
+    when(approvedProductReferenceDataService.getAllApprovedProducts(programId, facilityId))
+        .thenReturn(singletonList(createOrderableDto(orderable3Id, "3")));
+
+    when(lotReferenceDataService.getAllLotsOf(anyCollectionOf(UUID.class)))
+        .thenReturn(emptyMap());
+
+    //when
+    Page<StockCardDto> stockCards = stockCardSummariesService
+        .findStockCards(programId, facilityId, asOfDate, pageRequest);
+
+    //then
+    assertThat(stockCards.getContent().size(), is(1));
+    assertThat(stockCards.getContent().get(0).getId(), is(summary3.getId()));
+    assertThat(stockCards.getContent().get(0).getStockOnHand(), is(2));
+    assertThat(stockCards.getTotalElements(), is(3L));
   }
 
+  private StockCardSummary createSummary(UUID orderableId, UUID cardId) {
+    return new StockCardSummary(cardId, randomUUID(), randomUUID(), orderableId, null, 2,
+        LocalDate.of(2017, 3, 18));
+  }
+
+
   private OrderableDto createOrderableDto(UUID orderableId, String productName) {
     return OrderableDto.builder()
         .id(orderableId)
@@ -63,7 +63,7 @@ public class StockEventNotificationProcessorTest {
 
   @Before
   public void setUp() {
-    stockCard = new StockCard(null, facilityId, programId, orderableId, lotId, null, 0);
+    stockCard = new StockCard(null, facilityId, programId, orderableId, lotId, null, 0, null);
     stockCard.setId(stockCardId);
 
     context = mock(StockEventProcessContext.class);
@@ -107,7 +107,7 @@ public class StockEventNotificationProcessorTest {
     UUID anotherLotId = UUID.randomUUID();
 
     StockCard anotherStockCard = new StockCard(null, facilityId, programId, orderableId, lotId, 
-        null, 0);
+        null, 0, null);
     anotherStockCard.setId(anotherStockCardId);
 
     StockEventLineItem secondLineItem = createStockEventLineItem();
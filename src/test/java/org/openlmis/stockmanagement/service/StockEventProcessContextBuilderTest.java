@@ -15,21 +15,42 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity.identityOf;
+import static org.openlmis.stockmanagement.util.ContextResource.STOCK_CARDS;
+import static org.openlmis.stockmanagement.util.ContextResource.STOCK_CARD_LINE_ITEMS;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
+import org.openlmis.stockmanagement.domain.sourcedestination.Node;
+import org.openlmis.stockmanagement.domain.sourcedestination.ValidSourceAssignment;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityTypeDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
+import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
+import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
 import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
@@ -45,6 +66,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.UUID;
 
 @RunWith(PowerMockRunner.class)
@@ -66,6 +88,15 @@ public class StockEventProcessContextBuilderTest {
   @Mock
   private ApprovedProductReferenceDataService approvedProductService;
 
+  @Mock
+  private StockCardRepository stockCardRepository;
+
+  @Mock
+  private ValidSourceAssignmentRepository validSourceAssignmentRepository;
+
+  @Mock
+  private ValidReasonAssignmentRepository validReasonAssignmentRepository;
+
   @Mock
   private SecurityContext securityContext;
 
@@ -104,6 +135,177 @@ public class StockEventProcessContextBuilderTest {
     testBuildContext(stockEventDto);
   }
 
+  @Test
+  public void shouldOnlyFindCardsOfOrderablesAndLotsInEvent() throws Exception {
+    //given
+    StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+    stockEventDto.setUserId(userDto.getId());
+    StockEventLineItem eventLineItem = stockEventDto.getLineItems().get(0);
+    eventLineItem.setLotId(UUID.randomUUID());
+
+    StockCard cardOfEventLot = StockCard.builder()
+        .orderableId(eventLineItem.getOrderableId())
+        .lotId(eventLineItem.getLotId())
+        .build();
+    StockCard cardOfOtherLot = StockCard.builder()
+        .orderableId(eventLineItem.getOrderableId())
+        .lotId(UUID.randomUUID())
+        .build();
+
+    when(authentication.isClientOnly()).thenReturn(true);
+    when(stockCardRepository.findByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId())))
+        .thenReturn(asList(cardOfEventLot, cardOfOtherLot));
+
+    //when
+    StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
+
+    //then
+    assertThat(context.findCard(identityOf(cardOfEventLot)), is(cardOfEventLot));
+    assertThat(context.findCard(identityOf(cardOfOtherLot)), is(nullValue()));
+  }
+
+  @Test
+  public void shouldFindCardsWithoutLineItemsUnlessValidatorsDependOnThem() throws Exception {
+    //given
+    StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+    stockEventDto.setUserId(userDto.getId());
+    StockEventLineItem eventLineItem = stockEventDto.getLineItems().get(0);
+    StockCard card = StockCard.builder()
+        .orderableId(eventLineItem.getOrderableId())
+        .lotId(eventLineItem.getLotId())
+        .build();
+
+    when(authentication.isClientOnly()).thenReturn(true);
+    when(stockCardRepository.findByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId())))
+        .thenReturn(singletonList(card));
+
+    //when
+    StockEventProcessContext context = contextBuilder
+        .buildContext(stockEventDto, EnumSet.of(STOCK_CARDS));
+
+    //then
+    assertThat(context.findCard(identityOf(card)), is(card));
+    verify(stockCardRepository).findByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId()));
+    verifyNoMoreInteractions(stockCardRepository);
+  }
+
+  @Test
+  public void shouldFindCardsWithLineItemsIfValidatorsDependOnThem() throws Exception {
+    //given
+    StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+    stockEventDto.setUserId(userDto.getId());
+    StockEventLineItem eventLineItem = stockEventDto.getLineItems().get(0);
+    StockCard card = StockCard.builder()
+        .orderableId(eventLineItem.getOrderableId())
+        .lotId(eventLineItem.getLotId())
+        .lineItems(singletonList(StockCardLineItem.builder().build()))
+        .build();
+
+    when(authentication.isClientOnly()).thenReturn(true);
+    when(stockCardRepository.findWithLineItemsByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId())))
+        .thenReturn(singletonList(card));
+
+    //when
+    StockEventProcessContext context = contextBuilder
+        .buildContext(stockEventDto, EnumSet.of(STOCK_CARDS, STOCK_CARD_LINE_ITEMS));
+
+    //then
+    assertThat(context.findCard(identityOf(card)), is(card));
+    verify(stockCardRepository).findWithLineItemsByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId()));
+    verifyNoMoreInteractions(stockCardRepository);
+  }
+
+  @Test
+  public void shouldFindCardReasonsFromLineItemsOfCardsInEvent() throws Exception {
+    //given
+    StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+    stockEventDto.setUserId(userDto.getId());
+    StockEventLineItem eventLineItem = stockEventDto.getLineItems().get(0);
+
+    StockCardLineItemReason reason = StockCardLineItemReason.physicalCredit();
+    reason.setId(UUID.randomUUID());
+    StockCard card = StockCard.builder()
+        .orderableId(eventLineItem.getOrderableId())
+        .lotId(eventLineItem.getLotId())
+        .lineItems(asList(
+            StockCardLineItem.builder().reason(reason).build(),
+            StockCardLineItem.builder().reason(reason).build(),
+            StockCardLineItem.builder().build()))
+        .build();
+
+    when(authentication.isClientOnly()).thenReturn(true);
+    when(stockCardRepository.findByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId())))
+        .thenReturn(singletonList(card));
+
+    //when
+    StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
+
+    //then
+    assertThat(context.findCardReason(reason.getId()), is(reason));
+    verify(stockCardRepository, times(1)).findByProgramIdAndFacilityIdAndOrderableIdIn(
+        stockEventDto.getProgramId(), stockEventDto.getFacilityId(),
+        singleton(eventLineItem.getOrderableId()));
+    verifyNoMoreInteractions(stockCardRepository);
+  }
+
+  @Test
+  public void shouldGroupApprovedProductsSourcesAndValidReasonsById() throws Exception {
+    //given
+    StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+    stockEventDto.setUserId(userDto.getId());
+    when(authentication.isClientOnly()).thenReturn(true);
+
+    FacilityTypeDto facilityType = new FacilityTypeDto();
+    facilityType.setId(UUID.randomUUID());
+    FacilityDto facility = new FacilityDto();
+    facility.setType(facilityType);
+    when(facilityService.findOne(stockEventDto.getFacilityId())).thenReturn(facility);
+
+    OrderableDto orderable = OrderableDto.builder().id(UUID.randomUUID()).build();
+    when(approvedProductService
+        .getAllApprovedProducts(stockEventDto.getProgramId(), stockEventDto.getFacilityId()))
+        .thenReturn(singletonList(orderable));
+
+    Node node = new Node();
+    node.setId(UUID.randomUUID());
+    ValidSourceAssignment source = new ValidSourceAssignment();
+    source.setNode(node);
+    when(validSourceAssignmentRepository
+        .findByProgramIdAndFacilityTypeId(stockEventDto.getProgramId(), facilityType.getId()))
+        .thenReturn(singletonList(source));
+
+    StockCardLineItemReason reason = new StockCardLineItemReason();
+    reason.setId(UUID.randomUUID());
+    ValidReasonAssignment validReason = new ValidReasonAssignment();
+    validReason.setReason(reason);
+    when(validReasonAssignmentRepository
+        .findByProgramIdAndFacilityTypeId(stockEventDto.getProgramId(), facilityType.getId()))
+        .thenReturn(singletonList(validReason));
+
+    //when
+    StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
+
+    //then
+    assertThat(context.findApprovedProduct(orderable.getId()), is(orderable));
+    assertThat(context.findApprovedProduct(UUID.randomUUID()), is(nullValue()));
+    assertThat(context.findSource(node.getId()), is(source));
+    assertThat(context.findValidReason(reason.getId()), is(validReason));
+    verify(approvedProductService, times(1))
+        .getAllApprovedProducts(stockEventDto.getProgramId(), stockEventDto.getFacilityId());
+  }
+
   private void testBuildContext(StockEventDto stockEventDto) {
     //given
     UUID lotId = UUID.randomUUID();
@@ -123,7 +325,8 @@ public class StockEventProcessContextBuilderTest {
     when(approvedProductService
         .getAllApprovedProducts(stockEventDto.getProgramId(), stockEventDto.getFacilityId()))
         .thenReturn(approvedProductDtos);
-    when(lotReferenceDataService.findOne(lotId)).thenReturn(lot);
+    when(lotReferenceDataService.findByIds(singletonList(lotId)))
+        .thenReturn(singletonList(lot));
 
     //when
     StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
@@ -0,0 +1,229 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.FAILED;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.PROCESSED;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.PROCESSING;
+import static org.openlmis.stockmanagement.domain.event.QueuedStockEventStatus.QUEUED;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_NO_LINE_ITEMS;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED;
+import static org.openlmis.stockmanagement.testutils.StockEventDtoBuilder.createStockEventDto;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.event.QueuedStockEvent;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.repository.QueuedStockEventRepository;
+import org.openlmis.stockmanagement.util.AuthenticationHelper;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockEventQueueServiceTest {
+
+  @Mock
+  private QueuedStockEventRepository queuedStockEventRepository;
+
+  @Mock
+  private StockEventProcessor stockEventProcessor;
+
+  @Mock
+  private AuthenticationHelper authenticationHelper;
+
+  @Mock
+  private MessageService messageService;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Spy
+  private ObjectMapper objectMapper = new ObjectMapper()
+      .findAndRegisterModules()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  @InjectMocks
+  private StockEventQueueService stockEventQueueService;
+
+  private QueuedStockEvent queuedEvent;
+  private UUID userId = UUID.randomUUID();
+
+  @Before
+  public void setUp() throws Exception {
+    StockEventDto eventDto = createStockEventDto();
+
+    queuedEvent = new QueuedStockEvent();
+    queuedEvent.setId(UUID.randomUUID());
+    queuedEvent.setFacilityId(eventDto.getFacilityId());
+    queuedEvent.setProgramId(eventDto.getProgramId());
+    queuedEvent.setUserId(userId);
+    queuedEvent.setPayload(objectMapper.writeValueAsString(eventDto));
+    queuedEvent.setStatus(PROCESSING);
+
+    when(queuedStockEventRepository.updateStatus(queuedEvent.getId(), QUEUED, PROCESSING))
+        .thenReturn(1);
+    when(queuedStockEventRepository.findOne(queuedEvent.getId())).thenReturn(queuedEvent);
+  }
+
+  @Test
+  public void shouldMarkQueuedEventAsProcessedWithUserWhoSubmittedIt() throws Exception {
+    //given
+    UUID eventId = UUID.randomUUID();
+    ArgumentCaptor<StockEventDto> captor = ArgumentCaptor.forClass(StockEventDto.class);
+    when(stockEventProcessor.process(captor.capture())).thenReturn(eventId);
+
+    //when
+    boolean processed = stockEventQueueService.process(queuedEvent.getId());
+
+    //then
+    assertThat(processed, is(true));
+    assertThat(captor.getValue().getUserId(), is(userId));
+    assertThat(queuedEvent.getStatus(), is(PROCESSED));
+    assertThat(queuedEvent.getStockEventId(), is(eventId));
+    verify(queuedStockEventRepository).save(queuedEvent);
+  }
+
+  @Test
+  public void shouldMarkQueuedEventAsFailedWithValidationMessage() throws Exception {
+    //given
+    Message message = new Message(ERROR_EVENT_NO_LINE_ITEMS);
+    when(stockEventProcessor.process(any(StockEventDto.class)))
+        .thenThrow(new ValidationMessageException(message));
+    when(messageService.localize(message))
+        .thenReturn(message.new LocalizedMessage("no line items"));
+
+    //when
+    boolean processed = stockEventQueueService.process(queuedEvent.getId());
+
+    //then
+    assertThat(processed, is(true));
+    assertThat(queuedEvent.getStatus(), is(FAILED));
+    assertThat(queuedEvent.getErrorMessageKey(), is(ERROR_EVENT_NO_LINE_ITEMS));
+    assertThat(queuedEvent.getErrorMessage(), is("no line items"));
+    assertThat(queuedEvent.getStockEventId(), is(nullValue()));
+  }
+
+  @Test
+  public void shouldQueueEventAgainWhenProcessingFailsUnexpectedly() throws Exception {
+    //given
+    when(stockEventProcessor.process(any(StockEventDto.class)))
+        .thenThrow(new IllegalStateException("reference data unavailable"));
+
+    //when
+    ZonedDateTime before = ZonedDateTime.now();
+    boolean processed = stockEventQueueService.process(queuedEvent.getId());
+
+    //then
+    assertThat(processed, is(false));
+    assertThat(queuedEvent.getStatus(), is(QUEUED));
+    assertThat(queuedEvent.getAttempts(), is(1));
+    assertThat(queuedEvent.getNextAttemptDate().isBefore(before.plusSeconds(10)), is(false));
+    verify(queuedStockEventRepository).save(queuedEvent);
+  }
+
+  @Test
+  public void shouldMarkEventAsFailedWhenProcessingKeepsFailing() throws Exception {
+    //given
+    IllegalStateException exception = new IllegalStateException("unreadable payload");
+    when(stockEventProcessor.process(any(StockEventDto.class))).thenThrow(exception);
+    Message message = new Message(ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED, 5,
+        exception.getMessage());
+    when(messageService.localize(message))
+        .thenReturn(message.new LocalizedMessage("failed 5 times"));
+
+    //when
+    List<Long> delays = new ArrayList<>();
+    boolean processed = false;
+    for (int attempt = 1; attempt <= 5; attempt++) {
+      ZonedDateTime before = ZonedDateTime.now();
+      processed = stockEventQueueService.process(queuedEvent.getId());
+
+      if (attempt < 5) {
+        assertThat(processed, is(false));
+        delays.add(Math.round(Duration.between(before, queuedEvent.getNextAttemptDate())
+            .toMillis() / 1000.0));
+        //the event is claimed again by the next poll
+        queuedEvent.setStatus(PROCESSING);
+      }
+    }
+
+    //then
+    assertThat(processed, is(true));
+    assertThat(queuedEvent.getStatus(), is(FAILED));
+    assertThat(queuedEvent.getAttempts(), is(5));
+    assertThat(queuedEvent.getErrorMessageKey(), is(ERROR_EVENT_QUEUED_ATTEMPTS_EXCEEDED));
+    assertThat(queuedEvent.getErrorMessage(), is("failed 5 times"));
+    assertThat(delays, contains(10L, 20L, 40L, 80L));
+  }
+
+  @Test
+  public void shouldLimitDelayOfNextAttempt() throws Exception {
+    //given
+    ReflectionTestUtils.setField(stockEventQueueService, "maxAttempts", 100);
+    queuedEvent.setAttempts(50);
+    when(stockEventProcessor.process(any(StockEventDto.class)))
+        .thenThrow(new IllegalStateException("reference data unavailable"));
+
+    //when
+    ZonedDateTime before = ZonedDateTime.now();
+    stockEventQueueService.process(queuedEvent.getId());
+    ZonedDateTime after = ZonedDateTime.now();
+
+    //then
+    assertThat(queuedEvent.getNextAttemptDate().isBefore(before.plusSeconds(600)), is(false));
+    assertThat(queuedEvent.getNextAttemptDate().isAfter(after.plusSeconds(600)), is(false));
+  }
+
+  @Test
+  public void shouldSkipEventWhichIsNoLongerQueued() throws Exception {
+    //given
+    when(queuedStockEventRepository.updateStatus(queuedEvent.getId(), QUEUED, PROCESSING))
+        .thenReturn(0);
+
+    //when
+    boolean processed = stockEventQueueService.process(queuedEvent.getId());
+
+    //then
+    assertThat(processed, is(true));
+    verify(stockEventProcessor, never()).process(any(StockEventDto.class));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.util.ContextResource.EVENT_REASONS;
+import static org.openlmis.stockmanagement.util.ContextResource.FACILITY;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.testutils.StockEventDtoBuilder;
+import org.openlmis.stockmanagement.util.ContextResource;
+import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
+import org.openlmis.stockmanagement.validators.StockEventValidator;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StockEventValidationsServiceConcurrencyTest {
+
+  private StockEventValidationsService validationsService = new StockEventValidationsService();
+
+  private StockEventValidator concurrent1 = mockValidator(true);
+  private StockEventValidator concurrent2 = mockValidator(true);
+  private StockEventValidator sequential = mockValidator(false);
+
+  private StockEventDto stockEventDto = StockEventDtoBuilder.createStockEventDto();
+
+  @Before
+  public void setUp() throws Exception {
+    ReflectionTestUtils.setField(validationsService, "stockEventValidators",
+        asList(concurrent1, sequential, concurrent2));
+    validationsService.startExecutor();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    validationsService.stopExecutor();
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void shouldReportErrorOfFirstFailedValidatorInOrder() throws Exception {
+    //given
+    doAnswer(invocation -> {
+      Thread.sleep(200);
+      throw new ValidationMessageException(new Message("first"));
+    }).when(concurrent1).validate(stockEventDto);
+    doThrow(new ValidationMessageException(new Message("second")))
+        .when(concurrent2).validate(stockEventDto);
+
+    //when
+    try {
+      validationsService.validate(stockEventDto);
+      fail("validation should fail");
+    } catch (ValidationMessageException ex) {
+      //then
+      assertThat(ex.asMessage(), is(new Message("first")));
+    }
+
+    verify(sequential, never()).validate(any(StockEventDto.class));
+  }
+
+  @Test
+  public void shouldReportErrorOfSequentialValidatorBeforeConcurrentOne() throws Exception {
+    //given
+    doThrow(new ValidationMessageException(new Message("sequential")))
+        .when(sequential).validate(stockEventDto);
+    doThrow(new ValidationMessageException(new Message("concurrent")))
+        .when(concurrent2).validate(stockEventDto);
+
+    //when
+    try {
+      validationsService.validate(stockEventDto);
+      fail("validation should fail");
+    } catch (ValidationMessageException ex) {
+      //then
+      assertThat(ex.asMessage(), is(new Message("sequential")));
+    }
+  }
+
+  @Test
+  public void shouldRunConcurrentValidatorsWithSecurityContextOfRequest() throws Exception {
+    //given
+    Authentication authentication = new TestingAuthenticationToken("admin", "password");
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+
+    AtomicReference<Authentication> validatorAuthentication = new AtomicReference<>();
+    AtomicReference<Thread> validatorThread = new AtomicReference<>();
+    doAnswer(invocation -> {
+      validatorAuthentication.set(SecurityContextHolder.getContext().getAuthentication());
+      validatorThread.set(Thread.currentThread());
+      return null;
+    }).when(concurrent1).validate(stockEventDto);
+
+    //when
+    validationsService.validate(stockEventDto);
+
+    //then
+    assertThat(validatorAuthentication.get(), is(sameInstance(authentication)));
+    assertThat(validatorThread.get() == Thread.currentThread(), is(false));
+    verify(sequential).validate(stockEventDto);
+    verify(concurrent2).validate(stockEventDto);
+  }
+
+  @Test
+  public void shouldPrefetchDatabaseResourcesInThreadOfRequest() throws Exception {
+    //given
+    StockEventProcessContext context = mock(StockEventProcessContext.class);
+    stockEventDto.setContext(context);
+    when(concurrent1.getContextDependencies()).thenReturn(EnumSet.of(FACILITY, EVENT_REASONS));
+
+    AtomicReference<Thread> prefetchThread = new AtomicReference<>();
+    doAnswer(invocation -> {
+      prefetchThread.set(Thread.currentThread());
+      return null;
+    }).when(context).prefetch(EVENT_REASONS);
+
+    //when
+    validationsService.validate(stockEventDto);
+
+    //then
+    verify(context).prefetch(FACILITY);
+    assertThat(prefetchThread.get(), is(sameInstance(Thread.currentThread())));
+  }
+
+  private static StockEventValidator mockValidator(boolean concurrent) {
+    StockEventValidator validator = mock(StockEventValidator.class);
+    when(validator.isConcurrent()).thenReturn(concurrent);
+    when(validator.getContextDependencies())
+        .thenReturn(EnumSet.noneOf(ContextResource.class));
+    return validator;
+  }
+}
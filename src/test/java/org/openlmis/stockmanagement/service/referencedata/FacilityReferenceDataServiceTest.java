@@ -0,0 +1,121 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service.referencedata;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.springframework.http.HttpStatus;
+import java.util.Map;
+import java.util.UUID;
+
+public class FacilityReferenceDataServiceTest {
+
+  private FacilityDto facility1 = createFacility();
+  private FacilityDto facility2 = createFacility();
+  private FacilityDto facility3 = createFacility();
+
+  private FacilityReferenceDataService spy;
+
+  @Before
+  public void setUp() {
+    spy = spy(new FacilityReferenceDataService());
+  }
+
+  @Test
+  public void shouldFindFacilitiesByIdsInOneCall() {
+    //given
+    doReturn(asList(facility1, facility2))
+        .when(spy)
+        .findAll("", ImmutableMap.of("id", facility1.getId() + "," + facility2.getId()));
+
+    //when
+    Map<UUID, FacilityDto> found =
+        spy.findByIds(asList(facility1.getId(), facility2.getId(), facility1.getId()));
+
+    //then
+    assertThat(found.size(), is(2));
+    assertThat(found.get(facility1.getId()), is(facility1));
+    assertThat(found.get(facility2.getId()), is(facility2));
+    verify(spy, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldRetrieveFacilitiesMissingInSearchResultOneByOne() {
+    //given
+    doReturn(singletonList(facility1))
+        .when(spy)
+        .findAll(anyString(), anyMapOf(String.class, Object.class));
+    doReturn(null).when(spy).findOne(facility2.getId());
+
+    //when
+    Map<UUID, FacilityDto> found = spy.findByIds(asList(facility1.getId(), facility2.getId()));
+
+    //then
+    assertThat(found.get(facility1.getId()), is(facility1));
+    assertThat(found.get(facility2.getId()), is(nullValue()));
+    verify(spy, never()).findOne(facility1.getId());
+  }
+
+  @Test
+  public void shouldRetrieveFacilitiesOneByOneWhenSearchByIdsFails() {
+    //given
+    doThrow(new DataRetrievalException("FacilityDto", HttpStatus.BAD_REQUEST, ""))
+        .when(spy)
+        .findAll(anyString(), anyMapOf(String.class, Object.class));
+    doReturn(facility1).when(spy).findOne(facility1.getId());
+    doReturn(facility2).when(spy).findOne(facility2.getId());
+
+    //when
+    Map<UUID, FacilityDto> found = spy.findByIds(asList(facility1.getId(), facility2.getId()));
+
+    //then
+    assertThat(found.get(facility1.getId()), is(facility1));
+    assertThat(found.get(facility2.getId()), is(facility2));
+  }
+
+  @Test
+  public void shouldNotSearchWhenOnlyOneIdIsGiven() {
+    //given
+    doReturn(facility3).when(spy).findOne(facility3.getId());
+
+    //when
+    Map<UUID, FacilityDto> found = spy.findByIds(singletonList(facility3.getId()));
+
+    //then
+    assertThat(found.get(facility3.getId()), is(facility3));
+    verify(spy, never()).findAll(anyString(), anyMapOf(String.class, Object.class));
+  }
+
+  private static FacilityDto createFacility() {
+    return FacilityDto.builder().id(UUID.randomUUID()).build();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service.referencedata;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.stockmanagement.dto.referencedata.LotDto;
+import org.openlmis.stockmanagement.testutils.DummyPage;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class LotReferenceDataServiceTest {
+  private static final String SEARCH_URI = "search";
+
+  private LotDto lot1 = createLot();
+  private LotDto lot2 = createLot();
+  private LotDto lot3 = createLot();
+
+  private LotReferenceDataService spy;
+
+  @Before
+  public void setUp() {
+    spy = spy(new LotReferenceDataService());
+    ReflectionTestUtils.setField(spy, "batchSize", 2);
+
+    ReferenceDataCache cache = new ReferenceDataCache();
+    ReflectionTestUtils.setField(cache, "environment",
+        new MockEnvironment()
+            .withProperty("referencedata.cache.lot.timeToLive", "60")
+            .withProperty("referencedata.cache.lot.maximumSize", "10"));
+    ReflectionTestUtils.setField(spy, "referenceDataCache", cache);
+    spy.startExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    spy.stopExecutor();
+  }
+
+  @Test
+  public void shouldSearchLotsByIdsInBatches() {
+    //given
+    doReturn(new DummyPage<>(asList(lot1, lot2)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("id", lot1.getId() + "," + lot2.getId(), "size", 2));
+    doReturn(new DummyPage<>(singletonList(lot3)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("id", lot3.getId().toString(), "size", 1));
+
+    //when
+    List<LotDto> found = spy.findByIds(asList(lot1.getId(), lot2.getId(), lot3.getId()));
+
+    //then
+    assertThat(found, contains(lot1, lot2, lot3));
+    verify(spy, times(2)).getPage(eq(SEARCH_URI), anyMapOf(String.class, Object.class));
+    verify(spy, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldRetrieveLotsOneByOneWhenSearchByIdsFails() {
+    //given
+    doThrow(new DataRetrievalException("LotDto", HttpStatus.BAD_REQUEST, ""))
+        .when(spy)
+        .getPage(eq(SEARCH_URI), anyMapOf(String.class, Object.class));
+    doReturn(lot1).when(spy).findOne(lot1.getId());
+    doReturn(lot2).when(spy).findOne(lot2.getId());
+    doReturn(null).when(spy).findOne(lot3.getId());
+
+    //when
+    List<LotDto> found = spy.findByIds(asList(lot1.getId(), lot2.getId(), lot3.getId()));
+
+    //then
+    assertThat(found, contains(lot1, lot2));
+  }
+
+  @Test
+  public void shouldRetrieveLotsMissingInSearchResultOneByOne() {
+    //given
+    doReturn(new DummyPage<>(singletonList(lot2)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("id", lot1.getId() + "," + lot2.getId(), "size", 2));
+    doReturn(lot1).when(spy).findOne(lot1.getId());
+
+    //when
+    List<LotDto> found = spy.findByIds(asList(lot1.getId(), lot2.getId(), lot1.getId()));
+
+    //then
+    assertThat(found, contains(lot1, lot2));
+    verify(spy, never()).findOne(lot2.getId());
+  }
+
+  @Test
+  public void shouldNotCallReferenceDataWhenNoIdsAreGiven() {
+    //when
+    List<LotDto> found = spy.findByIds(emptyList());
+
+    //then
+    assertThat(found, is(empty()));
+    verify(spy, never()).getPage(eq(SEARCH_URI), anyMapOf(String.class, Object.class));
+  }
+
+  @Test
+  public void shouldSearchLotsOfEachTradeItemOnceAndCacheThem() {
+    //given
+    UUID tradeItem1 = UUID.randomUUID();
+    UUID tradeItem2 = UUID.randomUUID();
+    doReturn(new PageImpl<>(asList(lot1, lot2)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("tradeItemId", tradeItem1, "page", 0));
+    doReturn(new PageImpl<>(singletonList(lot3)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("tradeItemId", tradeItem2, "page", 0));
+
+    //when
+    Map<UUID, List<LotDto>> found = spy.getAllLotsOf(asList(tradeItem1, tradeItem2, tradeItem1));
+    List<LotDto> foundAgain = spy.getAllLotsOf(tradeItem1);
+
+    //then
+    assertThat(found.get(tradeItem1), contains(lot1, lot2));
+    assertThat(found.get(tradeItem2), contains(lot3));
+    assertThat(foundAgain, contains(lot1, lot2));
+    verify(spy, times(2)).getPage(eq(SEARCH_URI), anyMapOf(String.class, Object.class));
+  }
+
+  @Test
+  public void shouldReturnCopiesOfCachedLots() {
+    //given
+    UUID tradeItem = UUID.randomUUID();
+    doReturn(new PageImpl<>(singletonList(lot1)))
+        .when(spy)
+        .getPage(SEARCH_URI, ImmutableMap.of("tradeItemId", tradeItem, "page", 0));
+
+    //when
+    spy.getAllLotsOf(tradeItem).get(0).setLotCode("changed");
+    List<LotDto> foundAgain = spy.getAllLotsOf(tradeItem);
+
+    //then
+    assertThat(foundAgain, contains(lot1));
+    assertThat(foundAgain.get(0), is(not(sameInstance(lot1))));
+    verify(spy, times(1)).getPage(eq(SEARCH_URI), anyMapOf(String.class, Object.class));
+  }
+
+  private static LotDto createLot() {
+    LotDto lot = new LotDto();
+    lot.setId(UUID.randomUUID());
+    return lot;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.service.referencedata;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.dto.ReferenceDataCacheDto;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReferenceDataCacheTest {
+
+  private static final String PROGRAM = "program";
+  private static final String USER = "user";
+  private static final String KEY = "key";
+
+  @Spy
+  private MockEnvironment environment = new MockEnvironment();
+
+  @InjectMocks
+  private ReferenceDataCache referenceDataCache;
+
+  private AtomicInteger loads = new AtomicInteger();
+
+  @After
+  public void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Before
+  public void setUp() {
+    environment.setProperty("referencedata.cache.timeToLive", "0");
+    environment.setProperty("referencedata.cache.maximumSize", "10");
+    environment.setProperty("referencedata.cache.program.timeToLive", "60");
+  }
+
+  @Test
+  public void shouldReturnCachedValueWithoutLoadingItAgain() {
+    //when
+    String first = referenceDataCache.get(PROGRAM, KEY, this::load);
+    String second = referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //then
+    assertThat(first, is("value1"));
+    assertThat(second, is("value1"));
+    assertThat(loads.get(), is(1));
+
+    ReferenceDataCacheDto statistics = referenceDataCache.getStatistics().get(0);
+    assertThat(statistics.getName(), is(PROGRAM));
+    assertThat(statistics.getTimeToLive(), is(60L));
+    assertThat(statistics.getMaximumSize(), is(10L));
+    assertThat(statistics.getHitCount(), is(1L));
+    assertThat(statistics.getMissCount(), is(1L));
+  }
+
+  @Test
+  public void shouldNotCacheNullValues() {
+    //when
+    Object first = referenceDataCache.get(PROGRAM, KEY, () -> {
+      loads.incrementAndGet();
+      return null;
+    });
+    String second = referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //then
+    assertThat(first, is(nullValue()));
+    assertThat(second, is("value2"));
+  }
+
+  @Test
+  public void shouldNotCacheTypesWithoutTimeToLive() {
+    //when
+    referenceDataCache.get(USER, KEY, this::load);
+    String second = referenceDataCache.get(USER, KEY, this::load);
+
+    //then
+    assertThat(second, is("value2"));
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void shouldLoadValueAgainAfterEviction() {
+    //given
+    referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //when
+    boolean evicted = referenceDataCache.evict(PROGRAM);
+    String second = referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //then
+    assertThat(evicted, is(true));
+    assertThat(second, is("value2"));
+  }
+
+  @Test
+  public void shouldEvictOnlyEntriesWithKeyPrefix() {
+    //given
+    referenceDataCache.get(PROGRAM, "user1/right", this::load);
+    referenceDataCache.get(PROGRAM, "user2/right", this::load);
+
+    //when
+    boolean evicted = referenceDataCache.evict(PROGRAM, "user1/");
+    String first = referenceDataCache.get(PROGRAM, "user1/right", this::load);
+    String second = referenceDataCache.get(PROGRAM, "user2/right", this::load);
+
+    //then
+    assertThat(evicted, is(true));
+    assertThat(first, is("value3"));
+    assertThat(second, is("value2"));
+  }
+
+  @Test
+  public void shouldNotEvictUnknownType() {
+    assertThat(referenceDataCache.evict(USER), is(false));
+  }
+
+  @Test
+  public void shouldEvictAllTypes() {
+    //given
+    referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //when
+    referenceDataCache.evictAll();
+    String second = referenceDataCache.get(PROGRAM, KEY, this::load);
+
+    //then
+    assertThat(second, is("value2"));
+  }
+
+  @Test
+  public void shouldRetrieveValueOnlyOnceWithinRequestEvenIfTypeIsNotCached() {
+    //given
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest()));
+
+    //when
+    String first = referenceDataCache.get(USER, KEY, this::load);
+    String second = referenceDataCache.get(USER, KEY, this::load);
+    Object missing = referenceDataCache.get(USER, "missing", () -> {
+      loads.incrementAndGet();
+      return null;
+    });
+    referenceDataCache.get(USER, "missing", () -> {
+      loads.incrementAndGet();
+      return null;
+    });
+
+    //then
+    assertThat(first, is("value1"));
+    assertThat(second, is("value1"));
+    assertThat(missing, is(nullValue()));
+    assertThat(loads.get(), is(2));
+  }
+
+  private String load() {
+    return "value" + loads.incrementAndGet();
+  }
+}
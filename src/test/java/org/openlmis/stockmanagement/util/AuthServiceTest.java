@@ -22,11 +22,13 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,17 +39,27 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.service.AuthService;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AuthServiceTest {
   private static final String TOKEN = UUID.randomUUID().toString();
+  private static final String NEW_TOKEN = UUID.randomUUID().toString();
+  private static final Instant NOW = Instant.parse("2017-03-01T10:00:00Z");
   private static final String AUTHORIZATION_URL = "http://localhost/auth/oauth/token";
   private static final URI AUTHORIZATION_URI = URI.create(
       AUTHORIZATION_URL + "?grant_type=client_credentials"
@@ -59,6 +71,9 @@ public class AuthServiceTest {
   @Captor
   private ArgumentCaptor<HttpEntity<String>> entityStringCaptor;
 
+  @Mock
+  private Clock clock;
+
   private AuthService authService;
 
   @Before
@@ -68,6 +83,14 @@ public class AuthServiceTest {
     ReflectionTestUtils.setField(authService, "clientId", "trusted-client");
     ReflectionTestUtils.setField(authService, "clientSecret", "secret");
     ReflectionTestUtils.setField(authService, "authorizationUrl", AUTHORIZATION_URL);
+    ReflectionTestUtils.setField(authService, "clock", clock);
+    when(clock.instant()).thenReturn(NOW);
+    ReflectionTestUtils.invokeMethod(authService, "startExecutor");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ReflectionTestUtils.invokeMethod(authService, "stopExecutor");
   }
 
   @Test
@@ -94,4 +117,109 @@ public class AuthServiceTest {
         contains("Basic dHJ1c3RlZC1jbGllbnQ6c2VjcmV0")
     );
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldReuseAccessTokenUntilItExpires() throws Exception {
+    mockTokenResponse(TOKEN, 3600);
+
+    authService.obtainAccessToken();
+    when(clock.instant()).thenReturn(NOW.plusSeconds(3000));
+    String token = authService.obtainAccessToken();
+
+    assertThat(token, is(equalTo(TOKEN)));
+    assertThat(authService.getTokenFetches(), is(1L));
+    verify(restTemplate, times(1)).exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    );
+  }
+
+  @Test
+  public void shouldObtainNewAccessTokenWhenCachedOneExpired() throws Exception {
+    mockTokenResponse(TOKEN, 3600);
+    authService.obtainAccessToken();
+
+    mockTokenResponse(NEW_TOKEN, 3600);
+    when(clock.instant()).thenReturn(NOW.plusSeconds(3600));
+    String token = authService.obtainAccessToken();
+
+    assertThat(token, is(equalTo(NEW_TOKEN)));
+    assertThat(authService.getTokenFetches(), is(2L));
+  }
+
+  @Test
+  public void shouldRefreshAccessTokenInBackgroundWhenItIsAboutToExpire() throws Exception {
+    mockTokenResponse(TOKEN, 3600);
+    authService.obtainAccessToken();
+
+    mockTokenResponse(NEW_TOKEN, 3600);
+    when(clock.instant()).thenReturn(NOW.plusSeconds(3540));
+    String token = authService.obtainAccessToken();
+    awaitBackgroundRefresh();
+
+    assertThat(token, is(equalTo(TOKEN)));
+    assertThat(authService.getBackgroundTokenRefreshes(), is(1L));
+    assertThat(authService.obtainAccessToken(), is(equalTo(NEW_TOKEN)));
+  }
+
+  @Test
+  public void shouldNotRefreshShortLivedAccessTokenRightAfterFetchingIt() throws Exception {
+    mockTokenResponse(TOKEN, 60);
+
+    authService.obtainAccessToken();
+    when(clock.instant()).thenReturn(NOW.plusSeconds(29));
+    String token = authService.obtainAccessToken();
+    awaitBackgroundRefresh();
+
+    assertThat(token, is(equalTo(TOKEN)));
+    assertThat(authService.getTokenFetches(), is(1L));
+    assertThat(authService.getBackgroundTokenRefreshes(), is(0L));
+  }
+
+  @Test
+  public void shouldRetryOnceWithNewAccessTokenWhenTokenIsRejected() throws Exception {
+    mockTokenResponse(TOKEN, 3600);
+    authService.obtainAccessToken();
+    mockTokenResponse(NEW_TOKEN, 3600);
+
+    List<String> usedTokens = new ArrayList<>();
+    String result = authService.runWithAccessToken(token -> {
+      usedTokens.add(token);
+      if (TOKEN.equals(token)) {
+        throw new HttpClientErrorException(HttpStatus.UNAUTHORIZED);
+      }
+      return "ok";
+    });
+
+    assertThat(result, is("ok"));
+    assertThat(usedTokens, contains(TOKEN, NEW_TOKEN));
+    assertThat(authService.getTokenInvalidations(), is(1L));
+  }
+
+  @Test(expected = HttpClientErrorException.class)
+  public void shouldNotRetryWhenRequestFailsForOtherReason() throws Exception {
+    mockTokenResponse(TOKEN, 3600);
+
+    authService.runWithAccessToken(token -> {
+      throw new HttpClientErrorException(HttpStatus.FORBIDDEN);
+    });
+  }
+
+  private void awaitBackgroundRefresh() throws InterruptedException {
+    ExecutorService executor =
+        (ExecutorService) ReflectionTestUtils.getField(authService, "refreshExecutor");
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  private void mockTokenResponse(String token, int expiresIn) {
+    ResponseEntity<Object> response = mock(ResponseEntity.class);
+    Map<String, Object> body = ImmutableMap.of(
+        AuthService.ACCESS_TOKEN, token, "expires_in", expiresIn
+    );
+
+    when(restTemplate.exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    )).thenReturn(response);
+    when(response.getBody()).thenReturn(body);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org. 
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+
+public class ReplicaRoutingDataSourceTest {
+  private Connection primaryConnection = mock(Connection.class);
+  private Connection firstReplicaConnection = mock(Connection.class);
+  private Connection secondReplicaConnection = mock(Connection.class);
+
+  private DataSource primary = mock(DataSource.class);
+  private DataSource firstReplica = mock(DataSource.class);
+  private DataSource secondReplica = mock(DataSource.class);
+
+  private ReplicaLagMonitor monitor = new ReplicaLagMonitor(
+      ImmutableMap.of("first", firstReplica, "second", secondReplica), 10);
+
+  @Before
+  public void setUp() throws Exception {
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    when(firstReplica.getConnection()).thenReturn(firstReplicaConnection);
+    when(secondReplica.getConnection()).thenReturn(secondReplicaConnection);
+  }
+
+  @After
+  public void tearDown() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionsToReplicasInTurns() throws Exception {
+    //given
+    mockLag(firstReplicaConnection, 1);
+    mockLag(secondReplicaConnection, 0);
+    monitor.checkReplicas();
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    //when
+    ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, monitor, true);
+
+    //then
+    assertThat(dataSource.getConnection(), sameInstance(firstReplicaConnection));
+    assertThat(dataSource.getConnection(), sameInstance(secondReplicaConnection));
+    assertThat(dataSource.getConnection(), sameInstance(firstReplicaConnection));
+  }
+
+  @Test
+  public void shouldRouteOtherTransactionsToPrimary() throws Exception {
+    //given
+    mockLag(firstReplicaConnection, 0);
+    mockLag(secondReplicaConnection, 0);
+    monitor.checkReplicas();
+
+    //when
+    ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, monitor, true);
+
+    //then
+    assertThat(dataSource.getConnection(), sameInstance(primaryConnection));
+  }
+
+  @Test
+  public void shouldRouteEverythingToReplicasIfNotOnlyReadOnlyTransactions() throws Exception {
+    //given
+    mockLag(firstReplicaConnection, 0);
+    mockLag(secondReplicaConnection, 20);
+    monitor.checkReplicas();
+
+    //when
+    ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, monitor, false);
+
+    //then
+    assertThat(dataSource.getConnection(), sameInstance(firstReplicaConnection));
+  }
+
+  @Test
+  public void shouldNotRouteToLaggingOrUnreachableReplicas() throws Exception {
+    //given
+    mockLag(firstReplicaConnection, 20);
+    when(secondReplica.getConnection()).thenThrow(new SQLException("unreachable"));
+    monitor.checkReplicas();
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    //when
+    ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, monitor, true);
+
+    //then
+    assertThat(dataSource.getConnection(), sameInstance(primaryConnection));
+    assertThat(monitor.getHealthy(), equalTo(0));
+    assertThat(monitor.getLags(), equalTo(new String[]{"first: 20.0", "second: unknown"}));
+  }
+
+  @Test
+  public void shouldRouteToPrimaryBeforeReplicasAreChecked() throws Exception {
+    //given
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    //when
+    ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, monitor, true);
+
+    //then
+    assertThat(dataSource.getConnection(), sameInstance(primaryConnection));
+  }
+
+  private void mockLag(Connection connection, double lag) throws SQLException {
+    Statement statement = mock(Statement.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(ReplicaLagMonitor.LAG_QUERY)).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(1);
+    when(resultSet.getDouble(1)).thenReturn(lag);
+  }
+}
@@ -28,6 +28,7 @@ import org.openlmis.stockmanagement.repository.NodeRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
+import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
 import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
 import org.openlmis.stockmanagement.service.StockEventProcessContextBuilder;
 import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
@@ -69,6 +70,9 @@ public abstract class BaseValidatorTest {
   @Mock
   ValidDestinationAssignmentRepository validDestinationAssignmentRepository;
 
+  @Mock
+  ValidReasonAssignmentRepository validReasonRepository;
+
   @InjectMocks
   private StockEventProcessContextBuilder contextBuilder;
 
@@ -15,6 +15,7 @@
 
 package org.openlmis.stockmanagement.validators;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
@@ -64,7 +65,8 @@ public class LotValidatorTest  extends BaseValidatorTest {
     stockEventDto.getLineItems().get(0).setLotId(lotId);
 
     //when
-    when(lotReferenceDataService.findOne(lotId)).thenReturn(null);
+    when(lotReferenceDataService.findByIds(singletonList(lotId)))
+        .thenReturn(emptyList());
 
     lotValidator.validate(stockEventDto);
   }
@@ -88,7 +90,8 @@ public class LotValidatorTest  extends BaseValidatorTest {
         .build();
 
     //when
-    when(lotReferenceDataService.findOne(lotId)).thenReturn(lotDto);
+    when(lotReferenceDataService.findByIds(singletonList(lotId)))
+        .thenReturn(singletonList(lotDto));
     when(approvedProductService
         .getAllApprovedProducts(stockEventDto.getProgramId(), stockEventDto.getFacilityId()))
         .thenReturn(singletonList(product));
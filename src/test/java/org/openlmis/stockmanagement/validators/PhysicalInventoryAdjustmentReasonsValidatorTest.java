@@ -28,7 +28,6 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
-import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.physicalinventory.StockAdjustment;
@@ -38,7 +37,6 @@ import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityTypeDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
 
 import java.util.Collections;
 import java.util.UUID;
@@ -49,9 +47,6 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
   @Rule
   public ExpectedException expectedException = none();
 
-  @Mock
-  private ValidReasonAssignmentRepository validReasonRepository;
-
   @InjectMocks
   private PhysicalInventoryAdjustmentReasonsValidator validator;
   private UUID reasonId = UUID.randomUUID();
@@ -64,10 +59,10 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
     super.setUp();
     setContext(stockEventDto);
 
-    when(validReasonRepository
-        .findByProgramIdAndFacilityTypeIdAndReasonId(
-            any(UUID.class), any(UUID.class), any(UUID.class)))
-        .thenReturn(new ValidReasonAssignment());
+    ValidReasonAssignment validReason = new ValidReasonAssignment();
+    validReason.setReason(generateReason());
+    when(validReasonRepository.findByProgramIdAndFacilityTypeId(any(UUID.class), any(UUID.class)))
+        .thenReturn(Collections.singletonList(validReason));
     stubFacilityType();
 
     when(stockEventDto.isPhysicalInventory()).thenReturn(true);
@@ -91,8 +86,7 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
     validator.validate(stockEventDto);
 
     verify(validReasonRepository)
-        .findByProgramIdAndFacilityTypeIdAndReasonId(
-            stockEventDto.getProgramId(), facilityTypeId, reasonId);
+        .findByProgramIdAndFacilityTypeId(stockEventDto.getProgramId(), facilityTypeId);
   }
 
   @Test
@@ -109,10 +103,8 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
         Collections.singletonList(
             generateLineItem(5, generateReason())));
 
-    when(validReasonRepository
-        .findByProgramIdAndFacilityTypeIdAndReasonId(
-            any(UUID.class), any(UUID.class), any(UUID.class)))
-        .thenReturn(null);
+    when(validReasonRepository.findByProgramIdAndFacilityTypeId(any(UUID.class), any(UUID.class)))
+        .thenReturn(Collections.emptyList());
 
     validator.validate(stockEventDto);
   }
@@ -17,8 +17,13 @@ package org.openlmis.stockmanagement.validators;
 
 import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.rules.ExpectedException.none;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_ADJUSTMENT_QUANITITY_INVALID;
@@ -32,8 +37,10 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardCheckpoint;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.domain.physicalinventory.StockAdjustment;
@@ -41,6 +48,7 @@ import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.service.StockCardCheckpointService;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 
 import java.time.LocalDate;
@@ -58,6 +66,9 @@ public class QuantityValidatorTest extends BaseValidatorTest  {
   @Rule
   public ExpectedException expectedException = none();
 
+  @Mock
+  private StockCardCheckpointService checkpointService;
+
   @InjectMocks
   private QuantityValidator quantityValidator;
 
@@ -84,6 +95,96 @@ public class QuantityValidatorTest extends BaseValidatorTest  {
     quantityValidator.validate(event);
   }
 
+  @Test
+  public void shouldRejectWhenQuantityMakesPersistedStockOnHandBelowZero() throws Exception {
+    //expect
+    expectedException.expect(ValidationMessageException.class);
+    expectedException.expectMessage(ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH);
+
+    //given
+    LocalDate firstDate = dateFromYear(2015);
+
+    StockCard card = new StockCard();
+    card.setLineItems(singletonList(createCreditLineItem(firstDate.plusDays(1), 10)));
+    card.setStockOnHand(3);
+
+    StockEventDto event = createDebitEventDto(firstDate.plusDays(2), 5);
+    mockCardFound(event, card);
+
+    //when
+    quantityValidator.validate(event);
+  }
+
+  @Test
+  public void shouldUsePersistedStockOnHandWhenEventIsNotBackdated() throws Exception {
+    //given
+    LocalDate firstDate = dateFromYear(2015);
+
+    StockCard card = new StockCard();
+    card.setLineItems(singletonList(createCreditLineItem(firstDate.plusDays(1), 1)));
+    card.setStockOnHand(10);
+
+    StockEventDto event = createDebitEventDto(firstDate.plusDays(2), 5);
+    mockCardFound(event, card);
+
+    //when
+    quantityValidator.validate(event);
+  }
+
+  @Test
+  public void shouldRejectWhenBackdatedQuantityMakesStockOnHandAfterCheckpointBelowZero()
+      throws Exception {
+    //expect
+    expectedException.expect(ValidationMessageException.class);
+    expectedException.expectMessage(ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH);
+
+    //given
+    LocalDate firstDate = dateFromYear(2015);
+
+    StockCard card = new StockCard();
+    card.setId(randomUUID());
+    card.setStockOnHand(6);
+    card.setLatestOccurredDate(firstDate.plusDays(3));
+
+    StockCardCheckpoint checkpoint = new StockCardCheckpoint();
+    checkpoint.setStockOnHand(3);
+    given(checkpointService.findCheckpointBefore(
+        eq(card.getId()), eq(firstDate.plusDays(2)), any(ZonedDateTime.class)))
+        .willReturn(checkpoint);
+    given(checkpointService.findLineItemsAfter(checkpoint))
+        .willReturn(singletonList(createDebitLineItem(firstDate.plusDays(3), 1)));
+
+    StockEventDto event = createDebitEventDto(firstDate.plusDays(2), 3);
+    mockCardFound(event, card);
+
+    //when
+    quantityValidator.validate(event);
+  }
+
+  @Test
+  public void shouldNotModifyFoundCardWhenEventIsBackdated() throws Exception {
+    //given
+    LocalDate firstDate = dateFromYear(2015);
+
+    StockCard card = new StockCard();
+    card.setLineItems(Arrays.asList(
+        createCreditLineItem(firstDate.plusDays(1), 5),
+        createDebitLineItem(firstDate.plusDays(3), 1)
+    ));
+
+    StockEventDto event = createDebitEventDto(firstDate.plusDays(2), 2);
+    mockCardFound(event, card);
+
+    //when
+    quantityValidator.validate(event);
+
+    //then
+    assertThat(card.getLineItems().size(), is(2));
+    assertThat(card.getLineItems().get(0).getStockOnHand(), is(nullValue()));
+    assertThat(card.getLineItems().get(1).getStockOnHand(), is(nullValue()));
+    assertThat(card.getStockOnHand(), is(nullValue()));
+  }
+
   @Test
   public void shouldNotRejectWhenEventHasNoDestinationOrDebitReason() throws Exception {
     //given
@@ -314,8 +415,8 @@ public class QuantityValidatorTest extends BaseValidatorTest  {
     card.setOrderableId(event.getLineItems().get(0).getOrderableId());
     card.setLotId(event.getLineItems().get(0).getLotId());
 
-    when(stockCardRepository
-        .findByProgramIdAndFacilityId(event.getProgramId(), event.getFacilityId()))
+    when(stockCardRepository.findByProgramIdAndFacilityIdAndOrderableIdIn(
+        event.getProgramId(), event.getFacilityId(), event.getOrderableIds()))
         .thenReturn(singletonList(card));
 
     setContext(event);
@@ -16,6 +16,7 @@
 package org.openlmis.stockmanagement.validators;
 
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -28,6 +29,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
 
 import java.util.Collections;
 
@@ -45,15 +47,16 @@ public class StockEventVvmValidatorTest {
     // given
     StockEventDto stockEvent = new StockEventDto();
     stockEvent.setLineItems(Collections.emptyList());
+    stockEvent.setContext(new StockEventProcessContext());
 
     doNothing()
-        .when(vvmValidator).validate(eq(stockEvent.getLineItems()), anyString(), eq(true));
+        .when(vvmValidator).validate(eq(stockEvent.getLineItems()), any(), anyString(), eq(true));
 
     // when
     validator.validate(stockEvent);
 
     // then
     verify(vvmValidator, atLeastOnce())
-        .validate(eq(stockEvent.getLineItems()), anyString(), eq(true));
+        .validate(eq(stockEvent.getLineItems()), any(), anyString(), eq(true));
   }
 }